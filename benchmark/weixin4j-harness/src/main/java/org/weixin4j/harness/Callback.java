@@ -0,0 +1,125 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.harness;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+
+/**
+ * 一次微信回调请求：URL查询参数和请求体
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public final class Callback {
+
+    private final String type;
+    private final String signature;
+    private final String timestamp;
+    private final String nonce;
+    private final String msgSignature;
+    private final byte[] body;
+
+    /**
+     * 创建回调请求
+     *
+     * @param type 消息类型，用于分类统计，例如text、event:click
+     * @param signature 签名
+     * @param timestamp 时间戳
+     * @param nonce 随机数
+     * @param msgSignature 消息签名，明文模式为null
+     * @param body 请求体
+     */
+    public Callback(String type, String signature, String timestamp, String nonce, String msgSignature, byte[] body) {
+        this.type = type;
+        this.signature = signature;
+        this.timestamp = timestamp;
+        this.nonce = nonce;
+        this.msgSignature = msgSignature;
+        this.body = body;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+
+    public String getTimestamp() {
+        return timestamp;
+    }
+
+    public String getNonce() {
+        return nonce;
+    }
+
+    public String getMsgSignature() {
+        return msgSignature;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * 获取查询参数值
+     *
+     * @param name 参数名
+     * @return 参数值，不存在时返回null
+     */
+    public String getParameter(String name) {
+        if ("signature".equals(name)) {
+            return signature;
+        } else if ("timestamp".equals(name)) {
+            return timestamp;
+        } else if ("nonce".equals(name)) {
+            return nonce;
+        } else if ("msg_signature".equals(name)) {
+            return msgSignature;
+        } else if ("encrypt_type".equals(name)) {
+            return msgSignature == null ? null : "aes";
+        }
+        return null;
+    }
+
+    /**
+     * 生成URL查询串
+     *
+     * @return 查询串，不含?
+     */
+    public String toQueryString() {
+        StringBuilder sb = new StringBuilder(160);
+        sb.append("signature=").append(signature).append("&timestamp=").append(timestamp).append("&nonce=").append(encode(nonce));
+        if (msgSignature != null) {
+            sb.append("&encrypt_type=aes&msg_signature=").append(msgSignature);
+        }
+        return sb.toString();
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.harness;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import org.weixin4j.model.message.EventType;
+import org.weixin4j.model.message.MsgType;
+
+/**
+ * 回调消息生成器
+ *
+ * <p>
+ * 按微信推送格式生成全部普通消息类型和事件类型的XML。事件以FromUserName+CreateTime+Event排重，
+ * 因此CreateTime从当前时间起逐条递增，与MsgId一样不重复，不会被消息排重拦截。
+ * 消息类型按权重随机选取，权重格式为<tt>text:60,event:click:20,event:subscribe:5</tt>，未指定权重时所有类型等概率出现。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public class CallbackGenerator implements TrafficSource {
+
+    private final CallbackSigner signer;
+    private final int users;
+    private final String[] types;
+    private final int[] cumulativeWeights;
+    private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis() / 1000);
+
+    /**
+     * 创建生成器
+     *
+     * @param signer 签名器
+     * @param users 模拟的粉丝数
+     * @param mix 消息类型权重，为null或空时所有类型等概率
+     */
+    public CallbackGenerator(CallbackSigner signer, int users, String mix) {
+        this.signer = signer;
+        this.users = Math.max(1, users);
+        List<String> typeList = new ArrayList<String>();
+        List<Integer> weightList = new ArrayList<Integer>();
+        if (mix == null || mix.trim().isEmpty()) {
+            for (String type : allTypes()) {
+                typeList.add(type);
+                weightList.add(1);
+            }
+        } else {
+            for (String item : mix.split(",")) {
+                int colon = item.lastIndexOf(':');
+                String type = item.substring(0, colon).trim().toLowerCase(Locale.ENGLISH);
+                if (!allTypes().contains(type)) {
+                    throw new IllegalArgumentException("unknown message type " + type);
+                }
+                typeList.add(type);
+                weightList.add(Integer.parseInt(item.substring(colon + 1).trim()));
+            }
+        }
+        this.types = typeList.toArray(new String[typeList.size()]);
+        this.cumulativeWeights = new int[types.length];
+        int total = 0;
+        for (int i = 0; i < types.length; i++) {
+            total += weightList.get(i);
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    /**
+     * 获取支持的全部消息类型
+     *
+     * @return 普通消息为MsgType，事件为event:Event，另有event:qrscene表示扫码关注
+     */
+    public static List<String> allTypes() {
+        List<String> list = new ArrayList<String>();
+        for (MsgType msgType : MsgType.values()) {
+            //music、news仅用于回复
+            if (msgType != MsgType.Event && msgType != MsgType.Music && msgType != MsgType.News) {
+                list.add(msgType.toString());
+            }
+        }
+        for (EventType eventType : EventType.values()) {
+            list.add("event:" + eventType.toString());
+        }
+        list.add("event:qrscene");
+        return list;
+    }
+
+    @Override
+    public Callback next() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int r = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int index = 0;
+        while (cumulativeWeights[index] <= r) {
+            index++;
+        }
+        String type = types[index];
+        return signer.sign(type, generate(type, "o6_bmjrPTlm6_2sgVt7hMZOPfL" + random.nextInt(users)));
+    }
+
+    /**
+     * 生成指定类型的消息XML
+     *
+     * @param type 消息类型
+     * @param openid 粉丝openid
+     * @return 消息XML
+     */
+    public String generate(String type, String openid) {
+        long seq = sequence.incrementAndGet();
+        StringBuilder sb = new StringBuilder(512);
+        sb.append("<xml><ToUserName><![CDATA[gh_harness]]></ToUserName><FromUserName><![CDATA[").append(openid)
+                .append("]]></FromUserName><CreateTime>").append(seq).append("</CreateTime>");
+        if (type.startsWith("event:")) {
+            sb.append("<MsgType><![CDATA[event]]></MsgType>");
+            appendEvent(sb, type.substring(6), seq);
+        } else {
+            sb.append("<MsgType><![CDATA[").append(type).append("]]></MsgType>");
+            appendMessage(sb, type, seq);
+            sb.append("<MsgId>").append(seq).append("</MsgId>");
+        }
+        return sb.append("</xml>").toString();
+    }
+
+    private static void appendMessage(StringBuilder sb, String type, long seq) {
+        if ("text".equals(type)) {
+            sb.append("<Content><![CDATA[查询订单 ").append(seq % 1000).append("]]></Content>");
+        } else if ("image".equals(type)) {
+            sb.append("<PicUrl><![CDATA[http://mmbiz.qpic.cn/mmbiz/").append(seq).append("/0]]></PicUrl>")
+                    .append("<MediaId><![CDATA[media_").append(seq).append("]]></MediaId>");
+        } else if ("voice".equals(type)) {
+            sb.append("<MediaId><![CDATA[media_").append(seq).append("]]></MediaId><Format><![CDATA[amr]]></Format>")
+                    .append("<Recognition><![CDATA[你好]]></Recognition>");
+        } else if ("video".equals(type) || "shortvideo".equals(type)) {
+            sb.append("<MediaId><![CDATA[media_").append(seq).append("]]></MediaId>")
+                    .append("<ThumbMediaId><![CDATA[thumb_").append(seq).append("]]></ThumbMediaId>");
+        } else if ("location".equals(type)) {
+            sb.append("<Location_X>23.134521</Location_X><Location_Y>113.358803</Location_Y><Scale>20</Scale>")
+                    .append("<Label><![CDATA[广州市天河区]]></Label>");
+        } else if ("link".equals(type)) {
+            sb.append("<Title><![CDATA[weixin4j]]></Title><Description><![CDATA[微信JAVA SDK]]></Description>")
+                    .append("<Url><![CDATA[http://www.weixin4j.org/]]></Url>");
+        }
+    }
+
+    private static void appendEvent(StringBuilder sb, String event, long seq) {
+        if ("qrscene".equals(event)) {
+            sb.append("<Event><![CDATA[subscribe]]></Event><EventKey><![CDATA[qrscene_").append(seq % 100)
+                    .append("]]></EventKey><Ticket><![CDATA[ticket_").append(seq).append("]]></Ticket>");
+            return;
+        }
+        sb.append("<Event><![CDATA[").append(event.toUpperCase(Locale.ENGLISH)).append("]]></Event>");
+        if ("scan".equals(event)) {
+            sb.append("<EventKey><![CDATA[").append(seq % 100).append("]]></EventKey><Ticket><![CDATA[ticket_").append(seq).append("]]></Ticket>");
+        } else if ("location".equals(event)) {
+            sb.append("<Latitude>23.137466</Latitude><Longitude>113.352425</Longitude><Precision>119.385040</Precision>");
+        } else if ("click".equals(event)) {
+            sb.append("<EventKey><![CDATA[MENU_").append(seq % 10).append("]]></EventKey>");
+        } else if ("view".equals(event)) {
+            sb.append("<EventKey><![CDATA[http://www.weixin4j.org/]]></EventKey><MenuId>").append(seq % 10).append("</MenuId>");
+        } else if ("scancode_push".equals(event) || "scancode_waitmsg".equals(event)) {
+            sb.append("<EventKey><![CDATA[SCAN]]></EventKey><ScanCodeInfo><ScanType><![CDATA[qrcode]]></ScanType>")
+                    .append("<ScanResult><![CDATA[").append(seq).append("]]></ScanResult></ScanCodeInfo>");
+        } else if (event.startsWith("pic_")) {
+            sb.append("<EventKey><![CDATA[PIC]]></EventKey><SendPicsInfo><Count>1</Count><PicList><item>")
+                    .append("<PicMd5Sum><![CDATA[").append(Long.toHexString(seq)).append("]]></PicMd5Sum></item></PicList></SendPicsInfo>");
+        } else if ("location_select".equals(event)) {
+            sb.append("<EventKey><![CDATA[LOCATION]]></EventKey><SendLocationInfo><Location_X><![CDATA[23]]></Location_X>")
+                    .append("<Location_Y><![CDATA[113]]></Location_Y><Scale><![CDATA[15]]></Scale>")
+                    .append("<Label><![CDATA[广州市天河区]]></Label><Poiname><![CDATA[]]></Poiname></SendLocationInfo>");
+        } else if ("templatesendjobfinish".equals(event) || "masssendjobfinish".equals(event)) {
+            sb.append("<MsgID>").append(seq).append("</MsgID><Status><![CDATA[success]]></Status>");
+        } else if (event.contains("card")) {
+            sb.append("<CardId><![CDATA[card_").append(seq % 100).append("]]></CardId>")
+                    .append("<UserCardCode><![CDATA[").append(seq).append("]]></UserCardCode>");
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.harness;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import org.weixin4j.WeixinException;
+import org.weixin4j.util.MessageCrypt;
+
+/**
+ * 按微信规则为回调请求签名，可选按安全模式加密
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public final class CallbackSigner {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<MessageDigest> SHA1 = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    };
+
+    private final String token;
+    private final MessageCrypt crypt;
+    private final AtomicLong nonceSequence = new AtomicLong(System.nanoTime());
+
+    /**
+     * 创建签名器
+     *
+     * @param token 公众号Token
+     * @param crypt 消息加解密工具，为null时生成明文回调
+     */
+    public CallbackSigner(String token, MessageCrypt crypt) {
+        this.token = token;
+        this.crypt = crypt;
+    }
+
+    /**
+     * 签名消息
+     *
+     * @param type 消息类型
+     * @param xml 明文消息XML
+     * @return 回调请求
+     */
+    public Callback sign(String type, String xml) {
+        String timestamp = Long.toString(System.currentTimeMillis() / 1000);
+        //随机数不重复，开启防重放时不会被拒绝
+        String nonce = Long.toString(nonceSequence.incrementAndGet() & Long.MAX_VALUE, 36);
+        String signature = sha1(token, timestamp, nonce);
+        if (crypt == null) {
+            return new Callback(type, signature, timestamp, nonce, null, xml.getBytes(UTF_8));
+        }
+        try {
+            String encrypt = crypt.encrypt(xml);
+            String body = "<xml><ToUserName><![CDATA[gh_harness]]></ToUserName><Encrypt><![CDATA[" + encrypt + "]]></Encrypt></xml>";
+            return new Callback(type, signature, timestamp, nonce, crypt.signature(timestamp, nonce, encrypt), body.getBytes(UTF_8));
+        } catch (WeixinException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static String sha1(String... values) {
+        Arrays.sort(values);
+        MessageDigest digest = SHA1.get();
+        for (String value : values) {
+            digest.update(value.getBytes(UTF_8));
+        }
+        byte[] bytes = digest.digest();
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0x0f];
+            hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0x0f];
+        }
+        return new String(hex);
+    }
+}
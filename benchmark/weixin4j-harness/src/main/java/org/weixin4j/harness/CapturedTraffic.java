@@ -0,0 +1,182 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.harness;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.weixin4j.spi.journal.JournalReader;
+import org.weixin4j.spi.journal.JournalRecord;
+
+/**
+ * 回放抓取的回调流量
+ *
+ * <p>
+ * 流量来源可以是消息日志目录（<tt>weixin4j.journal.dir</tt>）或存放<tt>*.xml</tt>文件的目录，
+ * 消息按原顺序循环回放，每次回放重新签名，并改写MsgId、CreateTime，避免被消息排重拦截。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public class CapturedTraffic implements TrafficSource {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final CallbackSigner signer;
+    private final String[] messages;
+    private final String[] types;
+    private final AtomicLong cursor = new AtomicLong();
+    private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis() / 1000);
+
+    /**
+     * 加载抓取的流量
+     *
+     * @param signer 签名器
+     * @param dir 消息日志目录或xml文件目录
+     * @throws IOException 读取失败
+     */
+    public CapturedTraffic(CallbackSigner signer, File dir) throws IOException {
+        this.signer = signer;
+        List<String> list = new ArrayList<String>();
+        File[] xmlFiles = dir.listFiles();
+        boolean journal = false;
+        if (xmlFiles != null) {
+            Arrays.sort(xmlFiles);
+            for (File file : xmlFiles) {
+                if (file.getName().endsWith(".journal")) {
+                    journal = true;
+                } else if (file.getName().endsWith(".xml")) {
+                    list.add(read(file));
+                }
+            }
+        }
+        if (journal) {
+            JournalReader reader = new JournalReader(dir);
+            try {
+                JournalRecord record;
+                while ((record = reader.next()) != null) {
+                    list.add(record.getPayloadAsString());
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        if (list.isEmpty()) {
+            throw new IOException("no captured callback found in " + dir);
+        }
+        this.messages = list.toArray(new String[list.size()]);
+        this.types = new String[messages.length];
+        for (int i = 0; i < messages.length; i++) {
+            types[i] = typeOf(messages[i]);
+        }
+    }
+
+    /**
+     * 获取加载的消息数
+     *
+     * @return 消息数
+     */
+    public int size() {
+        return messages.length;
+    }
+
+    @Override
+    public Callback next() {
+        int index = (int) (cursor.getAndIncrement() % messages.length);
+        long seq = sequence.incrementAndGet();
+        String xml = replace(messages[index], "MsgId", seq);
+        xml = replace(xml, "CreateTime", seq);
+        return signer.sign(types[index], xml);
+    }
+
+    private static String read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            int n = 0;
+            while (n < bytes.length) {
+                int r = in.read(bytes, n, bytes.length - n);
+                if (r < 0) {
+                    break;
+                }
+                n += r;
+            }
+            return new String(bytes, 0, n, UTF_8);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * 替换节点的数值内容
+     */
+    private static String replace(String xml, String name, long value) {
+        String open = "<" + name + ">";
+        int start = xml.indexOf(open);
+        if (start < 0) {
+            return xml;
+        }
+        start += open.length();
+        int end = xml.indexOf("</" + name + ">", start);
+        if (end < 0) {
+            return xml;
+        }
+        return xml.substring(0, start) + value + xml.substring(end);
+    }
+
+    /**
+     * 取出消息类型，事件为event:Event
+     */
+    static String typeOf(String xml) {
+        String msgType = text(xml, "MsgType");
+        if (msgType == null) {
+            return "unknown";
+        }
+        if ("event".equals(msgType)) {
+            String event = text(xml, "Event");
+            return "event:" + (event == null ? "unknown" : event.toLowerCase());
+        }
+        return msgType;
+    }
+
+    private static String text(String xml, String name) {
+        String open = "<" + name + ">";
+        int start = xml.indexOf(open);
+        if (start < 0) {
+            return null;
+        }
+        start += open.length();
+        int end = xml.indexOf("</" + name + ">", start);
+        if (end < 0) {
+            return null;
+        }
+        String value = xml.substring(start, end).trim();
+        if (value.startsWith("<![CDATA[") && value.endsWith("]]>")) {
+            value = value.substring(9, value.length() - 3);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.harness;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.weixin4j.WeixinUrlFilter;
+import org.weixin4j.util.MessageCrypt;
+
+/**
+ * 进程内调用<tt>WeixinUrlFilter</tt>，包含签名校验、防重放、并发限制和回复写出
+ *
+ * <p>
+ * 请求和响应为最小实现，不支持异步处理，开启async时按同步处理。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public class FilterTarget implements Target {
+
+    private static final FilterChain NO_CHAIN = new FilterChain() {
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response) {
+        }
+    };
+
+    private final WeixinUrlFilter filter;
+
+    /**
+     * 创建目标并初始化拦截器
+     *
+     * @param initParameters 拦截器初始化参数
+     * @param crypt 消息加解密工具，为null时使用weixin4j.properties中的配置
+     * @throws ServletException 初始化失败
+     */
+    public FilterTarget(final Map<String, String> initParameters, final MessageCrypt crypt) throws ServletException {
+        this.filter = new WeixinUrlFilter() {
+            @Override
+            protected MessageCrypt getMessageCrypt() {
+                return crypt != null ? crypt : super.getMessageCrypt();
+            }
+        };
+        final ServletContext context = proxy(ServletContext.class, new Attributes());
+        filter.init(new FilterConfig() {
+            @Override
+            public String getFilterName() {
+                return "weixin4j";
+            }
+
+            @Override
+            public ServletContext getServletContext() {
+                return context;
+            }
+
+            @Override
+            public String getInitParameter(String name) {
+                return initParameters.get(name);
+            }
+
+            @Override
+            public java.util.Enumeration<String> getInitParameterNames() {
+                return Collections.enumeration(initParameters.keySet());
+            }
+        });
+    }
+
+    @Override
+    public int send(final Callback callback) throws Exception {
+        final HandlerTarget.BodyInputStream in = new HandlerTarget.BodyInputStream(callback.getBody());
+        HttpServletRequest request = proxy(HttpServletRequest.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if ("getParameter".equals(name)) {
+                    return callback.getParameter((String) args[0]);
+                } else if ("getInputStream".equals(name)) {
+                    return in;
+                } else if ("getMethod".equals(name)) {
+                    return "POST";
+                } else if ("getServletPath".equals(name)) {
+                    return "/api/weixin";
+                } else if ("getContentLength".equals(name)) {
+                    return callback.getBody().length;
+                } else if ("getCharacterEncoding".equals(name)) {
+                    return "UTF-8";
+                }
+                return defaultValue(method);
+            }
+        });
+        final ByteArrayOutputStream body = new ByteArrayOutputStream(512);
+        final ServletOutputStream out = new ServletOutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                body.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                body.write(b, off, len);
+            }
+        };
+        final PrintWriter[] writer = new PrintWriter[1];
+        HttpServletResponse response = proxy(HttpServletResponse.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws IOException {
+                String name = method.getName();
+                if ("getOutputStream".equals(name)) {
+                    return out;
+                } else if ("getWriter".equals(name)) {
+                    if (writer[0] == null) {
+                        writer[0] = new PrintWriter(new OutputStreamWriter(out, "UTF-8"));
+                    }
+                    return writer[0];
+                } else if ("resetBuffer".equals(name)) {
+                    body.reset();
+                    return null;
+                }
+                return defaultValue(method);
+            }
+        });
+        filter.doFilter(request, response, NO_CHAIN);
+        if (writer[0] != null) {
+            writer[0].flush();
+        }
+        return body.size();
+    }
+
+    /**
+     * 销毁拦截器
+     */
+    public void destroy() {
+        filter.destroy();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(FilterTarget.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object defaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return Boolean.FALSE;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    /**
+     * 只保存属性的ServletContext
+     */
+    private static final class Attributes implements InvocationHandler {
+
+        private final Map<String, Object> attributes = new ConcurrentHashMap<String, Object>();
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if ("setAttribute".equals(name)) {
+                if (args[1] == null) {
+                    attributes.remove((String) args[0]);
+                } else {
+                    attributes.put((String) args[0], args[1]);
+                }
+                return null;
+            } else if ("getAttribute".equals(name)) {
+                return attributes.get((String) args[0]);
+            } else if ("removeAttribute".equals(name)) {
+                attributes.remove((String) args[0]);
+                return null;
+            }
+            return defaultValue(method);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.harness;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import javax.servlet.ServletInputStream;
+import org.weixin4j.model.message.OutputMessage;
+import org.weixin4j.spi.DefaultMessageHandler;
+import org.weixin4j.spi.IMessageHandler;
+import org.weixin4j.util.MessageCrypt;
+import org.weixin4j.util.ReplyWriter;
+
+/**
+ * 进程内直接调用消息处理器，不经过签名校验和Servlet
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public class HandlerTarget implements Target {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final IMessageHandler handler;
+    private final MessageCrypt crypt;
+
+    /**
+     * 创建目标
+     *
+     * @param handler 消息处理器
+     * @param crypt 消息加解密工具，明文回调时为null
+     */
+    public HandlerTarget(IMessageHandler handler, MessageCrypt crypt) {
+        this.handler = handler;
+        this.crypt = crypt;
+    }
+
+    @Override
+    public int send(Callback callback) throws Exception {
+        if (callback.getMsgSignature() != null) {
+            if (crypt == null) {
+                throw new IllegalStateException("encrypted callback requires aesKey");
+            }
+            String xml = crypt.decryptMessage(new ByteArrayInputStream(callback.getBody()),
+                    callback.getMsgSignature(), callback.getTimestamp(), callback.getNonce());
+            String reply = handler.invoke(xml);
+            if (reply.isEmpty()) {
+                return 0;
+            }
+            return crypt.encryptReply(reply, callback.getTimestamp(), callback.getNonce()).length();
+        }
+        ServletInputStream in = new BodyInputStream(callback.getBody());
+        if (handler instanceof DefaultMessageHandler) {
+            //与WeixinUrlFilter相同，回复直接写出为UTF-8字节
+            OutputMessage outputMsg = ((DefaultMessageHandler) handler).process(in);
+            if (outputMsg == null) {
+                return 0;
+            }
+            ReplyWriter writer = ReplyWriter.local();
+            outputMsg.writeXML(writer);
+            return writer.length();
+        }
+        return handler.invoke(in).getBytes(UTF_8).length;
+    }
+
+    /**
+     * 基于字节数组的Servlet输入流
+     */
+    static final class BodyInputStream extends ServletInputStream {
+
+        private final byte[] body;
+        private int pos;
+
+        BodyInputStream(byte[] body) {
+            this.body = body;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return pos < body.length ? body[pos++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (pos >= body.length) {
+                return -1;
+            }
+            int n = Math.min(len, body.length - pos);
+            System.arraycopy(body, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return body.length - pos;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.harness;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import org.weixin4j.spi.HandlerFactory;
+import org.weixin4j.util.MessageCrypt;
+import org.weixin4j.util.TokenUtil;
+
+/**
+ * 回调压测入口
+ *
+ * <pre>
+ * java -jar weixin4j-harness.jar --target=handler --rate=2000 --threads=8 --duration=30 --warmup=10
+ * java -jar weixin4j-harness.jar --target=http --url=http://127.0.0.1:8080/api/weixin --rate=500
+ * java -jar weixin4j-harness.jar --target=filter --replay=/data/weixin4j/journal --filter.maxInFlight=64
+ * </pre>
+ * <ul>
+ * <li>target：handler（DefaultMessageHandler）、filter（WeixinUrlFilter）或http，默认handler</li>
+ * <li>url：http目标的回调URL</li>
+ * <li>rate：每秒请求数，0为闭环压测，默认0</li>
+ * <li>threads：线程数，默认4</li>
+ * <li>warmup、duration：预热、测量时间(s)，默认5、10</li>
+ * <li>mix：消息类型权重，例如text:60,event:click:30,event:location:10，默认全部类型等概率</li>
+ * <li>users：模拟的粉丝数，默认1000</li>
+ * <li>replay：回放消息日志目录或xml文件目录，指定时不再生成消息</li>
+ * <li>token：签名Token，默认weixin4j.properties中的配置</li>
+ * <li>aesKey、appId：指定EncodingAESKey时生成安全模式的加密回调</li>
+ * <li>filter.*：WeixinUrlFilter初始化参数</li>
+ * </ul>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public class Harness {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<String, String>();
+        Map<String, String> filterParameters = new HashMap<String, String>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                System.err.println("illegal argument: " + arg);
+                System.exit(1);
+            }
+            String name = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (name.startsWith("filter.")) {
+                filterParameters.put(name.substring(7), value);
+            } else {
+                options.put(name, value);
+            }
+        }
+        String token = option(options, "token", null);
+        if (token == null) {
+            token = TokenUtil.get();
+        }
+        String aesKey = option(options, "aesKey", null);
+        MessageCrypt crypt = aesKey == null ? null : new MessageCrypt(token, aesKey, option(options, "appId", ""));
+        CallbackSigner signer = new CallbackSigner(token, crypt);
+
+        TrafficSource source;
+        String replay = option(options, "replay", null);
+        if (replay != null) {
+            CapturedTraffic captured = new CapturedTraffic(signer, new File(replay));
+            System.out.println("replay      : " + captured.size() + " callbacks from " + replay);
+            source = captured;
+        } else {
+            source = new CallbackGenerator(signer, Integer.parseInt(option(options, "users", "1000")), option(options, "mix", null));
+        }
+
+        Target target;
+        String targetName = option(options, "target", "handler");
+        if ("handler".equals(targetName)) {
+            target = new HandlerTarget(HandlerFactory.getMessageHandler(), crypt);
+        } else if ("filter".equals(targetName)) {
+            target = new FilterTarget(filterParameters, crypt);
+        } else if ("http".equals(targetName)) {
+            String url = option(options, "url", null);
+            if (url == null) {
+                System.err.println("--url is required for http target");
+                System.exit(1);
+            }
+            target = new HttpTarget(url, Integer.parseInt(option(options, "timeout", "5000")));
+        } else {
+            System.err.println("unknown target: " + targetName);
+            System.exit(1);
+            return;
+        }
+
+        LoadRunner runner = new LoadRunner(source, target,
+                Integer.parseInt(option(options, "threads", "4")),
+                Integer.parseInt(option(options, "rate", "0")));
+        System.out.println("target      : " + targetName);
+        LoadRunner.Report report = runner.run(Long.parseLong(option(options, "warmup", "5")) * 1000,
+                Long.parseLong(option(options, "duration", "10")) * 1000);
+        report.print(System.out);
+        if (target instanceof FilterTarget) {
+            ((FilterTarget) target).destroy();
+        }
+        System.exit(0);
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.get(name);
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+}
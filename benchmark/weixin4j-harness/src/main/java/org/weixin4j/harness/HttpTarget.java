@@ -0,0 +1,96 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.harness;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * 通过HTTP调用部署好的回调URL，例如本机的Servlet容器
+ *
+ * <p>
+ * 使用<tt>HttpURLConnection</tt>的keep-alive连接缓存复用连接（http.maxConnections，默认5，线程较多时需调大）。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public class HttpTarget implements Target {
+
+    private final String url;
+    private final int timeout;
+
+    /**
+     * 创建目标
+     *
+     * @param url 回调URL，例如http://127.0.0.1:8080/api/weixin
+     * @param timeout 连接和读取超时(ms)
+     */
+    public HttpTarget(String url, int timeout) {
+        this.url = url + (url.indexOf('?') < 0 ? '?' : '&');
+        this.timeout = timeout;
+    }
+
+    @Override
+    public int send(Callback callback) throws Exception {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url + callback.toQueryString()).openConnection();
+        conn.setRequestMethod("POST");
+        conn.setDoOutput(true);
+        conn.setConnectTimeout(timeout);
+        conn.setReadTimeout(timeout);
+        conn.setRequestProperty("Content-Type", "text/xml; charset=UTF-8");
+        byte[] body = callback.getBody();
+        conn.setFixedLengthStreamingMode(body.length);
+        OutputStream out = conn.getOutputStream();
+        try {
+            out.write(body);
+        } finally {
+            out.close();
+        }
+        int status = conn.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            drain(conn.getErrorStream());
+            throw new IOException("HTTP " + status);
+        }
+        return drain(conn.getInputStream());
+    }
+
+    /**
+     * 读完响应，连接才能被复用
+     */
+    private static int drain(InputStream in) throws IOException {
+        if (in == null) {
+            return 0;
+        }
+        try {
+            byte[] buf = new byte[1024];
+            int total = 0;
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                total += n;
+            }
+            return total;
+        } finally {
+            in.close();
+        }
+    }
+}
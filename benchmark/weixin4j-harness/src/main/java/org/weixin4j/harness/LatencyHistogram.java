@@ -0,0 +1,154 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.harness;
+
+/**
+ * 延迟直方图
+ *
+ * <p>
+ * 对数线性分桶：小于256ns按1ns分桶，之后每个2的幂区间分为128个桶，相对误差小于1%，
+ * 记录为数组自增，不分配对象。非线程安全，每个压测线程一个实例，结束后合并。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 7;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    private final long[] counts = new long[(64 - SUB_BITS) * SUB_COUNT];
+    private long total;
+    private long min = Long.MAX_VALUE;
+    private long max;
+    private double sum;
+
+    /**
+     * 记录一次延迟
+     *
+     * @param nanos 延迟(ns)
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts[indexOf(nanos)]++;
+        total++;
+        sum += nanos;
+        if (nanos < min) {
+            min = nanos;
+        }
+        if (nanos > max) {
+            max = nanos;
+        }
+    }
+
+    private static int indexOf(long value) {
+        if (value < (SUB_COUNT << 1)) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift + 1) * SUB_COUNT + (int) ((value >>> shift) - SUB_COUNT);
+    }
+
+    /**
+     * 桶内取中值
+     */
+    private static long valueOf(int index) {
+        if (index < (SUB_COUNT << 1)) {
+            return index;
+        }
+        int shift = index / SUB_COUNT - 1;
+        long low = (long) (index % SUB_COUNT + SUB_COUNT) << shift;
+        return low + ((1L << shift) >> 1);
+    }
+
+    /**
+     * 合并另一个直方图
+     *
+     * @param other 直方图
+     */
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * 获取记录次数
+     *
+     * @return 记录次数
+     */
+    public long getCount() {
+        return total;
+    }
+
+    /**
+     * 获取最小延迟
+     *
+     * @return 最小延迟(ns)，未记录时为0
+     */
+    public long getMin() {
+        return total == 0 ? 0 : min;
+    }
+
+    /**
+     * 获取最大延迟
+     *
+     * @return 最大延迟(ns)
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * 获取平均延迟
+     *
+     * @return 平均延迟(ns)
+     */
+    public double getMean() {
+        return total == 0 ? 0 : sum / total;
+    }
+
+    /**
+     * 获取百分位延迟
+     *
+     * @param percentile 百分位，例如99.9
+     * @return 延迟(ns)
+     */
+    public long getPercentile(double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(valueOf(i), max);
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.harness;
+
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 压测执行器
+ *
+ * <p>
+ * 指定速率时为开环压测：每个线程按固定间隔计划发送时间，延迟从计划时间开始计算，
+ * 目标变慢时排队等待的时间也计入延迟，不会因协调遗漏（coordinated omission）低估尾延迟。
+ * 速率为0时为闭环压测，每个线程收到回复后立即发送下一条，用于测量最大吞吐。</p>
+ *
+ * <p>
+ * 分配速率为测量阶段全部线程分配字节数之差（需要HotSpot的<tt>com.sun.management.ThreadMXBean</tt>），
+ * 包含压测线程生成、签名消息的分配。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public class LoadRunner {
+
+    private final TrafficSource source;
+    private final Target target;
+    private final int threads;
+    private final int rate;
+
+    /**
+     * 创建执行器
+     *
+     * @param source 流量来源
+     * @param target 压测目标
+     * @param threads 线程数
+     * @param rate 每秒请求数，0为闭环压测
+     */
+    public LoadRunner(TrafficSource source, Target target, int threads, int rate) {
+        this.source = source;
+        this.target = target;
+        this.threads = Math.max(1, threads);
+        this.rate = Math.max(0, rate);
+    }
+
+    /**
+     * 执行压测
+     *
+     * @param warmupMillis 预热时间(ms)，不计入结果
+     * @param durationMillis 测量时间(ms)
+     * @return 压测结果
+     * @throws InterruptedException 线程中断
+     */
+    public Report run(long warmupMillis, long durationMillis) throws InterruptedException {
+        if (warmupMillis > 0) {
+            phase(warmupMillis);
+        }
+        return phase(durationMillis);
+    }
+
+    private Report phase(long millis) throws InterruptedException {
+        final Worker[] workers = new Worker[threads];
+        final CountDownLatch done = new CountDownLatch(threads);
+        //压测线程结束前等待统计分配字节数，已退出的线程不再计入
+        final CountDownLatch measured = new CountDownLatch(1);
+        //每个线程的发送间隔
+        final long interval = rate == 0 ? 0 : TimeUnit.SECONDS.toNanos(1) * threads / rate;
+        long gcCount = gcCount();
+        long gcTime = gcTime();
+        long allocated = allocatedBytes();
+        final long start = System.nanoTime();
+        final long end = start + TimeUnit.MILLISECONDS.toNanos(millis);
+        for (int i = 0; i < threads; i++) {
+            //错开各线程的首次发送
+            final long first = start + (interval * i) / threads;
+            workers[i] = new Worker(first, interval, end, done, measured);
+            Thread thread = new Thread(workers[i], "weixin4j-harness-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        Report report = new Report(rate, threads, elapsed, allocatedBytes() - allocated,
+                gcCount() - gcCount, gcTime() - gcTime);
+        measured.countDown();
+        for (Worker worker : workers) {
+            report.add(worker);
+        }
+        return report;
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return 0;
+        }
+        com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) bean;
+        if (!hotspot.isThreadAllocatedMemorySupported() || !hotspot.isThreadAllocatedMemoryEnabled()) {
+            return 0;
+        }
+        long sum = 0;
+        for (long bytes : hotspot.getThreadAllocatedBytes(hotspot.getAllThreadIds())) {
+            if (bytes > 0) {
+                sum += bytes;
+            }
+        }
+        return sum;
+    }
+
+    private static long gcCount() {
+        long sum = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            sum += Math.max(0, bean.getCollectionCount());
+        }
+        return sum;
+    }
+
+    private static long gcTime() {
+        long sum = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            sum += Math.max(0, bean.getCollectionTime());
+        }
+        return sum;
+    }
+
+    /**
+     * 压测线程
+     */
+    private final class Worker implements Runnable {
+
+        private final long first;
+        private final long interval;
+        private final long end;
+        private final CountDownLatch done;
+        private final CountDownLatch measured;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final Map<String, long[]> types = new TreeMap<String, long[]>();
+        private long errors;
+        private long bytes;
+        private Throwable lastError;
+
+        Worker(long first, long interval, long end, CountDownLatch done, CountDownLatch measured) {
+            this.first = first;
+            this.interval = interval;
+            this.end = end;
+            this.done = done;
+            this.measured = measured;
+        }
+
+        @Override
+        public void run() {
+            try {
+                long intended = first;
+                while (interval == 0 || intended < end) {
+                    Callback callback = source.next();
+                    long begin;
+                    if (interval > 0) {
+                        long wait;
+                        while ((wait = intended - System.nanoTime()) > 0) {
+                            LockSupport.parkNanos(wait);
+                        }
+                        begin = intended;
+                        intended += interval;
+                    } else {
+                        begin = System.nanoTime();
+                        if (begin >= end) {
+                            break;
+                        }
+                    }
+                    try {
+                        bytes += target.send(callback);
+                    } catch (Throwable ex) {
+                        errors++;
+                        lastError = ex;
+                    }
+                    histogram.record(System.nanoTime() - begin);
+                    long[] count = types.get(callback.getType());
+                    if (count == null) {
+                        count = new long[1];
+                        types.put(callback.getType(), count);
+                    }
+                    count[0]++;
+                }
+            } finally {
+                done.countDown();
+            }
+            try {
+                measured.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 压测结果
+     */
+    public static final class Report {
+
+        private final int rate;
+        private final int threads;
+        private final long elapsedNanos;
+        private final long allocatedBytes;
+        private final long gcCount;
+        private final long gcMillis;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final Map<String, long[]> types = new TreeMap<String, long[]>();
+        private long errors;
+        private long replyBytes;
+        private Throwable lastError;
+
+        Report(int rate, int threads, long elapsedNanos, long allocatedBytes, long gcCount, long gcMillis) {
+            this.rate = rate;
+            this.threads = threads;
+            this.elapsedNanos = elapsedNanos;
+            this.allocatedBytes = allocatedBytes;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+        }
+
+        void add(Worker worker) {
+            histogram.merge(worker.histogram);
+            errors += worker.errors;
+            replyBytes += worker.bytes;
+            if (worker.lastError != null) {
+                lastError = worker.lastError;
+            }
+            for (Map.Entry<String, long[]> entry : worker.types.entrySet()) {
+                long[] count = types.get(entry.getKey());
+                if (count == null) {
+                    types.put(entry.getKey(), new long[]{entry.getValue()[0]});
+                } else {
+                    count[0] += entry.getValue()[0];
+                }
+            }
+        }
+
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * 获取吞吐量
+         *
+         * @return 每秒完成的请求数
+         */
+        public double getThroughput() {
+            return histogram.getCount() * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * 获取分配速率
+         *
+         * @return 每秒分配的字节数，JVM不支持时为0
+         */
+        public double getAllocationRate() {
+            return allocatedBytes * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * 获取每个请求的平均分配字节数
+         *
+         * @return 字节数
+         */
+        public double getAllocatedPerRequest() {
+            return histogram.getCount() == 0 ? 0 : (double) allocatedBytes / histogram.getCount();
+        }
+
+        /**
+         * 输出结果
+         *
+         * @param out 输出流
+         */
+        public void print(PrintStream out) {
+            out.println("mode        : " + (rate == 0 ? "closed-loop" : "open-loop " + rate + "/s") + ", threads " + threads);
+            out.println(String.format("requests    : %d in %.2fs, errors %d, reply bytes %d",
+                    histogram.getCount(), elapsedNanos / 1e9, errors, replyBytes));
+            out.println(String.format("throughput  : %.1f req/s", getThroughput()));
+            out.println(String.format("latency(us) : mean %.1f, min %.1f, p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f",
+                    histogram.getMean() / 1e3, histogram.getMin() / 1e3, histogram.getPercentile(50) / 1e3,
+                    histogram.getPercentile(90) / 1e3, histogram.getPercentile(99) / 1e3,
+                    histogram.getPercentile(99.9) / 1e3, histogram.getMax() / 1e3));
+            out.println(String.format("allocation  : %.1f MB/s, %.0f B/req, gc %d times %d ms",
+                    getAllocationRate() / (1024 * 1024), getAllocatedPerRequest(), gcCount, gcMillis));
+            StringBuilder sb = new StringBuilder("mix         :");
+            for (Map.Entry<String, long[]> entry : types.entrySet()) {
+                sb.append(' ').append(entry.getKey()).append('=').append(entry.getValue()[0]);
+            }
+            out.println(sb);
+            if (lastError != null) {
+                out.println("last error  : " + lastError);
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.harness;
+
+/**
+ * 压测目标
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public interface Target {
+
+    /**
+     * 发送回调请求并等待回复
+     *
+     * @param callback 回调请求
+     * @return 回复字节数
+     * @throws Exception 处理异常
+     */
+    int send(Callback callback) throws Exception;
+}
@@ -0,0 +1,39 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.harness;
+
+/**
+ * 回调请求来源
+ *
+ * <p>
+ * 实现须线程安全，多个压测线程会同时调用<tt>next()</tt>。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public interface TrafficSource {
+
+    /**
+     * 生成下一个回调请求
+     *
+     * @return 回调请求
+     */
+    Callback next();
+}
@@ -0,0 +1,104 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.jmh;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import javax.servlet.ServletInputStream;
+
+/**
+ * 基准测试使用的回调消息样本
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+final class Callbacks {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    static final String TOKEN = "weixin4j";
+    static final String TIMESTAMP = "1500000000";
+    static final String NONCE = "1405729429";
+
+    private static final String HEADER = "<xml><ToUserName><![CDATA[gh_jmh]]></ToUserName>"
+            + "<FromUserName><![CDATA[o6_bmjrPTlm6_2sgVt7hMZOPfL2M]]></FromUserName><CreateTime>1500000000</CreateTime>";
+
+    private Callbacks() {
+    }
+
+    /**
+     * 获取消息样本
+     *
+     * @param type 消息类型，事件为event_事件类型
+     * @return 消息XML
+     */
+    static String xml(String type) {
+        if ("text".equals(type)) {
+            return HEADER + "<MsgType><![CDATA[text]]></MsgType><Content><![CDATA[查询订单 20170101]]></Content>"
+                    + "<MsgId>6438498541926842122</MsgId></xml>";
+        } else if ("image".equals(type)) {
+            return HEADER + "<MsgType><![CDATA[image]]></MsgType><PicUrl><![CDATA[http://mmbiz.qpic.cn/mmbiz/0]]></PicUrl>"
+                    + "<MediaId><![CDATA[media_id]]></MediaId><MsgId>6438498541926842123</MsgId></xml>";
+        } else if ("location".equals(type)) {
+            return HEADER + "<MsgType><![CDATA[location]]></MsgType><Location_X>23.134521</Location_X>"
+                    + "<Location_Y>113.358803</Location_Y><Scale>20</Scale><Label><![CDATA[广州市天河区]]></Label>"
+                    + "<MsgId>6438498541926842124</MsgId></xml>";
+        } else if ("event_subscribe".equals(type)) {
+            return HEADER + "<MsgType><![CDATA[event]]></MsgType><Event><![CDATA[subscribe]]></Event>"
+                    + "<EventKey><![CDATA[qrscene_123]]></EventKey><Ticket><![CDATA[ticket]]></Ticket></xml>";
+        } else if ("event_click".equals(type)) {
+            return HEADER + "<MsgType><![CDATA[event]]></MsgType><Event><![CDATA[CLICK]]></Event>"
+                    + "<EventKey><![CDATA[MENU_ABOUT]]></EventKey></xml>";
+        } else if ("event_location".equals(type)) {
+            return HEADER + "<MsgType><![CDATA[event]]></MsgType><Event><![CDATA[LOCATION]]></Event>"
+                    + "<Latitude>23.137466</Latitude><Longitude>113.352425</Longitude><Precision>119.385040</Precision></xml>";
+        }
+        throw new IllegalArgumentException("unknown message type " + type);
+    }
+
+    /**
+     * 基于字节数组的Servlet输入流，模拟容器的请求体
+     */
+    static final class BodyInputStream extends ServletInputStream {
+
+        private final byte[] body;
+        private int pos;
+
+        BodyInputStream(byte[] body) {
+            this.body = body;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return pos < body.length ? body[pos++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (pos >= body.length) {
+                return -1;
+            }
+            int n = Math.min(len, body.length - pos);
+            System.arraycopy(body, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.jmh;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 带GC分析的基准测试入口
+ *
+ * <p>
+ * 等同于<tt>java -jar target/benchmarks.jar -prof gc</tt>，输出每次操作的分配字节数（gc.alloc.rate.norm）
+ * 和GC次数，其余参数与JMH命令行相同，例如只运行解析测试：</p>
+ * <pre>
+ * mvn package
+ * java -cp target/benchmarks.jar org.weixin4j.jmh.GcBenchmarks ParseBenchmark -rf json -rff baseline.json
+ * </pre>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public class GcBenchmarks {
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
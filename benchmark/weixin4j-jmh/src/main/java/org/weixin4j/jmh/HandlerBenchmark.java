@@ -0,0 +1,114 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.jmh;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.weixin4j.model.message.InputMessage;
+import org.weixin4j.model.message.OutputMessage;
+import org.weixin4j.spi.DefaultMessageHandler;
+import org.weixin4j.util.InputMessageParser;
+import org.weixin4j.util.ReplyWriter;
+
+/**
+ * 消息分发和端到端处理
+ *
+ * <p>
+ * 使用默认的普通消息和事件处理器。样本消息的MsgId固定，测量时关闭排重，
+ * 否则除第一次外都会命中排重直接返回；排重本身的开销由dedup单独测量。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandlerBenchmark {
+
+    @Param({"text", "location", "event_subscribe", "event_click"})
+    private String type;
+
+    private DefaultMessageHandler handler;
+    private DefaultMessageHandler dedupHandler;
+    private String xml;
+    private byte[] body;
+    private InputMessage inputMsg;
+
+    @Setup
+    public void setup() throws Exception {
+        handler = new DefaultMessageHandler();
+        handler.setDeduplicator(null);
+        dedupHandler = new DefaultMessageHandler();
+        xml = Callbacks.xml(type);
+        body = xml.getBytes(Callbacks.UTF_8);
+        inputMsg = InputMessageParser.parse(xml);
+    }
+
+    /**
+     * 分发已解析的消息
+     */
+    @Benchmark
+    public OutputMessage dispatch() throws Exception {
+        return handler.process(inputMsg);
+    }
+
+    /**
+     * 排重命中时的处理
+     */
+    @Benchmark
+    public OutputMessage dedup() throws Exception {
+        return dedupHandler.process(inputMsg);
+    }
+
+    /**
+     * 端到端：解析字符串、分发、回复序列化为字符串
+     */
+    @Benchmark
+    public String invoke() throws Exception {
+        return handler.invoke(xml);
+    }
+
+    /**
+     * 端到端：与WeixinUrlFilter相同，读取请求体、分发、回复写出为UTF-8字节
+     */
+    @Benchmark
+    public int process() throws Exception {
+        OutputMessage outputMsg = handler.process(new Callbacks.BodyInputStream(body));
+        if (outputMsg == null) {
+            return 0;
+        }
+        ReplyWriter writer = ReplyWriter.local();
+        outputMsg.writeXML(writer);
+        return writer.length();
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.weixin4j.model.message.Articles;
+import org.weixin4j.model.message.Image;
+import org.weixin4j.model.message.Music;
+import org.weixin4j.model.message.OutputMessage;
+import org.weixin4j.model.message.Video;
+import org.weixin4j.model.message.Voice;
+import org.weixin4j.model.message.output.ImageOutputMessage;
+import org.weixin4j.model.message.output.MusicOutputMessage;
+import org.weixin4j.model.message.output.NewsOutputMessage;
+import org.weixin4j.model.message.output.TemplateOutputMessage;
+import org.weixin4j.model.message.output.TextOutputMessage;
+import org.weixin4j.model.message.output.VideoOutputMessage;
+import org.weixin4j.model.message.output.VoiceOutputMessage;
+import org.weixin4j.util.ReplyWriter;
+
+/**
+ * 回复消息序列化
+ *
+ * <p>
+ * toXML为返回字符串的旧路径，writeXML为WeixinUrlFilter直接写出UTF-8字节的路径，
+ * template为ReplyTemplateCache命中时的预渲染回复。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputMessageBenchmark {
+
+    @Param({"text", "image", "voice", "video", "music", "news"})
+    private String type;
+
+    private OutputMessage message;
+    private TemplateOutputMessage.Template template;
+
+    @Setup
+    public void setup() {
+        message = create(type);
+        template = TemplateOutputMessage.compile(create(type));
+        if (template == null) {
+            throw new IllegalStateException("template not supported for " + type);
+        }
+    }
+
+    static OutputMessage create(String type) {
+        OutputMessage message;
+        if ("text".equals(type)) {
+            message = new TextOutputMessage("您好，您的订单20170101已发货，请注意查收。回复1查看物流，回复2联系客服。");
+        } else if ("image".equals(type)) {
+            Image image = new Image();
+            image.setMediaId("Xm9fGk2Pm5SjYb1vC8tDmEwZq7LrN3aU0oH6iTsBcJdKfQ4");
+            message = new ImageOutputMessage(image);
+        } else if ("voice".equals(type)) {
+            Voice voice = new Voice();
+            voice.setMediaId("Xm9fGk2Pm5SjYb1vC8tDmEwZq7LrN3aU0oH6iTsBcJdKfQ4");
+            message = new VoiceOutputMessage(voice);
+        } else if ("video".equals(type)) {
+            Video video = new Video();
+            video.setMediaId("Xm9fGk2Pm5SjYb1vC8tDmEwZq7LrN3aU0oH6iTsBcJdKfQ4");
+            video.setTitle("新品发布会");
+            video.setDescription("2017春季新品发布会现场回顾");
+            message = new VideoOutputMessage(video);
+        } else if ("music".equals(type)) {
+            Music music = new Music();
+            music.setTitle("品牌主题曲");
+            music.setDescription("weixin4j");
+            music.setMusicUrl("http://www.weixin4j.org/music.mp3");
+            music.setHQMusicUrl("http://www.weixin4j.org/music_hq.mp3");
+            music.setThumbMediaId("Xm9fGk2Pm5SjYb1vC8tDmEwZq7LrN3aU0oH6iTsBcJdKfQ4");
+            message = new MusicOutputMessage(music);
+        } else {
+            List<Articles> list = new ArrayList<Articles>();
+            for (int i = 0; i < 3; i++) {
+                Articles articles = new Articles();
+                articles.setTitle("本周精选 第" + (i + 1) + "篇");
+                articles.setDescription("微信公众平台开发实践");
+                articles.setPicUrl("http://www.weixin4j.org/images/" + i + ".jpg");
+                articles.setUrl("http://www.weixin4j.org/articles/" + i);
+                list.add(articles);
+            }
+            NewsOutputMessage news = new NewsOutputMessage();
+            news.setArticles(list);
+            message = news;
+        }
+        message.setToUserName("o6_bmjrPTlm6_2sgVt7hMZOPfL2M");
+        message.setFromUserName("gh_jmh");
+        message.setCreateTime(1500000000L);
+        return message;
+    }
+
+    @Benchmark
+    public String toXML() {
+        return message.toXML();
+    }
+
+    @Benchmark
+    public int writeXML() {
+        ReplyWriter writer = ReplyWriter.local();
+        message.writeXML(writer);
+        return writer.length();
+    }
+
+    @Benchmark
+    public int template() {
+        TemplateOutputMessage reply = template.newMessage();
+        reply.setToUserName("o6_bmjrPTlm6_2sgVt7hMZOPfL2M");
+        reply.setFromUserName("gh_jmh");
+        reply.setCreateTime(1500000000L);
+        ReplyWriter writer = ReplyWriter.local();
+        reply.writeXML(writer);
+        return writer.length();
+    }
+}
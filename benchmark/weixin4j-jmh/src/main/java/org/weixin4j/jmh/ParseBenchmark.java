@@ -0,0 +1,79 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.jmh;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.weixin4j.model.message.InputMessage;
+import org.weixin4j.util.InputMessageParser;
+import org.weixin4j.util.XStreamFactory;
+
+/**
+ * 请求体读取和消息解析
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"text", "image", "location", "event_subscribe", "event_click", "event_location"})
+    private String type;
+
+    private String xml;
+    private byte[] body;
+
+    @Setup
+    public void setup() {
+        xml = Callbacks.xml(type);
+        body = xml.getBytes(Callbacks.UTF_8);
+    }
+
+    @Benchmark
+    public String inputStream2String() throws Exception {
+        return XStreamFactory.inputStream2String(new ByteArrayInputStream(body));
+    }
+
+    @Benchmark
+    public InputMessage parseStream() throws Exception {
+        return InputMessageParser.parse(new ByteArrayInputStream(body));
+    }
+
+    @Benchmark
+    public InputMessage parseString() throws Exception {
+        return InputMessageParser.parse(xml);
+    }
+}
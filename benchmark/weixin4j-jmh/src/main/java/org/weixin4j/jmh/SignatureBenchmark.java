@@ -0,0 +1,75 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.jmh;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.weixin4j.util.TokenUtil;
+
+/**
+ * 回调签名校验
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SignatureBenchmark {
+
+    private String signature;
+
+    @Setup
+    public void setup() throws Exception {
+        String[] values = {Callbacks.TOKEN, Callbacks.TIMESTAMP, Callbacks.NONCE};
+        Arrays.sort(values);
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        for (String value : values) {
+            digest.update(value.getBytes(Callbacks.UTF_8));
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        signature = sb.toString();
+        if (!TokenUtil.checkSignature(Callbacks.TOKEN, signature, Callbacks.TIMESTAMP, Callbacks.NONCE)) {
+            throw new IllegalStateException("signature mismatch");
+        }
+    }
+
+    @Benchmark
+    public boolean checkSignature() {
+        return TokenUtil.checkSignature(Callbacks.TOKEN, signature, Callbacks.TIMESTAMP, Callbacks.NONCE);
+    }
+}
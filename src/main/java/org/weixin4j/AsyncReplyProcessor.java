@@ -0,0 +1,316 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.weixin4j.model.message.InputMessage;
+import org.weixin4j.model.message.OutputMessage;
+import org.weixin4j.spi.DefaultMessageHandler;
+import org.weixin4j.spi.IMessageHandler;
+import org.weixin4j.spi.pipeline.MessagePipeline;
+import org.weixin4j.util.HashedWheelTimer;
+import org.weixin4j.util.InputMessageParser;
+import org.weixin4j.util.MessageCrypt;
+import org.weixin4j.util.RequestBody;
+import org.weixin4j.util.StripedExecutor;
+
+/**
+ * 异步消息处理器
+ *
+ * <p>
+ * 微信服务器最多等待5秒被动回复，超时后会重试3次。异步模式下消息交由有界线程池处理，
+ * 容器线程立即释放；处理在回复期限内完成时正常被动回复，否则先回复success结束本次请求，
+ * 处理完成后再通过客服消息接口补发回复内容。</p>
+ *
+ * <p>
+ * 线程池队列已满时在容器线程中同步处理，对上游形成背压。</p>
+ *
+ * <p>
+ * <tt>DefaultMessageHandler</tt>设置了有序执行器时，改为按FromUserName分片处理，
+ * 同一粉丝的消息按到达顺序处理；分片队列已满时直接回复success并丢弃该消息，
+ * 不在容器线程中处理，以免打乱该粉丝的消息顺序。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+@Slf4j
+final class AsyncReplyProcessor {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * 超时回复内容，微信服务器收到后不再重试
+     */
+    static final String SUCCESS = "success";
+
+    private final WeixinUrlFilter filter;
+    private final ThreadPoolExecutor executor;
+    private final HashedWheelTimer timer;
+    private final long replyTimeout;
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong lateSentCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * 创建异步消息处理器
+     *
+     * @param filter 所属拦截器，用于获取补发客服消息的微信对象
+     * @param threads 处理线程数
+     * @param queueSize 等待队列长度
+     * @param replyTimeout 被动回复期限(ms)
+     */
+    AsyncReplyProcessor(WeixinUrlFilter filter, int threads, int queueSize, long replyTimeout) {
+        this.filter = filter;
+        this.replyTimeout = replyTimeout;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+            private final AtomicInteger index = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "weixin4j-reply-" + index.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+        //超时任务只写出success，直接在时间轮线程中执行
+        this.timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS, 512, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+    }
+
+    /**
+     * 异步处理消息
+     *
+     * @param request 请求
+     * @param response 响应
+     * @param messageHandler 消息处理器
+     * @param crypt 消息加解密工具，明文模式为null
+     * @param permit 处理许可，处理完成后释放，未限制并发时为null
+     * @return 是否已交由处理线程，为true时许可由处理线程释放
+     * @throws IOException 读取请求体异常
+     */
+    boolean process(HttpServletRequest request, HttpServletResponse response, final IMessageHandler messageHandler,
+            final MessageCrypt crypt, final LoadShedder.Permit permit) throws IOException {
+        final String timestamp = request.getParameter("timestamp");
+        final String nonce = request.getParameter("nonce");
+        //请求体在容器线程中读取，复制后交给处理线程
+        RequestBody requestBody = RequestBody.read(request.getInputStream());
+        final byte[] body;
+        final InputMessage inputMsg;
+        try {
+            if (crypt == null) {
+                body = requestBody.toByteArray();
+            } else {
+                //校验msg_signature并解密
+                body = crypt.decryptMessage(requestBody.openStream(), request.getParameter("msg_signature"), timestamp, nonce)
+                        .getBytes(UTF_8);
+            }
+            if (messageHandler instanceof DefaultMessageHandler) {
+                DefaultMessageHandler handler = (DefaultMessageHandler) messageHandler;
+                handler.record(body, 0, body.length);
+                long start = handler.getPipeline().startTiming();
+                inputMsg = InputMessageParser.parse(new ByteArrayInputStream(body));
+                handler.getPipeline().record(MessagePipeline.STAGE_PARSE, start);
+            } else {
+                inputMsg = InputMessageParser.parse(new ByteArrayInputStream(body));
+            }
+        } catch (Exception ex) {
+            log.warn("weixin4j:消息解析失败", ex);
+            response.getWriter().write("");
+            return false;
+        }
+        AsyncContext context = request.startAsync(request, response);
+        //容器超时仅作兜底，正常情况下由时间轮在回复期限到达时结束请求
+        context.setTimeout(replyTimeout + 10000);
+        final Reply reply = new Reply(context);
+        context.addListener(reply);
+        final HashedWheelTimer.Timeout timeout = timer.newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                if (reply.complete(SUCCESS)) {
+                    timeoutCount.incrementAndGet();
+                    if (log.isDebugEnabled()) {
+                        log.debug("weixin4j:消息处理超过" + replyTimeout + "ms，已回复success");
+                    }
+                }
+            }
+        }, replyTimeout, TimeUnit.MILLISECONDS);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                OutputMessage outputMsg = null;
+                String xml = "";
+                try {
+                    if (messageHandler instanceof DefaultMessageHandler) {
+                        MessagePipeline pipeline = ((DefaultMessageHandler) messageHandler).getPipeline();
+                        outputMsg = ((DefaultMessageHandler) messageHandler).process(inputMsg);
+                        if (outputMsg != null) {
+                            long start = pipeline.startTiming();
+                            xml = outputMsg.toXML();
+                            pipeline.record(MessagePipeline.STAGE_SERIALIZE, start);
+                        }
+                    } else {
+                        xml = messageHandler.invoke(new String(body, UTF_8));
+                    }
+                    if (crypt != null && !xml.isEmpty()) {
+                        //加密回复消息
+                        xml = crypt.encryptReply(xml, timestamp, nonce);
+                    }
+                } catch (Exception ex) {
+                    log.error("weixin4j:消息处理异常", ex);
+                } finally {
+                    if (permit != null) {
+                        permit.release();
+                    }
+                }
+                if (reply.complete(xml)) {
+                    timeout.cancel();
+                    return;
+                }
+                //已超时回复success，通过客服消息补发
+                deliverLate(inputMsg, outputMsg, xml);
+            }
+        };
+        StripedExecutor ordered = messageHandler instanceof DefaultMessageHandler
+                ? ((DefaultMessageHandler) messageHandler).getExecutor() : null;
+        try {
+            if (ordered != null) {
+                //按粉丝分片处理，保证同一粉丝的消息顺序
+                ordered.execute(inputMsg.getFromUserName(), task);
+            } else {
+                executor.execute(task);
+            }
+        } catch (RejectedExecutionException ex) {
+            rejectedCount.incrementAndGet();
+            if (ordered == null) {
+                task.run();
+            } else {
+                //在容器线程中处理会打乱该粉丝的消息顺序，回复success丢弃
+                log.warn("weixin4j:分片队列已满，丢弃" + inputMsg.getFromUserName() + "的消息:[" + inputMsg.getMsgType() + "]");
+                if (reply.complete(SUCCESS)) {
+                    timeout.cancel();
+                }
+                if (permit != null) {
+                    permit.release();
+                }
+            }
+        }
+        return true;
+    }
+
+    private void deliverLate(InputMessage inputMsg, OutputMessage outputMsg, String xml) {
+        if (outputMsg == null) {
+            if (xml != null && !xml.isEmpty()) {
+                log.warn("weixin4j:回复已超时，自定义IMessageHandler的回复无法以客服消息补发");
+            }
+            return;
+        }
+        try {
+            filter.getWeixin().message().customSend(inputMsg.getFromUserName(), outputMsg);
+            lateSentCount.incrementAndGet();
+        } catch (WeixinException ex) {
+            log.warn("weixin4j:以客服消息补发回复失败", ex);
+        }
+    }
+
+    long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    long getLateSentCount() {
+        return lateSentCount.get();
+    }
+
+    long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    void shutdown() {
+        timer.stop();
+        executor.shutdown();
+    }
+
+    /**
+     * 单次请求的回复，处理线程与超时任务竞争，只有一方写出响应
+     */
+    private static final class Reply implements AsyncListener {
+
+        private final AsyncContext context;
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        Reply(AsyncContext context) {
+            this.context = context;
+        }
+
+        boolean complete(String content) {
+            if (!done.compareAndSet(false, true)) {
+                return false;
+            }
+            try {
+                context.getResponse().getWriter().write(content);
+            } catch (Exception ex) {
+                log.warn("weixin4j:写出回复失败", ex);
+            } finally {
+                context.complete();
+            }
+            return true;
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) throws IOException {
+            complete(SUCCESS);
+        }
+
+        @Override
+        public void onError(AsyncEvent event) throws IOException {
+            done.set(true);
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) throws IOException {
+            done.set(true);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) throws IOException {
+        }
+    }
+}
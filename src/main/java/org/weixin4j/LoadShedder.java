@@ -0,0 +1,330 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import org.weixin4j.util.RequestBody;
+
+/**
+ * 消息处理并发限制
+ *
+ * <p>
+ * 限制同时处理的消息数，超过上限的请求不解析、直接回复，避免请求在容器中排队直至微信超时重试，
+ * 进一步放大负载。按事件类型分三个优先级：</p>
+ * <ul>
+ * <li>高优先级（默认subscribe、unsubscribe）：可使用全部名额</li>
+ * <li>普通（其他消息和事件）：为高优先级保留部分名额</li>
+ * <li>低优先级（默认location）：最多使用低优先级上限的名额</li>
+ * </ul>
+ *
+ * <p>
+ * 处理数低于低优先级上限时直接放行，不读取请求体；超过后读取请求体，
+ * 按字节查找Event节点确定优先级，不做XML解析。安全模式下事件类型不可见，按普通优先级处理。</p>
+ *
+ * <p>
+ * 实例以<tt>LoadShedder.ATTRIBUTE</tt>为名保存在ServletContext中，可读取各项计数用于监控。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public final class LoadShedder {
+
+    /**
+     * ServletContext属性名
+     */
+    public static final String ATTRIBUTE = LoadShedder.class.getName();
+
+    static final int HIGH = 0;
+    static final int NORMAL = 1;
+    static final int LOW = 2;
+
+    private static final byte[] EVENT_START = "<Event><![CDATA[".getBytes();
+
+    private final int maxInFlight;
+    private final int normalLimit;
+    private final int lowLimit;
+    private final String[] highEvents;
+    private final String[] lowEvents;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final AtomicLong admittedCount = new AtomicLong();
+    private final AtomicLong[] shedCounts = {new AtomicLong(), new AtomicLong(), new AtomicLong()};
+
+    /**
+     * 创建并发限制
+     *
+     * @param maxInFlight 最大处理数
+     * @param highReserve 为高优先级保留的名额
+     * @param lowLimit 低优先级上限
+     * @param highEvents 高优先级事件类型
+     * @param lowEvents 低优先级事件类型
+     */
+    LoadShedder(int maxInFlight, int highReserve, int lowLimit, String[] highEvents, String[] lowEvents) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        }
+        this.maxInFlight = maxInFlight;
+        this.normalLimit = Math.max(1, maxInFlight - Math.max(0, highReserve));
+        this.lowLimit = Math.max(1, Math.min(lowLimit, normalLimit));
+        this.highEvents = lowerCase(highEvents);
+        this.lowEvents = lowerCase(lowEvents);
+    }
+
+    private static String[] lowerCase(String[] events) {
+        String[] result = new String[events.length];
+        for (int i = 0; i < events.length; i++) {
+            result[i] = events[i].trim().toLowerCase(Locale.ENGLISH);
+        }
+        return result;
+    }
+
+    /**
+     * 申请处理名额
+     *
+     * @param request 请求
+     * @return 处理许可，超过上限时返回null
+     * @throws IOException 读取请求体异常
+     */
+    Permit acquire(HttpServletRequest request) throws IOException {
+        if (tryAcquire(lowLimit)) {
+            return new Permit(request);
+        }
+        //名额紧张，读取请求体确定优先级
+        byte[] body = RequestBody.read(request.getInputStream()).toByteArray();
+        int priority = priorityOf(body);
+        int limit = priority == HIGH ? maxInFlight : priority == NORMAL ? normalLimit : lowLimit;
+        if (!tryAcquire(limit)) {
+            shedCounts[priority].incrementAndGet();
+            return null;
+        }
+        return new Permit(new BufferedRequest(request, body));
+    }
+
+    private boolean tryAcquire(int limit) {
+        for (;;) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                admittedCount.incrementAndGet();
+                int peak;
+                while ((peak = peakInFlight.get()) <= current && !peakInFlight.compareAndSet(peak, current + 1)) {
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 按Event节点确定优先级
+     *
+     * @param body 请求体
+     * @return 优先级
+     */
+    int priorityOf(byte[] body) {
+        int start = indexOf(body, EVENT_START);
+        if (start < 0) {
+            return NORMAL;
+        }
+        start += EVENT_START.length;
+        int end = start;
+        while (end < body.length && body[end] != ']') {
+            end++;
+        }
+        if (matches(body, start, end, highEvents)) {
+            return HIGH;
+        }
+        if (matches(body, start, end, lowEvents)) {
+            return LOW;
+        }
+        return NORMAL;
+    }
+
+    private static int indexOf(byte[] body, byte[] target) {
+        outer:
+        for (int i = 0, last = body.length - target.length; i <= last; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (body[i + j] != target[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static boolean matches(byte[] body, int start, int end, String[] events) {
+        outer:
+        for (String event : events) {
+            if (event.length() != end - start) {
+                continue;
+            }
+            for (int i = 0; i < event.length(); i++) {
+                int b = body[start + i];
+                if (b >= 'A' && b <= 'Z') {
+                    b += 'a' - 'A';
+                }
+                if (b != event.charAt(i)) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 获取最大处理数
+     *
+     * @return 最大处理数
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * 获取当前处理数
+     *
+     * @return 当前处理数
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * 获取处理数峰值
+     *
+     * @return 处理数峰值
+     */
+    public int getPeakInFlight() {
+        return peakInFlight.get();
+    }
+
+    /**
+     * 获取放行的请求数
+     *
+     * @return 放行的请求数
+     */
+    public long getAdmittedCount() {
+        return admittedCount.get();
+    }
+
+    /**
+     * 获取拒绝的请求总数
+     *
+     * @return 拒绝的请求总数
+     */
+    public long getShedCount() {
+        return shedCounts[HIGH].get() + shedCounts[NORMAL].get() + shedCounts[LOW].get();
+    }
+
+    /**
+     * 获取拒绝的高优先级请求数
+     *
+     * @return 拒绝的请求数
+     */
+    public long getShedHighCount() {
+        return shedCounts[HIGH].get();
+    }
+
+    /**
+     * 获取拒绝的普通请求数
+     *
+     * @return 拒绝的请求数
+     */
+    public long getShedNormalCount() {
+        return shedCounts[NORMAL].get();
+    }
+
+    /**
+     * 获取拒绝的低优先级请求数
+     *
+     * @return 拒绝的请求数
+     */
+    public long getShedLowCount() {
+        return shedCounts[LOW].get();
+    }
+
+    /**
+     * 处理许可，处理完成后释放，重复释放无效
+     */
+    final class Permit {
+
+        private final HttpServletRequest request;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Permit(HttpServletRequest request) {
+            this.request = request;
+        }
+
+        /**
+         * 获取后续处理使用的请求，已读取请求体时请求体可重新读取
+         *
+         * @return 请求
+         */
+        HttpServletRequest getRequest() {
+            return request;
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 请求体已读取的请求
+     */
+    static final class BufferedRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+
+        BufferedRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            final ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public int read() throws IOException {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    return in.read(b, off, len);
+                }
+            };
+        }
+    }
+}
@@ -22,6 +22,14 @@ package org.weixin4j;
 import org.weixin4j.model.base.Token;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import lombok.extern.slf4j.Slf4j;
 import org.weixin4j.component.AbstractComponent;
 import org.weixin4j.component.BaseComponent;
 import org.weixin4j.component.FileComponent;
@@ -41,8 +49,11 @@ import org.weixin4j.loader.DefaultTokenLoader;
 import org.weixin4j.loader.DefaultTicketLoader;
 import org.weixin4j.loader.ITokenLoader;
 import org.weixin4j.loader.ITicketLoader;
+import org.weixin4j.loader.MappedFileTicketLoader;
+import org.weixin4j.loader.MappedFileTokenLoader;
 import org.weixin4j.model.js.Ticket;
 import org.weixin4j.model.js.TicketType;
+import org.weixin4j.quota.TokenQuota;
 
 /**
  * 微信平台基础支持对象
@@ -50,12 +61,43 @@ import org.weixin4j.model.js.TicketType;
  * @author yangqisheng
  * @since 0.0.1
  */
+@Slf4j
 public class Weixin extends WeixinSupport implements java.io.Serializable {
 
     /**
-     * 同步锁
+     * Ticket提前刷新时间(ms)，剩余有效期小于该值时在后台刷新
+     *
+     * @since 0.1.6
+     */
+    private final static long TICKET_REFRESH_AHEAD = Configuration.getIntProperty("weixin4j.ticket.refreshAhead", 300000);
+    /**
+     * Ticket后台刷新线程池，所有公众号共用
+     *
+     * @since 0.1.6
+     */
+    private final static ThreadPoolExecutor REFRESH_EXECUTOR = new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(1024), new ThreadFactory() {
+        private final AtomicInteger index = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "weixin4j-ticket-refresh-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    /**
+     * AccessToken获取锁，每个公众号独立，避免多公众号之间相互等待
      */
-    private final static byte[] LOCK = new byte[0];
+    private final byte[] tokenLock = new byte[0];
+    /**
+     * 各类型Ticket的获取锁，保证同一类型同时只有一个请求访问微信服务器
+     */
+    private final byte[][] ticketLocks = new byte[TicketType.values().length][0];
+    /**
+     * 各类型Ticket是否正在后台刷新，1表示刷新中
+     */
+    private final AtomicIntegerArray ticketRefreshing = new AtomicIntegerArray(TicketType.values().length);
     /**
      * 公众号开发者ID
      */
@@ -84,6 +126,12 @@ public class Weixin extends WeixinSupport implements java.io.Serializable {
      * Ticket加载器
      */
     protected ITicketLoader ticketLoader = new DefaultTicketLoader();
+    /**
+     * AccessToken获取配额计数器，为空时使用全局计数器
+     *
+     * @since 0.1.6
+     */
+    protected transient TokenQuota tokenQuota;
     /**
      * 新增组件
      */
@@ -183,17 +231,63 @@ public class Weixin extends WeixinSupport implements java.io.Serializable {
     public Token getToken() throws WeixinException {
         Token token = tokenLoader.get();
         if (token == null) {
-            synchronized (LOCK) {
+            synchronized (tokenLock) {
                 token = tokenLoader.get();
                 if (token == null) {
-                    token = base().token();
-                    tokenLoader.refresh(token);
+                    boolean refreshed = false;
+                    try {
+                        token = base().token();
+                        tokenLoader.refresh(token);
+                        refreshed = true;
+                    } finally {
+                        if (!refreshed && tokenLoader instanceof MappedFileTokenLoader) {
+                            //获取失败，释放刷新锁，避免其他进程一直等待
+                            ((MappedFileTokenLoader) tokenLoader).abort();
+                        }
+                    }
                 }
             }
         }
         return token;
     }
 
+    /**
+     * 立即从微信服务器获取access_token，并更新到加载器
+     *
+     * <p>
+     * 使用<tt>MappedFileTokenLoader</tt>多进程共享access_token时，只有获得刷新锁的进程才会请求微信服务器，
+     * 其他进程正在刷新或刚刚刷新时直接返回共享区中的access_token，避免新凭证相互作废并重复消耗配额。</p>
+     *
+     * @return 新获取的Token对象
+     * @throws org.weixin4j.WeixinException 微信操作异常
+     * @since 0.1.6
+     */
+    public Token refreshToken() throws WeixinException {
+        synchronized (tokenLock) {
+            if (tokenLoader instanceof MappedFileTokenLoader) {
+                Token seen = tokenLoader.get();
+                if (seen != null && !((MappedFileTokenLoader) tokenLoader).tryLead(seen)) {
+                    //其他进程正在刷新或已刷新，不再请求微信服务器
+                    Token current = tokenLoader.get();
+                    if (current != null) {
+                        return current;
+                    }
+                }
+            }
+            boolean refreshed = false;
+            try {
+                Token token = base().token();
+                tokenLoader.refresh(token);
+                refreshed = true;
+                return token;
+            } finally {
+                if (!refreshed && tokenLoader instanceof MappedFileTokenLoader) {
+                    ((MappedFileTokenLoader) tokenLoader).abort();
+                }
+            }
+        }
+    }
+
     /**
      * 获取jsapi开发ticket
      *
@@ -201,19 +295,131 @@ public class Weixin extends WeixinSupport implements java.io.Serializable {
      * @throws org.weixin4j.WeixinException 微信操作异常
      */
     public Ticket getJsApiTicket() throws WeixinException {
-        Ticket ticket = ticketLoader.get(TicketType.JSAPI);
+        return getTicket(TicketType.JSAPI);
+    }
+
+    /**
+     * 获取卡券api_ticket
+     *
+     * @return wx_card类型的ticket
+     * @throws org.weixin4j.WeixinException 微信操作异常
+     * @since 0.1.6
+     */
+    public Ticket getWxCardTicket() throws WeixinException {
+        return getTicket(TicketType.WX_CARD);
+    }
+
+    /**
+     * 获取指定类型的ticket
+     *
+     * <p>
+     * 只有在加载器中没有有效ticket时才会同步请求微信服务器，同一类型同时只有一个请求；
+     * 当ticket剩余有效期不足weixin4j.ticket.refreshAhead(默认5分钟)时，
+     * 直接返回当前ticket，并在后台线程中提前刷新。</p>
+     *
+     * @param ticketType 临时票据类型
+     * @return 有效的ticket
+     * @throws org.weixin4j.WeixinException 微信操作异常
+     * @since 0.1.6
+     */
+    public Ticket getTicket(TicketType ticketType) throws WeixinException {
+        Ticket ticket = ticketLoader.get(ticketType);
         if (ticket == null) {
-            synchronized (LOCK) {
-                ticket = ticketLoader.get(TicketType.JSAPI);
+            synchronized (ticketLocks[ticketType.ordinal()]) {
+                ticket = ticketLoader.get(ticketType);
                 if (ticket == null) {
-                    ticket = js().getJsApiTicket();
-                    ticketLoader.refresh(ticket);
+                    boolean refreshed = false;
+                    try {
+                        ticket = js().getTicket(ticketType);
+                        ticketLoader.refresh(ticket);
+                        refreshed = true;
+                    } finally {
+                        if (!refreshed && ticketLoader instanceof MappedFileTicketLoader) {
+                            ((MappedFileTicketLoader) ticketLoader).abort(ticketType);
+                        }
+                    }
                 }
             }
+        } else if (ticket.getExprexpired_time() - System.currentTimeMillis() < TICKET_REFRESH_AHEAD) {
+            refreshTicketAsync(ticketType);
         }
         return ticket;
     }
 
+    /**
+     * 立即从微信服务器获取指定类型的ticket，并更新到加载器
+     *
+     * <p>
+     * 使用<tt>MappedFileTicketLoader</tt>多进程共享ticket时，只有获得刷新锁的进程才会请求微信服务器，
+     * 其他进程正在刷新或刚刚刷新时直接返回共享区中的ticket。</p>
+     *
+     * @param ticketType 临时票据类型
+     * @return 新获取的ticket
+     * @throws org.weixin4j.WeixinException 微信操作异常
+     * @since 0.1.6
+     */
+    public Ticket refreshTicket(TicketType ticketType) throws WeixinException {
+        synchronized (ticketLocks[ticketType.ordinal()]) {
+            if (ticketLoader instanceof MappedFileTicketLoader) {
+                Ticket seen = ticketLoader.get(ticketType);
+                if (seen != null && !((MappedFileTicketLoader) ticketLoader).tryLead(ticketType, seen)) {
+                    //其他进程正在刷新或已刷新，不再请求微信服务器
+                    Ticket current = ticketLoader.get(ticketType);
+                    if (current != null) {
+                        return current;
+                    }
+                }
+            }
+            boolean refreshed = false;
+            try {
+                Ticket ticket = js().getTicket(ticketType);
+                ticketLoader.refresh(ticket);
+                refreshed = true;
+                return ticket;
+            } finally {
+                if (!refreshed && ticketLoader instanceof MappedFileTicketLoader) {
+                    ((MappedFileTicketLoader) ticketLoader).abort(ticketType);
+                }
+            }
+        }
+    }
+
+    /**
+     * 在后台线程中刷新ticket，同一类型同时只提交一个刷新任务
+     */
+    private void refreshTicketAsync(final TicketType ticketType) {
+        final int index = ticketType.ordinal();
+        if (!ticketRefreshing.compareAndSet(index, 0, 1)) {
+            return;
+        }
+        try {
+            REFRESH_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        refreshTicket(ticketType);
+                    } catch (Exception ex) {
+                        log.warn("weixin4j:后台刷新" + ticketType + " ticket失败", ex);
+                    } finally {
+                        ticketRefreshing.set(index, 0);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            ticketRefreshing.set(index, 0);
+        }
+    }
+
+    /**
+     * 获取AccessToken获取配额计数器
+     *
+     * @return 配额计数器
+     * @since 0.1.6
+     */
+    public TokenQuota getTokenQuota() {
+        return tokenQuota != null ? tokenQuota : TokenQuota.getDefault();
+    }
+
     public BaseComponent base() {
         String key = BaseComponent.class.getName();
         if (components.containsKey(key)) {
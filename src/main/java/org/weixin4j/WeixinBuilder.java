@@ -23,6 +23,7 @@ import org.weixin4j.factory.WeixinFactory;
 import org.weixin4j.factory.defaults.DefaultWeixinFactory;
 import org.weixin4j.loader.ITicketLoader;
 import org.weixin4j.loader.ITokenLoader;
+import org.weixin4j.quota.TokenQuota;
 
 /**
  * 微信对象构建器
@@ -35,6 +36,7 @@ public final class WeixinBuilder {
     private Weixin weixin;
     private ITokenLoader tokenLoader;
     private ITicketLoader ticketLoader;
+    private TokenQuota tokenQuota;
 
     /**
      * 获取一个新的微信构建器
@@ -128,6 +130,21 @@ public final class WeixinBuilder {
         return this;
     }
 
+    /**
+     * 配置access_token获取配额计数器
+     *
+     * @param tokenQuota 配额计数器
+     * @return return this
+     * @since 0.1.6
+     */
+    public WeixinBuilder setTokenQuota(TokenQuota tokenQuota) {
+        if (tokenQuota == null) {
+            throw new IllegalStateException("tokenQuota can't be null");
+        }
+        this.tokenQuota = tokenQuota;
+        return this;
+    }
+
     /**
      * 返回最终配置好的Weixin对象
      *
@@ -140,6 +157,9 @@ public final class WeixinBuilder {
         if (this.ticketLoader != null) {
             weixin.ticketLoader = this.ticketLoader;
         }
+        if (this.tokenQuota != null) {
+            weixin.tokenQuota = this.tokenQuota;
+        }
         return weixin;
     }
 
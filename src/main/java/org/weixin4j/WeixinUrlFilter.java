@@ -20,7 +20,17 @@
 package org.weixin4j;
 
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang.StringUtils;
+import org.weixin4j.model.message.InputMessage;
+import org.weixin4j.model.message.OutputMessage;
+import org.weixin4j.spi.DefaultMessageHandler;
+import org.weixin4j.spi.MessageDeduplicator;
+import org.weixin4j.util.InputMessageParser;
+import org.weixin4j.util.MessageCrypt;
+import org.weixin4j.util.ReplyWriter;
+import org.weixin4j.util.RequestBody;
 import org.weixin4j.util.TokenUtil;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
@@ -33,18 +43,98 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.weixin4j.spi.IMessageHandler;
 import org.weixin4j.spi.HandlerFactory;
+import org.weixin4j.spi.pipeline.MessagePipeline;
 
 /**
  * 微信公众平台接受消息默认拦截器
  *
+ * <p>
+ * 支持以下初始化参数开启异步处理（需在web.xml中为该拦截器配置&lt;async-supported&gt;true&lt;/async-supported&gt;）：</p>
+ * <ul>
+ * <li>async：是否异步处理，默认false</li>
+ * <li>asyncThreads：处理线程数，默认16</li>
+ * <li>asyncQueue：等待队列长度，默认1000</li>
+ * <li>replyTimeout：被动回复期限(ms)，默认4000，超时后回复success并以客服消息补发</li>
+ * </ul>
+ *
+ * <p>
+ * 支持以下初始化参数限制同时处理的消息数，详见<tt>LoadShedder</tt>：</p>
+ * <ul>
+ * <li>maxInFlight：最大处理数，默认0不限制</li>
+ * <li>highReserve：为高优先级事件保留的名额，默认maxInFlight的1/10</li>
+ * <li>lowLimit：低优先级事件的上限，默认maxInFlight的1/2</li>
+ * <li>highPriorityEvents：高优先级事件类型，逗号分隔，默认subscribe,unsubscribe</li>
+ * <li>lowPriorityEvents：低优先级事件类型，逗号分隔，默认location</li>
+ * <li>shedReply：超过上限时的回复，success或empty，默认success</li>
+ * </ul>
+ *
+ * <p>
+ * 多公众号时，可通过初始化参数account指定公众号标识，使用该公众号的消息处理器，详见<tt>HandlerFactory</tt>。</p>
+ *
  * @author yangqisheng
  * @since 0.0.1
  */
 @Slf4j
 public class WeixinUrlFilter implements Filter {
 
+    /**
+     * 异步消息处理器，未开启异步时为null
+     */
+    private AsyncReplyProcessor asyncProcessor;
+    /**
+     * 补发客服消息使用的微信对象
+     */
+    private volatile Weixin weixin;
+    /**
+     * 消息加解密工具
+     */
+    private volatile MessageCrypt messageCrypt;
+    /**
+     * 并发限制，未配置maxInFlight时为null
+     */
+    private LoadShedder loadShedder;
+    /**
+     * 超过并发上限时的回复
+     */
+    private byte[] shedReply;
+    /**
+     * 公众号标识，为null时使用默认消息处理器
+     */
+    private String account;
+
     @Override
     public void init(FilterConfig config) throws ServletException {
+        account = StringUtils.trimToNull(config.getInitParameter("account"));
+        try {
+            //启动时加载消息处理器，首个回调无需反射创建
+            HandlerFactory.getMessageHandler(account);
+        } catch (IllegalStateException ex) {
+            log.error("WeixinUrlFilter加载消息处理器失败", ex);
+            throw new ServletException(ex);
+        }
+        if ("true".equalsIgnoreCase(config.getInitParameter("async"))) {
+            int threads = getIntParameter(config, "asyncThreads", 16);
+            int queueSize = getIntParameter(config, "asyncQueue", 1000);
+            int replyTimeout = getIntParameter(config, "replyTimeout", 4000);
+            asyncProcessor = new AsyncReplyProcessor(this, threads, queueSize, replyTimeout);
+            if (log.isDebugEnabled()) {
+                log.debug("WeixinUrlFilter异步处理已开启，线程数:" + threads + "，回复期限:" + replyTimeout + "ms");
+            }
+        }
+        int maxInFlight = getIntParameter(config, "maxInFlight", 0);
+        if (maxInFlight > 0) {
+            loadShedder = new LoadShedder(maxInFlight,
+                    getIntParameter(config, "highReserve", Math.max(1, maxInFlight / 10)),
+                    getIntParameter(config, "lowLimit", Math.max(1, maxInFlight / 2)),
+                    getListParameter(config, "highPriorityEvents", "subscribe,unsubscribe"),
+                    getListParameter(config, "lowPriorityEvents", "location"));
+            shedReply = "empty".equalsIgnoreCase(config.getInitParameter("shedReply"))
+                    ? new byte[0] : AsyncReplyProcessor.SUCCESS.getBytes();
+            config.getServletContext().setAttribute(LoadShedder.ATTRIBUTE, loadShedder);
+            if (log.isDebugEnabled()) {
+                log.debug("WeixinUrlFilter并发限制已开启，最大处理数:" + maxInFlight);
+            }
+        }
         if (log.isDebugEnabled()) {
             log.debug("WeixinUrlFilter启动成功!");
         }
@@ -83,35 +173,232 @@ public class WeixinUrlFilter implements Filter {
                 response.getWriter().write("");
                 return;
             }
-            //用户每次向公众号发送消息、或者产生自定义菜单点击事件时，响应URL将得到推送
-            doPost(request, response);
+            LoadShedder.Permit permit = null;
+            if (loadShedder != null) {
+                try {
+                    permit = loadShedder.acquire(request);
+                } catch (IOException ex) {
+                    log.warn("读取请求体失败", ex);
+                    response.getWriter().write("");
+                    return;
+                }
+                if (permit == null) {
+                    //超过并发上限，不解析直接回复
+                    response.setContentLength(shedReply.length);
+                    response.getOutputStream().write(shedReply);
+                    return;
+                }
+                request = permit.getRequest();
+            }
+            boolean handedOff = false;
+            try {
+                if (!TokenUtil.checkReplay(timestamp, nonce)) {
+                    //微信重试时timestamp和nonce与首次推送相同，已推送过的消息交给处理器回复排重缓存中的结果
+                    HttpServletRequest retry = TokenUtil.checkTimestamp(timestamp) ? retryOf(request, timestamp, nonce) : null;
+                    if (retry == null) {
+                        //时间戳过期或重复推送的请求，直接返回
+                        log.warn("拒绝过期或重放的请求, timestamp:" + timestamp + " nonce:" + nonce);
+                        response.getWriter().write("");
+                        return;
+                    }
+                    request = retry;
+                }
+                //用户每次向公众号发送消息、或者产生自定义菜单点击事件时，响应URL将得到推送
+                handedOff = doPost(request, response, permit);
+            } finally {
+                if (permit != null && !handedOff) {
+                    permit.release();
+                }
+            }
+        }
+    }
+
+    //timestamp+nonce重复时，只有排重器已记录的消息才视为微信重试，返回请求体可重新读取的请求，否则返回null
+    private HttpServletRequest retryOf(HttpServletRequest request, String timestamp, String nonce) {
+        IMessageHandler messageHandler = HandlerFactory.getMessageHandler(account);
+        if (!(messageHandler instanceof DefaultMessageHandler)) {
+            return null;
+        }
+        MessageDeduplicator dedup = ((DefaultMessageHandler) messageHandler).getDeduplicator();
+        if (dedup == null) {
+            return null;
+        }
+        try {
+            byte[] body = RequestBody.read(request.getInputStream()).toByteArray();
+            InputMessage inputMsg;
+            if ("aes".equalsIgnoreCase(request.getParameter("encrypt_type"))) {
+                MessageCrypt crypt = getMessageCrypt();
+                if (crypt == null) {
+                    return null;
+                }
+                inputMsg = InputMessageParser.parse(crypt.decryptMessage(new ByteArrayInputStream(body),
+                        request.getParameter("msg_signature"), timestamp, nonce));
+            } else {
+                inputMsg = InputMessageParser.parse(new ByteArrayInputStream(body));
+            }
+            return dedup.contains(inputMsg) ? new LoadShedder.BufferedRequest(request, body) : null;
+        } catch (Exception ex) {
+            log.warn("重复请求的消息解析失败", ex);
+            return null;
         }
     }
 
     //当普通微信用户向公众账号发消息时，微信服务器将POST消息的XML数据包到开发者填写的URL上
     //用户在关注与取消关注公众号时，微信会把这个事件推送到开发者填写的URL
     //用户每次发送语音给公众号时，微信会在推送的语音消息XML数据包中，增加一个Recongnition字段
-    private void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    //异步处理时返回true，许可由处理线程释放
+    private boolean doPost(HttpServletRequest request, HttpServletResponse response, LoadShedder.Permit permit) throws IOException {
         try {
             response.setCharacterEncoding("UTF-8");
             response.setContentType("text/xml");
+            IMessageHandler messageHandler = HandlerFactory.getMessageHandler(account);
+            //兼容模式和安全模式下，微信以encrypt_type=aes推送密文
+            MessageCrypt crypt = null;
+            if ("aes".equalsIgnoreCase(request.getParameter("encrypt_type"))) {
+                crypt = getMessageCrypt();
+                if (crypt == null) {
+                    log.warn("收到加密消息，但未正确配置EncodingAESKey");
+                    response.getWriter().write("");
+                    return false;
+                }
+            }
+            if (asyncProcessor != null && request.isAsyncSupported()) {
+                //异步处理，释放容器线程
+                return asyncProcessor.process(request, response, messageHandler, crypt, permit);
+            }
             //获取POST流
             ServletInputStream in = request.getInputStream();
             if (log.isDebugEnabled()) {
                 log.debug("接收到微信输入流,准备处理...");
             }
-            IMessageHandler messageHandler = HandlerFactory.getMessageHandler();
-            //处理输入消息，返回结果
-            String xml = messageHandler.invoke(in);
+            if (crypt == null && messageHandler instanceof DefaultMessageHandler) {
+                //处理输入消息，回复直接以UTF-8字节写出到响应流
+                DefaultMessageHandler handler = (DefaultMessageHandler) messageHandler;
+                OutputMessage outputMsg = handler.process(in);
+                writeReply(response, outputMsg, handler.getPipeline());
+                return false;
+            }
+            String xml;
+            if (crypt == null) {
+                //处理输入消息，返回结果
+                xml = messageHandler.invoke(in);
+            } else {
+                String timestamp = request.getParameter("timestamp");
+                String nonce = request.getParameter("nonce");
+                //校验msg_signature并解密
+                String plainXml = crypt.decryptMessage(RequestBody.read(in).openStream(),
+                        request.getParameter("msg_signature"), timestamp, nonce);
+                xml = messageHandler.invoke(plainXml);
+                if (!xml.isEmpty()) {
+                    //加密回复消息
+                    xml = crypt.encryptReply(xml, timestamp, nonce);
+                }
+            }
             //返回结果
             response.getWriter().write(xml);
         } catch (Exception ex) {
             ex.printStackTrace();
-            response.getWriter().write("");
+            //回复空内容
+            if (!response.isCommitted()) {
+                response.resetBuffer();
+            }
+        }
+        return false;
+    }
+
+    private void writeReply(HttpServletResponse response, OutputMessage outputMsg, MessagePipeline pipeline) throws IOException {
+        ReplyWriter writer = ReplyWriter.local();
+        if (outputMsg != null) {
+            long start = pipeline.startTiming();
+            outputMsg.writeXML(writer);
+            pipeline.record(MessagePipeline.STAGE_SERIALIZE, start);
+            if (log.isDebugEnabled()) {
+                log.debug("POST输出消息:");
+                log.debug(writer.toString());
+                log.debug("------------------------");
+            }
+        }
+        response.setContentLength(writer.length());
+        writer.writeTo(response.getOutputStream());
+    }
+
+    /**
+     * 获取补发客服消息使用的微信对象，默认使用weixin4j.properties中的配置
+     *
+     * <p>
+     * 多公众号等场景可由子类覆盖。</p>
+     *
+     * @return 微信对象
+     * @since 0.1.6
+     */
+    protected Weixin getWeixin() {
+        Weixin w = weixin;
+        if (w == null) {
+            synchronized (this) {
+                w = weixin;
+                if (w == null) {
+                    w = new Weixin();
+                    weixin = w;
+                }
+            }
+        }
+        return w;
+    }
+
+    /**
+     * 获取消息加解密工具，默认使用<tt>getWeixin()</tt>中配置的EncodingAESKey和appId
+     *
+     * @return 消息加解密工具，未配置EncodingAESKey时返回null
+     * @since 0.1.6
+     */
+    protected MessageCrypt getMessageCrypt() {
+        MessageCrypt c = messageCrypt;
+        if (c == null) {
+            synchronized (this) {
+                c = messageCrypt;
+                if (c == null) {
+                    WeixinConfig config = getWeixin().getWeixinConfig();
+                    if (config == null || StringUtils.isBlank(config.getEncodingaeskey())) {
+                        return null;
+                    }
+                    try {
+                        c = new MessageCrypt(TokenUtil.get(), config.getEncodingaeskey(), config.getAppid());
+                    } catch (IllegalArgumentException ex) {
+                        log.warn("EncodingAESKey配置错误", ex);
+                        return null;
+                    }
+                    messageCrypt = c;
+                }
+            }
+        }
+        return c;
+    }
+
+    private static int getIntParameter(FilterConfig config, String name, int defaultValue) {
+        String value = config.getInitParameter(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
         }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            log.warn("WeixinUrlFilter参数" + name + "格式错误:" + value);
+            return defaultValue;
+        }
+    }
+
+    private static String[] getListParameter(FilterConfig config, String name, String defaultValue) {
+        String value = config.getInitParameter(name);
+        if (value == null) {
+            value = defaultValue;
+        }
+        return StringUtils.split(value, ", ");
     }
 
     @Override
     public void destroy() {
+        if (asyncProcessor != null) {
+            asyncProcessor.shutdown();
+        }
     }
 }
@@ -31,6 +31,7 @@ import org.weixin4j.WeixinException;
 import org.weixin4j.http.HttpsClient;
 import org.weixin4j.http.Response;
 import org.weixin4j.model.base.Token;
+import org.weixin4j.quota.TokenQuota;
 
 /**
  * 基础组件
@@ -51,6 +52,9 @@ public class BaseComponent extends AbstractComponent {
     /**
      * 获取access_token（每次都获取新的，请缓存下来，2小时过期）
      *
+     * <p>
+     * 每次调用都会计入<tt>TokenQuota</tt>配额，获取过于频繁或超过每日上限时抛出异常。</p>
+     *
      * @param appId
      * @param secret
      * @return 获取的AccessToken对象
@@ -63,27 +67,40 @@ public class BaseComponent extends AbstractComponent {
         if (StringUtils.isEmpty(secret)) {
             throw new IllegalArgumentException("secret can't be null or empty");
         }
-        //拼接参数
-        String param = "?grant_type=client_credential&appid=" + appId + "&secret=" + secret;
-        //创建请求对象
-        HttpsClient http = new HttpsClient();
-        //调用获取access_token接口
-        Response res = http.get("https://api.weixin.qq.com/cgi-bin/token" + param);
-        //根据请求结果判定，是否验证成功
-        JSONObject jsonObj = res.asJSONObject();
-        if (jsonObj == null) {
-            throw new WeixinException(getCause(-1));
-        }
-        if (log.isDebugEnabled()) {
-            log.debug("getAccessToken返回json:" + jsonObj.toString());
-        }
-        Object errcode = jsonObj.get("errcode");
-        if (errcode != null) {
-            //返回异常信息
-            throw new WeixinException(getCause(jsonObj.getIntValue("errcode")));
+        //配额检查并计数
+        TokenQuota tokenQuota = weixin != null ? weixin.getTokenQuota() : TokenQuota.getDefault();
+        long fetchTime = tokenQuota.acquire(appId);
+        boolean fetched = false;
+        try {
+            //拼接参数
+            String param = "?grant_type=client_credential&appid=" + appId + "&secret=" + secret;
+            //创建请求对象
+            HttpsClient http = new HttpsClient();
+            //调用获取access_token接口
+            Response res = http.get("https://api.weixin.qq.com/cgi-bin/token" + param);
+            //根据请求结果判定，是否验证成功
+            JSONObject jsonObj = res.asJSONObject();
+            if (jsonObj == null) {
+                throw new WeixinException(getCause(-1));
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("getAccessToken返回json:" + jsonObj.toString());
+            }
+            Object errcode = jsonObj.get("errcode");
+            if (errcode != null) {
+                //返回异常信息
+                throw new WeixinException(getCause(jsonObj.getIntValue("errcode")));
+            }
+            //设置凭证，设置accessToken和过期时间
+            Token token = JSONObject.toJavaObject(jsonObj, Token.class);
+            fetched = true;
+            return token;
+        } finally {
+            if (!fetched) {
+                //获取失败，允许立即重试
+                tokenQuota.release(appId, fetchTime);
+            }
         }
-        //设置凭证，设置accessToken和过期时间
-        return JSONObject.toJavaObject(jsonObj, Token.class);
     }
 
 
@@ -55,7 +55,7 @@ public class JsSdkComponent extends AbstractComponent {
      * @throws org.weixin4j.WeixinException 微信操作异常
      */
     public Ticket getJsApiTicket() throws WeixinException {
-        return getJsApiTicket(weixin.getToken().getAccess_token());
+        return getTicket(weixin.getToken().getAccess_token(), TicketType.JSAPI);
     }
 
     /**
@@ -66,30 +66,57 @@ public class JsSdkComponent extends AbstractComponent {
      * @throws org.weixin4j.WeixinException 微信操作异常
      */
     public Ticket getJsApiTicket(String accessToken) throws WeixinException {
+        return getTicket(accessToken, TicketType.JSAPI);
+    }
+
+    /**
+     * 获取指定类型的ticket对象，每次都返回最新
+     *
+     * @param ticketType 临时票据类型
+     * @return 成功返回ticket对象，失败返回NULL
+     * @throws org.weixin4j.WeixinException 微信操作异常
+     * @since 0.1.6
+     */
+    public Ticket getTicket(TicketType ticketType) throws WeixinException {
+        return getTicket(weixin.getToken().getAccess_token(), ticketType);
+    }
+
+    /**
+     * 根据accessToken获取指定类型的Ticket
+     *
+     * @param accessToken accessToken
+     * @param ticketType 临时票据类型
+     * @return 成功返回ticket对象，失败返回NULL
+     * @throws org.weixin4j.WeixinException 微信操作异常
+     * @since 0.1.6
+     */
+    public Ticket getTicket(String accessToken, TicketType ticketType) throws WeixinException {
+        if (ticketType == null) {
+            throw new IllegalArgumentException("ticketType can't be null");
+        }
         //创建请求对象
         HttpsClient http = new HttpsClient();
-        //调用获取jsapi_ticket接口
-        Response res = http.get("https://api.weixin.qq.com/cgi-bin/ticket/getticket?access_token=" + accessToken + "&type=jsapi");
+        //调用获取ticket接口
+        Response res = http.get("https://api.weixin.qq.com/cgi-bin/ticket/getticket?access_token=" + accessToken + "&type=" + ticketType);
         //根据请求结果判定，是否验证成功
         JSONObject jsonObj = res.asJSONObject();
         //成功返回如下JSON:
         //{"errcode":0,"errmsg":"ok","ticket":"bxLdikRXVbTPdHSM05e5u5sUoXNKd8-41ZO3MhKoyN5OfkWITDGgnr2fwJ0m9E8NYzWKVZvdVtaUgWvsdshFKA","expires_in":7200}
         if (jsonObj != null) {
             if (log.isDebugEnabled()) {
-                log.debug("获取jsapi_ticket返回json:" + jsonObj.toString());
+                log.debug("获取" + ticketType + "_ticket返回json:" + jsonObj.toString());
             }
             Object errcode = jsonObj.get("errcode");
             if (errcode != null && !errcode.toString().equals("0")) {
                 //返回异常信息
                 throw new WeixinException(getCause(jsonObj.getIntValue("errcode")));
             } else {
-                return new Ticket(TicketType.JSAPI, jsonObj.getString("ticket"), jsonObj.getIntValue("expires_in"));
+                return new Ticket(ticketType, jsonObj.getString("ticket"), jsonObj.getIntValue("expires_in"));
             }
         }
         return null;
     }
 
-
     /**
      * 获取微信Js接口配置
      *
@@ -19,6 +19,7 @@
  */
 package org.weixin4j.component;
 
+import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
 import java.util.List;
 
@@ -29,6 +30,16 @@ import org.weixin4j.WeixinException;
 import org.weixin4j.http.HttpsClient;
 import org.weixin4j.http.Response;
 import org.weixin4j.model.message.Articles;
+import org.weixin4j.model.message.Music;
+import org.weixin4j.model.message.OutputMessage;
+import org.weixin4j.model.message.Video;
+import org.weixin4j.model.message.output.ImageOutputMessage;
+import org.weixin4j.model.message.output.MusicOutputMessage;
+import org.weixin4j.model.message.output.NewsOutputMessage;
+import org.weixin4j.model.message.output.TemplateOutputMessage;
+import org.weixin4j.model.message.output.TextOutputMessage;
+import org.weixin4j.model.message.output.VideoOutputMessage;
+import org.weixin4j.model.message.output.VoiceOutputMessage;
 import org.weixin4j.model.message.template.Miniprogram;
 import org.weixin4j.model.message.template.TemplateData;
 import org.weixin4j.model.message.template.TemplateMessage;
@@ -180,6 +191,77 @@ public class MessageComponent extends AbstractComponent {
         }
     }
 
+    /**
+     * 将被动回复消息以客服消息发送
+     *
+     * <p>
+     * 用于被动回复超时后补发处理结果，支持文本、图片、语音、视频、音乐和图文消息。</p>
+     *
+     * @param openid 粉丝openid
+     * @param outputMsg 被动回复消息对象
+     * @throws org.weixin4j.WeixinException 微信操作异常
+     * @since 0.1.6
+     */
+    public void customSend(String openid, OutputMessage outputMsg) throws WeixinException {
+        if (outputMsg instanceof TemplateOutputMessage) {
+            //预渲染的回复按原始消息补发
+            outputMsg = ((TemplateOutputMessage) outputMsg).getSource();
+        }
+        JSONObject json = new JSONObject();
+        JSONObject body = new JSONObject();
+        String msgType = outputMsg.getMsgType();
+        if (outputMsg instanceof TextOutputMessage) {
+            body.put("content", ((TextOutputMessage) outputMsg).getContent());
+        } else if (outputMsg instanceof ImageOutputMessage) {
+            body.put("media_id", ((ImageOutputMessage) outputMsg).getImage().getMediaId());
+        } else if (outputMsg instanceof VoiceOutputMessage) {
+            body.put("media_id", ((VoiceOutputMessage) outputMsg).getVoice().getMediaId());
+        } else if (outputMsg instanceof VideoOutputMessage) {
+            Video video = ((VideoOutputMessage) outputMsg).getVideo();
+            body.put("media_id", video.getMediaId());
+            body.put("title", video.getTitle());
+            body.put("description", video.getDescription());
+        } else if (outputMsg instanceof MusicOutputMessage) {
+            Music music = ((MusicOutputMessage) outputMsg).getMusic();
+            body.put("title", music.getTitle());
+            body.put("description", music.getDescription());
+            body.put("musicurl", music.getMusicUrl());
+            body.put("hqmusicurl", music.getHQMusicUrl());
+            body.put("thumb_media_id", music.getThumbMediaId());
+        } else if (outputMsg instanceof NewsOutputMessage) {
+            JSONArray articles = new JSONArray();
+            for (Articles article : ((NewsOutputMessage) outputMsg).getArticles()) {
+                JSONObject item = new JSONObject();
+                item.put("title", article.getTitle());
+                item.put("description", article.getDescription());
+                item.put("url", article.getUrl());
+                item.put("picurl", article.getPicUrl());
+                articles.add(item);
+            }
+            body.put("articles", articles);
+        } else {
+            throw new WeixinException("不支持以客服消息发送的消息类型：" + msgType);
+        }
+        json.put("touser", openid);
+        json.put("msgtype", msgType);
+        json.put(msgType, body);
+        //创建请求对象
+        HttpsClient http = new HttpsClient();
+        Response res = http.post("https://api.weixin.qq.com/cgi-bin/message/custom/send?access_token=" + weixin.getToken().getAccess_token(), json);
+        //根据请求结果判定，是否验证成功
+        JSONObject jsonObj = res.asJSONObject();
+        if (jsonObj != null) {
+            if (log.isDebugEnabled()) {
+                log.debug("customSend返回json:" + jsonObj.toString());
+            }
+            Object errcode = jsonObj.get("errcode");
+            if (errcode != null && !errcode.toString().equals("0")) {
+                //返回异常信息
+                throw new WeixinException(getCause(jsonObj.getIntValue("errcode")));
+            }
+        }
+    }
+
     /**
      * 发送模板消息
      *
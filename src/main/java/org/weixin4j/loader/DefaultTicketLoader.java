@@ -19,8 +19,7 @@
  */
 package org.weixin4j.loader;
 
-import java.util.EnumMap;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import org.apache.commons.lang.StringUtils;
 import org.weixin4j.model.js.Ticket;
 import org.weixin4j.model.js.TicketType;
@@ -30,24 +29,31 @@ import org.weixin4j.model.js.TicketType;
  *
  * 单项目时使用（生产环境不推荐）
  *
+ * <p>
+ * 每种<tt>TicketType</tt>对应一个不可变快照，按类型序号存放于原子引用数组中。</p>
+ *
  * @author yangqisheng
  * @since 0.1.0
  */
 public class DefaultTicketLoader implements ITicketLoader {
 
-    private final Map<TicketType, Ticket> tickets = new EnumMap<TicketType, Ticket>(TicketType.class);
+    private final AtomicReferenceArray<Snapshot<Ticket>> tickets = new AtomicReferenceArray<Snapshot<Ticket>>(TicketType.values().length);
 
     @Override
     public Ticket get(TicketType ticketType) {
-        Ticket ticket = tickets.get(ticketType);
-        return (ticket == null
-                || StringUtils.isEmpty(ticket.getTicket())
-                || ticket.isExprexpired()) ? null : ticket;
+        Snapshot<Ticket> s = tickets.get(ticketType.ordinal());
+        return (s == null || !s.isAlive()) ? null : s.value;
     }
 
     @Override
     public void refresh(Ticket ticket) {
-        tickets.put(ticket.getTicketType(), ticket);
+        if (null == ticket || StringUtils.isEmpty(ticket.getTicket())) {
+            throw new IllegalStateException("ticket is null or empty");
+        }
+        if (ticket.getTicketType() == null) {
+            throw new IllegalStateException("ticketType can not be null");
+        }
+        tickets.set(ticket.getTicketType().ordinal(), Snapshot.of(ticket, ticket.getExprexpired_time()));
     }
 
 }
@@ -27,21 +27,23 @@ import org.apache.commons.lang.StringUtils;
  *
  * 单项目时使用（生产环境不推荐）
  *
+ * <p>
+ * 凭证以不可变快照的形式通过volatile引用发布，读取时为一次volatile读和一次时钟比较。</p>
+ *
  * @author yangqisheng
  * @since 0.1.0
  */
 public class DefaultTokenLoader implements ITokenLoader {
 
     /**
-     * AccessToken对象
+     * AccessToken快照
      */
-    private Token token = null;
+    private volatile Snapshot<Token> snapshot = null;
 
     @Override
     public Token get() {
-        return (token == null
-                || StringUtils.isEmpty(token.getAccess_token())
-                || token.isExprexpired()) ? null : token;
+        Snapshot<Token> s = snapshot;
+        return (s == null || !s.isAlive()) ? null : s.value;
     }
 
     @Override
@@ -55,7 +57,7 @@ public class DefaultTokenLoader implements ITokenLoader {
         if (token.isExprexpired()) {
             throw new IllegalStateException("access_token is exprexpired");
         }
-        this.token = token;
+        this.snapshot = Snapshot.of(token, token.getExprexpired_time());
     }
 
 }
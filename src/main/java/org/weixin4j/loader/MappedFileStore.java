@@ -0,0 +1,395 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.loader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于内存映射文件的凭证存储区
+ *
+ * <p>
+ * 文件被划分为若干固定大小的槽位，每个槽位保存一条凭证记录。 写入时使用序列号（seqlock）标记，
+ * 读取方无需加锁，只要前后两次读到的序列号一致且为偶数即为完整记录。
+ * 映射区的读写不受Java内存模型约束，序列号与记录内容之间用<tt>Unsafe</tt>的读写屏障保证顺序。
+ * 写入进程在写入中途退出时会留下奇数序列号，读取方等待超时后视为无记录，
+ * 下一个获得刷新锁的进程（或打开文件时无人持有刷新锁）会将该槽位清空。</p>
+ *
+ * <p>
+ * 每个槽位在文件末尾之外对应一个字节的锁区域，持有该区域文件锁的进程即为该槽位的刷新者。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+final class MappedFileStore implements Closeable {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * 文件标识
+     */
+    private static final int MAGIC = 0x5758344A;
+    /**
+     * 文件头长度
+     */
+    private static final int HEADER_SIZE = 64;
+    /**
+     * 单个槽位长度
+     */
+    static final int SLOT_SIZE = 1024;
+    /**
+     * 槽位内各字段偏移
+     */
+    private static final int SEQ_OFFSET = 0;
+    private static final int CREATE_TIME_OFFSET = 8;
+    private static final int EXPIRES_IN_OFFSET = 16;
+    private static final int LENGTH_OFFSET = 20;
+    private static final int VALUE_OFFSET = 24;
+    /**
+     * 凭证字符串最大字节数
+     */
+    static final int MAX_VALUE_SIZE = SLOT_SIZE - VALUE_OFFSET;
+    /**
+     * 读取方等待写入完成的最长时间，写入只需微秒级，超时视为写入进程已中途退出
+     */
+    private static final long READ_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    /**
+     * 写屏障，之前的写入不会被重排到之后的写入之后
+     */
+    private static final MethodHandle STORE_FENCE;
+    /**
+     * 读屏障，之后的读取不会被重排到之前的读取之前
+     */
+    private static final MethodHandle LOAD_FENCE;
+    /**
+     * 无法使用Unsafe时，以volatile变量读写作为屏障
+     */
+    private static volatile int fence;
+
+    static {
+        MethodHandle storeFence;
+        MethodHandle loadFence;
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Object unsafe = field.get(null);
+            storeFence = lookup.unreflect(type.getMethod("storeFence")).bindTo(unsafe);
+            loadFence = lookup.unreflect(type.getMethod("loadFence")).bindTo(unsafe);
+        } catch (Exception ex) {
+            try {
+                MethodType voidType = MethodType.methodType(void.class);
+                storeFence = lookup.findStatic(MappedFileStore.class, "volatileStoreFence", voidType);
+                loadFence = lookup.findStatic(MappedFileStore.class, "volatileLoadFence", voidType);
+            } catch (Exception e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+        STORE_FENCE = storeFence;
+        LOAD_FENCE = loadFence;
+    }
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int slots;
+    private final long dataSize;
+    /**
+     * 本进程持有的刷新锁，按槽位索引
+     */
+    private final FileLock[] locks;
+
+    MappedFileStore(File path, int slots) throws IOException {
+        if (slots <= 0) {
+            throw new IllegalArgumentException("slots must be greater than zero");
+        }
+        File parent = path.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs() && !parent.exists()) {
+            throw new IOException("can not create directory " + parent);
+        }
+        this.slots = slots;
+        this.dataSize = HEADER_SIZE + (long) SLOT_SIZE * slots;
+        this.locks = new FileLock[slots];
+        this.file = new RandomAccessFile(path, "rw");
+        this.channel = file.getChannel();
+        //初始化文件头需要独占，避免多个进程同时创建文件
+        FileLock initLock = channel.lock(dataSize + slots, 1, false);
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, dataSize);
+            int magic = buffer.getInt(0);
+            if (magic == 0) {
+                buffer.putInt(4, slots);
+                buffer.putInt(0, MAGIC);
+            } else if (magic != MAGIC) {
+                throw new IOException(path + " is not a weixin4j token store");
+            } else if (buffer.getInt(4) != slots) {
+                throw new IOException(path + " slot count mismatch, expected " + slots + " but " + buffer.getInt(4));
+            } else {
+                for (int i = 0; i < slots; i++) {
+                    repairIfIdle(i);
+                }
+            }
+        } finally {
+            initLock.release();
+        }
+    }
+
+    private static void volatileStoreFence() {
+        fence = 0;
+    }
+
+    private static void volatileLoadFence() {
+        if (fence != 0) {
+            fence = 0;
+        }
+    }
+
+    private static void storeFence() {
+        try {
+            STORE_FENCE.invokeExact();
+        } catch (Throwable ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static void loadFence() {
+        try {
+            LOAD_FENCE.invokeExact();
+        } catch (Throwable ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private int base(int slot) {
+        return HEADER_SIZE + SLOT_SIZE * slot;
+    }
+
+    /**
+     * 槽位无人持有刷新锁时，清除上次写入中途退出留下的残缺记录
+     */
+    private void repairIfIdle(int slot) throws IOException {
+        if ((sequence(slot) & 1) == 0) {
+            return;
+        }
+        FileLock lock;
+        try {
+            lock = channel.tryLock(dataSize + slot, 1, false);
+        } catch (OverlappingFileLockException ex) {
+            //本进程内其他实例持有刷新锁，由其负责
+            return;
+        }
+        if (lock != null) {
+            try {
+                repair(slot);
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * 清除残缺记录，调用方需持有该槽位的刷新锁
+     */
+    private void repair(int slot) {
+        int base = base(slot);
+        long seq = buffer.getLong(base + SEQ_OFFSET);
+        if ((seq & 1) != 0) {
+            buffer.putInt(base + LENGTH_OFFSET, 0);
+            storeFence();
+            buffer.putLong(base + SEQ_OFFSET, seq + 1);
+        }
+    }
+
+    /**
+     * 读取槽位当前序列号
+     *
+     * @param slot 槽位
+     * @return 序列号，奇数表示正在写入
+     */
+    long sequence(int slot) {
+        return buffer.getLong(base(slot) + SEQ_OFFSET);
+    }
+
+    /**
+     * 无锁读取槽位记录
+     *
+     * @param slot 槽位
+     * @return 槽位记录，槽位为空或等待写入完成超时时返回null
+     */
+    Record read(int slot) {
+        int base = base(slot);
+        ByteBuffer view = buffer.duplicate();
+        long deadline = 0;
+        for (;;) {
+            long before = view.getLong(base + SEQ_OFFSET);
+            //记录内容的读取不能早于序列号
+            loadFence();
+            //奇数表示写入中
+            if ((before & 1) == 0) {
+                long createTime = view.getLong(base + CREATE_TIME_OFFSET);
+                int expiresIn = view.getInt(base + EXPIRES_IN_OFFSET);
+                int length = view.getInt(base + LENGTH_OFFSET);
+                if (length <= 0 || length > MAX_VALUE_SIZE) {
+                    loadFence();
+                    if (before == view.getLong(base + SEQ_OFFSET)) {
+                        return null;
+                    }
+                } else {
+                    byte[] value = new byte[length];
+                    view.position(base + VALUE_OFFSET);
+                    view.get(value);
+                    //再次读取序列号不能早于记录内容
+                    loadFence();
+                    if (before == view.getLong(base + SEQ_OFFSET)) {
+                        return new Record(before, new String(value, UTF_8), expiresIn, createTime);
+                    }
+                }
+            }
+            if (deadline == 0) {
+                deadline = System.nanoTime() + READ_TIMEOUT_NANOS;
+            } else if (System.nanoTime() - deadline > 0) {
+                //写入进程可能已中途退出，视为无记录
+                return null;
+            }
+            //让出CPU后重试
+            Thread.yield();
+        }
+    }
+
+    /**
+     * 写入槽位记录，调用方需持有该槽位的刷新锁
+     *
+     * @param slot 槽位
+     * @param value 凭证字符串
+     * @param expiresIn 有效时间(s)
+     * @param createTime 创建时间
+     */
+    synchronized void write(int slot, String value, int expiresIn, long createTime) {
+        byte[] bytes = value.getBytes(UTF_8);
+        if (bytes.length > MAX_VALUE_SIZE) {
+            throw new IllegalArgumentException("value is too long, max " + MAX_VALUE_SIZE + " bytes");
+        }
+        int base = base(slot);
+        long seq = buffer.getLong(base + SEQ_OFFSET);
+        //奇数序列号表示写入开始
+        buffer.putLong(base + SEQ_OFFSET, seq | 1);
+        //记录内容的写入不能早于奇数序列号
+        storeFence();
+        buffer.putLong(base + CREATE_TIME_OFFSET, createTime);
+        buffer.putInt(base + EXPIRES_IN_OFFSET, expiresIn);
+        buffer.putInt(base + LENGTH_OFFSET, bytes.length);
+        ByteBuffer view = buffer.duplicate();
+        view.position(base + VALUE_OFFSET);
+        view.put(bytes);
+        //偶数序列号的写入不能早于记录内容
+        storeFence();
+        //偶数序列号表示写入完成
+        buffer.putLong(base + SEQ_OFFSET, (seq | 1) + 1);
+    }
+
+    /**
+     * 尝试成为槽位的刷新者
+     *
+     * @param slot 槽位
+     * @return 成功获得或本进程已持有刷新锁返回true，其他进程持有时返回false
+     * @throws IOException 文件锁异常
+     */
+    synchronized boolean tryLead(int slot) throws IOException {
+        if (locks[slot] != null && locks[slot].isValid()) {
+            return true;
+        }
+        FileLock lock = channel.tryLock(dataSize + slot, 1, false);
+        if (lock == null) {
+            return false;
+        }
+        locks[slot] = lock;
+        //上一个刷新者可能在写入中途退出
+        repair(slot);
+        return true;
+    }
+
+    /**
+     * 判断本进程是否为槽位刷新者
+     *
+     * @param slot 槽位
+     * @return 是否持有刷新锁
+     */
+    synchronized boolean isLeader(int slot) {
+        return locks[slot] != null && locks[slot].isValid();
+    }
+
+    /**
+     * 释放槽位刷新锁
+     *
+     * @param slot 槽位
+     * @throws IOException 文件锁异常
+     */
+    synchronized void release(int slot) throws IOException {
+        FileLock lock = locks[slot];
+        locks[slot] = null;
+        if (lock != null && lock.isValid()) {
+            lock.release();
+        }
+    }
+
+    int slots() {
+        return slots;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (int i = 0; i < slots; i++) {
+            release(i);
+        }
+        channel.close();
+        file.close();
+    }
+
+    /**
+     * 槽位记录
+     */
+    static final class Record {
+
+        final long sequence;
+        final String value;
+        final int expiresIn;
+        final long createTime;
+
+        Record(long sequence, String value, int expiresIn, long createTime) {
+            this.sequence = sequence;
+            this.value = value;
+            this.expiresIn = expiresIn;
+            this.createTime = createTime;
+        }
+    }
+}
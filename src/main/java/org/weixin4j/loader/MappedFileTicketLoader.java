@@ -0,0 +1,210 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.loader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang.StringUtils;
+import org.weixin4j.model.js.Ticket;
+import org.weixin4j.model.js.TicketType;
+
+/**
+ * 内存映射文件式Ticket存储器
+ *
+ * <p>
+ * 与<tt>MappedFileTokenLoader</tt>相同的多进程共享方式，每种<tt>TicketType</tt>占用一个槽位，
+ * 各类型独立选举刷新者。获取新的ticket失败时需调用<tt>abort</tt>释放刷新锁，<tt>Weixin</tt>已自动处理。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ * @see org.weixin4j.loader.MappedFileTokenLoader
+ */
+@Slf4j
+public class MappedFileTicketLoader implements ITicketLoader, Closeable {
+
+    private final MappedFileStore store;
+    private final long waitMillis;
+    private final long pollMillis;
+    /**
+     * 各类型最近一次从映射区解析出的凭证，按TicketType序号索引
+     */
+    private final AtomicReferenceArray<Cached> cached;
+
+    /**
+     * 使用默认等待时间(5s)创建存储器
+     *
+     * @param file 共享文件
+     * @throws IOException 文件映射异常
+     */
+    public MappedFileTicketLoader(File file) throws IOException {
+        this(file, 5000, 50);
+    }
+
+    /**
+     * 创建存储器
+     *
+     * @param file 共享文件
+     * @param waitMillis 等待其他进程刷新的最长时间(ms)，超时后由本进程自行获取
+     * @param pollMillis 等待期间的轮询间隔(ms)
+     * @throws IOException 文件映射异常
+     */
+    public MappedFileTicketLoader(File file, long waitMillis, long pollMillis) throws IOException {
+        int types = TicketType.values().length;
+        this.store = new MappedFileStore(file, types);
+        this.cached = new AtomicReferenceArray<Cached>(types);
+        this.waitMillis = waitMillis;
+        this.pollMillis = pollMillis <= 0 ? 50 : pollMillis;
+    }
+
+    @Override
+    public Ticket get(TicketType ticketType) {
+        int slot = ticketType.ordinal();
+        Ticket ticket = current(ticketType);
+        if (ticket != null) {
+            return ticket;
+        }
+        try {
+            if (store.tryLead(slot)) {
+                ticket = current(ticketType);
+                if (ticket != null) {
+                    store.release(slot);
+                    return ticket;
+                }
+                return null;
+            }
+            long deadline = System.currentTimeMillis() + waitMillis;
+            while (System.currentTimeMillis() < deadline) {
+                Thread.sleep(pollMillis);
+                ticket = current(ticketType);
+                if (ticket != null) {
+                    return ticket;
+                }
+            }
+            log.warn("weixin4j:等待其他进程刷新" + ticketType + " ticket超时，由本进程自行获取");
+        } catch (IOException ex) {
+            log.warn("weixin4j:获取ticket刷新锁失败", ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    @Override
+    public void refresh(Ticket ticket) {
+        if (null == ticket || StringUtils.isEmpty(ticket.getTicket())) {
+            throw new IllegalStateException("ticket is null or empty");
+        }
+        if (ticket.getTicketType() == null) {
+            throw new IllegalStateException("ticketType can not be null");
+        }
+        int slot = ticket.getTicketType().ordinal();
+        try {
+            if (store.tryLead(slot)) {
+                try {
+                    store.write(slot, ticket.getTicket(), ticket.getExpires_in(), ticket.getCreate_time());
+                } finally {
+                    store.release(slot);
+                }
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("write ticket to mapped file failed", ex);
+        }
+        cached.set(slot, new Cached(store.sequence(slot), ticket));
+    }
+
+    /**
+     * 尝试成为指定类型ticket主动刷新的刷新者
+     *
+     * <p>
+     * 获得刷新锁且共享区中的凭证不比调用方所见的凭证新时返回true，
+     * 调用方随后从微信服务器获取新凭证并调用{@link #refresh(Ticket)}，失败时调用{@link #abort(TicketType)}；
+     * 其他进程持有刷新锁或已写入更新的凭证时返回false，调用方应直接使用{@link #get(TicketType)}的结果。</p>
+     *
+     * @param ticketType 临时票据类型
+     * @param seen 调用方当前所见的凭证
+     * @return 是否由本进程刷新
+     */
+    public boolean tryLead(TicketType ticketType, Ticket seen) {
+        int slot = ticketType.ordinal();
+        try {
+            if (!store.tryLead(slot)) {
+                return false;
+            }
+            Ticket ticket = current(ticketType);
+            if (ticket != null && seen != null && ticket.getExprexpired_time() > seen.getExprexpired_time()) {
+                store.release(slot);
+                return false;
+            }
+            return true;
+        } catch (IOException ex) {
+            log.warn("weixin4j:获取ticket刷新锁失败", ex);
+            return false;
+        }
+    }
+
+    /**
+     * 放弃本次刷新，释放该类型的刷新锁，由其他进程继续刷新
+     *
+     * <p>
+     * 未持有刷新锁时不做处理。</p>
+     *
+     * @param ticketType 临时票据类型
+     */
+    public void abort(TicketType ticketType) {
+        try {
+            store.release(ticketType.ordinal());
+        } catch (IOException ex) {
+            log.warn("weixin4j:释放ticket刷新锁失败", ex);
+        }
+    }
+
+    private Ticket current(TicketType ticketType) {
+        int slot = ticketType.ordinal();
+        long seq = store.sequence(slot);
+        Cached c = cached.get(slot);
+        if (c == null || (c.sequence != seq && (seq & 1) == 0)) {
+            MappedFileStore.Record record = store.read(slot);
+            if (record != null) {
+                c = new Cached(record.sequence, new Ticket(ticketType, record.value, record.expiresIn, record.createTime));
+                cached.set(slot, c);
+            }
+        }
+        return (c == null || c.ticket.isExprexpired()) ? null : c.ticket;
+    }
+
+    @Override
+    public void close() throws IOException {
+        store.close();
+    }
+
+    private static final class Cached {
+
+        final long sequence;
+        final Ticket ticket;
+
+        Cached(long sequence, Ticket ticket) {
+            this.sequence = sequence;
+            this.ticket = ticket;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.loader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang.StringUtils;
+import org.weixin4j.model.base.Token;
+
+/**
+ * 内存映射文件式AccessToken存储器
+ *
+ * <p>
+ * 同一台主机上的多个进程（web、worker、scheduler等）共享同一个文件，
+ * 各进程无锁读取映射区中的access_token；凭证过期时，通过文件锁选出一个进程负责刷新，
+ * 其余进程等待刷新结果，避免多个进程相互覆盖access_token。</p>
+ *
+ * <p>
+ * <tt>get</tt>返回null时本进程成为刷新者，持有刷新锁直到<tt>refresh</tt>；
+ * 获取新的access_token失败时需调用<tt>abort</tt>释放刷新锁，<tt>Weixin</tt>已自动处理。</p>
+ *
+ * <p>
+ * 每个公众号应使用独立的文件，例如：/var/run/weixin4j/{appId}.token</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+@Slf4j
+public class MappedFileTokenLoader implements ITokenLoader, Closeable {
+
+    private static final int SLOT = 0;
+
+    private final MappedFileStore store;
+    /**
+     * 等待其他进程刷新的最长时间(ms)
+     */
+    private final long waitMillis;
+    /**
+     * 等待期间的轮询间隔(ms)
+     */
+    private final long pollMillis;
+    /**
+     * 最近一次从映射区解析出的凭证
+     */
+    private volatile Cached cached;
+
+    /**
+     * 使用默认等待时间(5s)创建存储器
+     *
+     * @param file 共享文件
+     * @throws IOException 文件映射异常
+     */
+    public MappedFileTokenLoader(File file) throws IOException {
+        this(file, 5000, 50);
+    }
+
+    /**
+     * 创建存储器
+     *
+     * @param file 共享文件
+     * @param waitMillis 等待其他进程刷新的最长时间(ms)，超时后由本进程自行获取
+     * @param pollMillis 等待期间的轮询间隔(ms)
+     * @throws IOException 文件映射异常
+     */
+    public MappedFileTokenLoader(File file, long waitMillis, long pollMillis) throws IOException {
+        this.store = new MappedFileStore(file, 1);
+        this.waitMillis = waitMillis;
+        this.pollMillis = pollMillis <= 0 ? 50 : pollMillis;
+    }
+
+    @Override
+    public Token get() {
+        Token token = current();
+        if (token != null) {
+            return token;
+        }
+        try {
+            if (store.tryLead(SLOT)) {
+                //成为刷新者后再次确认，其他进程可能刚刚完成刷新
+                token = current();
+                if (token != null) {
+                    store.release(SLOT);
+                    return token;
+                }
+                //返回null，由调用方获取新的access_token后调用refresh
+                return null;
+            }
+            //其他进程正在刷新，等待刷新结果
+            long deadline = System.currentTimeMillis() + waitMillis;
+            while (System.currentTimeMillis() < deadline) {
+                Thread.sleep(pollMillis);
+                token = current();
+                if (token != null) {
+                    return token;
+                }
+            }
+            log.warn("weixin4j:等待其他进程刷新access_token超时，由本进程自行获取");
+        } catch (IOException ex) {
+            log.warn("weixin4j:获取access_token刷新锁失败", ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    @Override
+    public void refresh(Token token) {
+        if (null == token || StringUtils.isEmpty(token.getAccess_token())) {
+            throw new IllegalStateException("access_token is null or empty");
+        }
+        if (token.getCreate_time() <= 0) {
+            throw new IllegalStateException("createtime can not be zero");
+        }
+        if (token.isExprexpired()) {
+            throw new IllegalStateException("access_token is exprexpired");
+        }
+        try {
+            //未持有刷新锁时（等待超时的情况），尝试获取一次，获取不到则不覆盖共享区
+            if (store.tryLead(SLOT)) {
+                try {
+                    store.write(SLOT, token.getAccess_token(), token.getExpires_in(), token.getCreate_time());
+                } finally {
+                    store.release(SLOT);
+                }
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("write access_token to mapped file failed", ex);
+        }
+        //以当前序列号缓存，共享区被其他进程更新前始终使用本次刷新的凭证
+        cached = new Cached(store.sequence(SLOT), token);
+    }
+
+    /**
+     * 尝试成为主动刷新的刷新者
+     *
+     * <p>
+     * 获得刷新锁且共享区中的凭证不比调用方所见的凭证新时返回true，
+     * 调用方随后从微信服务器获取新凭证并调用{@link #refresh(Token)}，失败时调用{@link #abort()}；
+     * 其他进程持有刷新锁或已写入更新的凭证时返回false，调用方应直接使用{@link #get()}的结果。</p>
+     *
+     * @param seen 调用方当前所见的凭证
+     * @return 是否由本进程刷新
+     */
+    public boolean tryLead(Token seen) {
+        try {
+            if (!store.tryLead(SLOT)) {
+                return false;
+            }
+            Token token = current();
+            if (token != null && seen != null && token.getExprexpired_time() > seen.getExprexpired_time()) {
+                //其他进程刚刚完成刷新
+                store.release(SLOT);
+                return false;
+            }
+            return true;
+        } catch (IOException ex) {
+            log.warn("weixin4j:获取access_token刷新锁失败", ex);
+            return false;
+        }
+    }
+
+    /**
+     * 放弃本次刷新，释放刷新锁，由其他进程继续刷新
+     *
+     * <p>
+     * 未持有刷新锁时不做处理。</p>
+     */
+    public void abort() {
+        try {
+            store.release(SLOT);
+        } catch (IOException ex) {
+            log.warn("weixin4j:释放access_token刷新锁失败", ex);
+        }
+    }
+
+    /**
+     * 读取当前有效的凭证，序列号未变化时直接使用已解析的对象
+     */
+    private Token current() {
+        long seq = store.sequence(SLOT);
+        Cached c = cached;
+        if (c == null || (c.sequence != seq && (seq & 1) == 0)) {
+            MappedFileStore.Record record = store.read(SLOT);
+            if (record != null) {
+                c = new Cached(record.sequence, new Token(record.value, record.expiresIn, record.createTime));
+                cached = c;
+            }
+        }
+        return (c == null || c.token.isExprexpired()) ? null : c.token;
+    }
+
+    @Override
+    public void close() throws IOException {
+        store.close();
+    }
+
+    private static final class Cached {
+
+        final long sequence;
+        final Token token;
+
+        Cached(long sequence, Token token) {
+            this.sequence = sequence;
+            this.token = token;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.loader;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 凭证不可变快照
+ *
+ * <p>
+ * 在发布时根据凭证的过期时间预先计算出单调时钟（<tt>System.nanoTime</tt>）下的截止点，
+ * 读取时只需一次比较，不受系统时间调整影响，也不产生任何对象分配。</p>
+ *
+ * @param <T> 凭证类型
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+final class Snapshot<T> {
+
+    /**
+     * 凭证对象
+     */
+    final T value;
+    /**
+     * 单调时钟下的过期截止点(ns)
+     */
+    final long deadline;
+
+    private Snapshot(T value, long deadline) {
+        this.value = value;
+        this.deadline = deadline;
+    }
+
+    /**
+     * 创建快照
+     *
+     * @param value 凭证对象
+     * @param exprexpiredTime 凭证过期时间（毫秒时间戳）
+     * @param <T> 凭证类型
+     * @return 快照对象
+     */
+    static <T> Snapshot<T> of(T value, long exprexpiredTime) {
+        long remaining = exprexpiredTime - System.currentTimeMillis();
+        //防止溢出，最长按一天计算
+        remaining = Math.min(remaining, TimeUnit.DAYS.toMillis(1));
+        return new Snapshot<T>(value, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(remaining));
+    }
+
+    /**
+     * 判断快照是否仍然有效
+     *
+     * @return 未过期返回true
+     */
+    boolean isAlive() {
+        return System.nanoTime() - deadline < 0;
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.loader;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.weixin4j.Weixin;
+import org.weixin4j.model.base.Token;
+import org.weixin4j.model.js.Ticket;
+import org.weixin4j.model.js.TicketType;
+import org.weixin4j.util.HashedWheelTimer;
+
+/**
+ * access_token与ticket主动刷新调度器
+ *
+ * <p>
+ * 适用于同一进程管理大量公众号的场景。所有刷新任务挂在一个哈希时间轮上，
+ * 在凭证过期前<tt>refreshAhead</tt>毫秒再减去一个随机抖动时间触发，
+ * 避免同时注册的公众号在同一时刻集中刷新；到期任务交给有界工作线程池执行，
+ * 刷新结果通过<tt>Weixin</tt>写入各自的<tt>ITokenLoader</tt>/<tt>ITicketLoader</tt>，
+ * 之后再按新凭证的过期时间重新挂入时间轮。</p>
+ *
+ * <pre>
+ * TokenRefreshScheduler scheduler = new TokenRefreshScheduler();
+ * scheduler.register(weixin, TicketType.JSAPI, TicketType.WX_CARD);
+ * </pre>
+ *
+ * <p>
+ * 多进程共享凭证（如<tt>MappedFileTokenLoader</tt>）时，各进程的调度器都可以启用，
+ * 只有获得刷新锁的进程会请求微信服务器，其他进程使用共享区中的凭证，并在<tt>retryDelay</tt>后再次检查。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+@Slf4j
+public class TokenRefreshScheduler {
+
+    private final HashedWheelTimer timer;
+    private final ThreadPoolExecutor workers;
+    /**
+     * 提前刷新时间(ms)
+     */
+    private final long refreshAhead;
+    /**
+     * 随机抖动范围(ms)
+     */
+    private final long jitter;
+    /**
+     * 刷新失败后的重试间隔(ms)
+     */
+    private final long retryDelay;
+    private final ConcurrentMap<Weixin, Registration> registrations = new ConcurrentHashMap<Weixin, Registration>();
+    private final AtomicLong refreshed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * 使用默认参数创建调度器：4个工作线程，提前5分钟刷新，抖动5分钟，失败30秒后重试
+     */
+    public TokenRefreshScheduler() {
+        this(4, 300000, 300000, 30000);
+    }
+
+    /**
+     * 创建调度器
+     *
+     * @param workerThreads 工作线程数
+     * @param refreshAhead 提前刷新时间(ms)
+     * @param jitter 随机抖动范围(ms)，同时用作首次注册时的分散范围
+     * @param retryDelay 刷新失败后的重试间隔(ms)
+     */
+    public TokenRefreshScheduler(int workerThreads, long refreshAhead, long jitter, long retryDelay) {
+        if (workerThreads <= 0) {
+            throw new IllegalArgumentException("workerThreads must be greater than zero");
+        }
+        this.refreshAhead = Math.max(0, refreshAhead);
+        this.jitter = Math.max(0, jitter);
+        this.retryDelay = Math.max(1000, retryDelay);
+        this.workers = new ThreadPoolExecutor(workerThreads, workerThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(workerThreads * 256), new ThreadFactory() {
+            private final AtomicInteger index = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "weixin4j-token-refresh-" + index.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                //工作线程繁忙，稍后重试
+                if (r instanceof RefreshTask && !executor.isShutdown()) {
+                    RefreshTask task = (RefreshTask) r;
+                    schedule(task.registration, task.ticketType, task.force, retryDelay);
+                }
+            }
+        });
+        this.timer = new HashedWheelTimer(1, TimeUnit.SECONDS, 512, workers);
+    }
+
+    /**
+     * 注册公众号，由调度器负责刷新其access_token及指定类型的ticket
+     *
+     * @param weixin 公众号对象
+     * @param ticketTypes 需要刷新的ticket类型
+     */
+    public void register(Weixin weixin, TicketType... ticketTypes) {
+        if (weixin == null) {
+            throw new IllegalArgumentException("weixin can not be null");
+        }
+        Registration registration = new Registration(weixin);
+        Registration previous = registrations.put(weixin, registration);
+        if (previous != null) {
+            previous.cancel();
+        }
+        //首次检查分散在抖动范围内，避免批量注册时集中访问微信服务器
+        schedule(registration, null, false, random(jitter));
+        if (ticketTypes != null) {
+            for (TicketType ticketType : ticketTypes) {
+                schedule(registration, ticketType, false, random(jitter));
+            }
+        }
+    }
+
+    /**
+     * 取消注册
+     *
+     * @param weixin 公众号对象
+     */
+    public void unregister(Weixin weixin) {
+        Registration registration = registrations.remove(weixin);
+        if (registration != null) {
+            registration.cancel();
+        }
+    }
+
+    /**
+     * 获取已注册的公众号数量
+     *
+     * @return 公众号数量
+     */
+    public int size() {
+        return registrations.size();
+    }
+
+    /**
+     * 获取成功刷新次数
+     *
+     * @return 成功刷新次数
+     */
+    public long getRefreshedCount() {
+        return refreshed.get();
+    }
+
+    /**
+     * 获取刷新失败次数
+     *
+     * @return 刷新失败次数
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * 停止调度器
+     */
+    public void shutdown() {
+        for (Registration registration : registrations.values()) {
+            registration.cancel();
+        }
+        registrations.clear();
+        timer.stop();
+        workers.shutdown();
+    }
+
+    private void schedule(Registration registration, TicketType ticketType, boolean force, long delay) {
+        if (registration.cancelled) {
+            return;
+        }
+        HashedWheelTimer.Timeout timeout = timer.newTimeout(new RefreshTask(registration, ticketType, force), delay, TimeUnit.MILLISECONDS);
+        registration.set(ticketType, timeout);
+    }
+
+    /**
+     * 根据过期时间计算下次刷新的延迟
+     */
+    private long delayOf(long exprexpiredTime) {
+        long delay = exprexpiredTime - System.currentTimeMillis() - refreshAhead;
+        return Math.max(0, delay - random(Math.min(jitter, Math.max(0, delay))));
+    }
+
+    private static long random(long bound) {
+        return bound <= 0 ? 0 : ThreadLocalRandom.current().nextLong(bound);
+    }
+
+    /**
+     * 刷新任务
+     */
+    private final class RefreshTask implements Runnable {
+
+        private final Registration registration;
+        private final TicketType ticketType;
+        /**
+         * 是否强制从微信服务器获取，首次检查时优先使用加载器中的有效凭证
+         */
+        private final boolean force;
+
+        RefreshTask(Registration registration, TicketType ticketType, boolean force) {
+            this.registration = registration;
+            this.ticketType = ticketType;
+            this.force = force;
+        }
+
+        @Override
+        public void run() {
+            if (registration.cancelled) {
+                return;
+            }
+            Weixin weixin = registration.weixin;
+            try {
+                long exprexpiredTime;
+                if (ticketType == null) {
+                    Token token = force ? weixin.refreshToken() : weixin.getToken();
+                    exprexpiredTime = token.getExprexpired_time();
+                } else {
+                    Ticket ticket = force ? weixin.refreshTicket(ticketType) : weixin.getTicket(ticketType);
+                    exprexpiredTime = ticket.getExprexpired_time();
+                }
+                long delay = delayOf(exprexpiredTime);
+                if (force && delay == 0) {
+                    //凭证仍在提前刷新范围内，说明由其他进程负责刷新，稍后再检查
+                    delay = retryDelay;
+                } else if (force) {
+                    refreshed.incrementAndGet();
+                }
+                schedule(registration, ticketType, true, delay);
+            } catch (Exception ex) {
+                failed.incrementAndGet();
+                log.warn("weixin4j:公众号[" + weixin.getAppId() + "]刷新"
+                        + (ticketType == null ? "access_token" : ticketType + " ticket") + "失败，"
+                        + retryDelay + "ms后重试", ex);
+                schedule(registration, ticketType, force, retryDelay);
+            }
+        }
+    }
+
+    /**
+     * 公众号注册信息
+     */
+    private static final class Registration {
+
+        private final Weixin weixin;
+        /**
+         * access_token刷新任务
+         */
+        private volatile HashedWheelTimer.Timeout tokenTimeout;
+        /**
+         * 各类型ticket刷新任务
+         */
+        private final HashedWheelTimer.Timeout[] ticketTimeouts = new HashedWheelTimer.Timeout[TicketType.values().length];
+        private volatile boolean cancelled;
+
+        Registration(Weixin weixin) {
+            this.weixin = weixin;
+        }
+
+        synchronized void set(TicketType ticketType, HashedWheelTimer.Timeout timeout) {
+            if (ticketType == null) {
+                tokenTimeout = timeout;
+            } else {
+                ticketTimeouts[ticketType.ordinal()] = timeout;
+            }
+            if (cancelled) {
+                timeout.cancel();
+            }
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            if (tokenTimeout != null) {
+                tokenTimeout.cancel();
+            }
+            for (HashedWheelTimer.Timeout timeout : ticketTimeouts) {
+                if (timeout != null) {
+                    timeout.cancel();
+                }
+            }
+        }
+    }
+}
@@ -22,7 +22,6 @@ package org.weixin4j.model.base;
 import com.alibaba.fastjson.JSONObject;
 import org.weixin4j.WeixinException;
 import java.io.Serializable;
-import java.util.Date;
 import org.weixin4j.http.Response;
 
 /**
@@ -120,9 +119,7 @@ public final class Token implements Serializable {
      * @return 过期返回 true,否则返回false
      */
     public boolean isExprexpired() {
-        Date now = new Date();
-        long nowLong = now.getTime();
-        return nowLong >= exprexpired_time;
+        return System.currentTimeMillis() >= exprexpired_time;
     }
 
     /**
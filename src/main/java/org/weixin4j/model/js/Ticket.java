@@ -22,7 +22,6 @@ package org.weixin4j.model.js;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import java.io.Serializable;
-import java.util.Date;
 
 /**
  * 凭证
@@ -98,9 +97,7 @@ public class Ticket implements Serializable {
      */
     @JsonIgnore
     public boolean isExprexpired() {
-        Date now = new Date();
-        long nowLong = now.getTime();
-        return nowLong >= exprexpired_time;
+        return System.currentTimeMillis() >= exprexpired_time;
     }
 
     public int getExpires_in() {
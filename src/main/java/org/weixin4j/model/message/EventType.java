@@ -74,7 +74,55 @@ public enum EventType {
     /**
      * 弹出地理位置选择器的事件
      */
-    Location_Select("location_select");
+    Location_Select("location_select"),
+    /**
+     * 模版消息发送任务完成
+     *
+     * @since 0.1.6
+     */
+    TemplateSendJobFinish("templatesendjobfinish"),
+    /**
+     * 群发消息发送任务完成
+     *
+     * @since 0.1.6
+     */
+    MassSendJobFinish("masssendjobfinish"),
+    /**
+     * 卡券审核通过
+     *
+     * @since 0.1.6
+     */
+    Card_Pass_Check("card_pass_check"),
+    /**
+     * 卡券审核未通过
+     *
+     * @since 0.1.6
+     */
+    Card_Not_Pass_Check("card_not_pass_check"),
+    /**
+     * 用户领取卡券
+     *
+     * @since 0.1.6
+     */
+    User_Get_Card("user_get_card"),
+    /**
+     * 用户删除卡券
+     *
+     * @since 0.1.6
+     */
+    User_Del_Card("user_del_card"),
+    /**
+     * 卡券被核销
+     *
+     * @since 0.1.6
+     */
+    User_Consume_Card("user_consume_card"),
+    /**
+     * 用户进入会员卡
+     *
+     * @since 0.1.6
+     */
+    User_View_Card("user_view_card");
 
     private String value = "";
 
@@ -19,6 +19,7 @@
  */
 package org.weixin4j.model.message;
 
+import java.util.Locale;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 import org.weixin4j.model.message.event.ClickEventMessage;
@@ -192,13 +193,13 @@ public class InputMessage extends NormalMessage {
     }
 
     public String getEvent() {
-        //转成小写
-        return Event.toLowerCase();
+        return Event;
     }
 
     @XmlElement(name = "Event")
     public void setEvent(String event) {
-        Event = event;
+        //赋值时转成小写，读取时不再重复转换
+        Event = event == null ? null : event.toLowerCase(Locale.ENGLISH);
     }
 
     public String getEventKey() {
@@ -19,6 +19,8 @@
  */
 package org.weixin4j.model.message;
 
+import org.weixin4j.util.ReplyWriter;
+
 /**
  * 微信发送被动响应消息的抽象类
  *
@@ -30,6 +32,16 @@ package org.weixin4j.model.message;
  */
 public abstract class OutputMessage implements java.io.Serializable {
 
+    private static final byte[] TO_USER_NAME = ReplyWriter.fragment("<xml><ToUserName>");
+    private static final byte[] FROM_USER_NAME = ReplyWriter.fragment("</ToUserName><FromUserName>");
+    private static final byte[] CREATE_TIME = ReplyWriter.fragment("</FromUserName><CreateTime>");
+    private static final byte[] MSG_TYPE = ReplyWriter.fragment("</CreateTime><MsgType>");
+    private static final byte[] MSG_TYPE_END = ReplyWriter.fragment("</MsgType>");
+    /**
+     * 根节点结束标签
+     */
+    protected static final byte[] XML_END = ReplyWriter.fragment("</xml>");
+
     /**
      * 接收方帐号（收到的OpenID）
      */
@@ -84,6 +96,44 @@ public abstract class OutputMessage implements java.io.Serializable {
      */
     public abstract String toXML();
 
+    /**
+     * 将对象以UTF-8字节写出为xml
+     *
+     * <p>
+     * 默认写出<code>toXML()</code>的结果，子类可覆盖此方法直接写出各节点，避免拼接中间字符串。</p>
+     *
+     * @param writer 写出器
+     * @since 0.1.6
+     */
+    public void writeXML(ReplyWriter writer) {
+        writer.text(toXML());
+    }
+
+    /**
+     * 写出根节点开始标签及ToUserName、FromUserName、CreateTime、MsgType节点
+     *
+     * @param writer 写出器
+     * @since 0.1.6
+     */
+    protected void writeHeader(ReplyWriter writer) {
+        writer.raw(TO_USER_NAME).cdata(ToUserName)
+                .raw(FROM_USER_NAME).cdata(FromUserName)
+                .raw(CREATE_TIME).number(CreateTime)
+                .raw(MSG_TYPE).cdata(getMsgType()).raw(MSG_TYPE_END);
+    }
+
+    /**
+     * 通过<code>writeXML</code>生成xml字符串
+     *
+     * @return 对象xml字符串
+     * @since 0.1.6
+     */
+    protected String renderXML() {
+        ReplyWriter writer = new ReplyWriter(512);
+        writeXML(writer);
+        return writer.toString();
+    }
+
     public void setToUserName(String ToUserName) {
         this.ToUserName = ToUserName;
     }
@@ -21,6 +21,7 @@ package org.weixin4j.model.message.output;
 
 import org.weixin4j.model.message.Image;
 import org.weixin4j.model.message.OutputMessage;
+import org.weixin4j.util.ReplyWriter;
 
 /**
  * 这个类实现了<tt>OutputMessage</tt>，用来回复图片消息
@@ -33,6 +34,9 @@ import org.weixin4j.model.message.OutputMessage;
  */
 public class ImageOutputMessage extends OutputMessage {
 
+    private static final byte[] IMAGE = ReplyWriter.fragment("<Image><MediaId>");
+    private static final byte[] IMAGE_END = ReplyWriter.fragment("</MediaId></Image>");
+
     /**
      * 消息类型:图片消息
      */
@@ -91,16 +95,13 @@ public class ImageOutputMessage extends OutputMessage {
 
     @Override
     public String toXML() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("<xml>");
-        sb.append("<ToUserName><![CDATA[").append(this.getToUserName()).append("]]></ToUserName>");
-        sb.append("<FromUserName><![CDATA[").append(this.getFromUserName()).append("]]></FromUserName>");
-        sb.append("<CreateTime>").append(this.getCreateTime()).append("</CreateTime>");
-        sb.append("<MsgType><![CDATA[" + this.MsgType + "]]></MsgType>");
-        sb.append("<Image>");
-        sb.append("<MediaId><![CDATA[").append(this.getImage().getMediaId()).append("]]></MediaId>");
-        sb.append("</Image>");
-        sb.append("</xml>");
-        return sb.toString();
+        return renderXML();
+    }
+
+    @Override
+    public void writeXML(ReplyWriter writer) {
+        writeHeader(writer);
+        writer.element(IMAGE, this.getImage().getMediaId(), IMAGE_END);
+        writer.raw(XML_END);
     }
 }
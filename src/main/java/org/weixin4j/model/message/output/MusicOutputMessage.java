@@ -21,6 +21,7 @@ package org.weixin4j.model.message.output;
 
 import org.weixin4j.model.message.Music;
 import org.weixin4j.model.message.OutputMessage;
+import org.weixin4j.util.ReplyWriter;
 
 /**
  * 这个类实现了<tt>OutputMessage</tt>，用来回复音乐消息
@@ -33,6 +34,13 @@ import org.weixin4j.model.message.OutputMessage;
  */
 public class MusicOutputMessage extends OutputMessage {
 
+    private static final byte[] MUSIC = ReplyWriter.fragment("<Music><Title>");
+    private static final byte[] DESCRIPTION = ReplyWriter.fragment("</Title><Description>");
+    private static final byte[] MUSIC_URL = ReplyWriter.fragment("</Description><MusicUrl>");
+    private static final byte[] HQ_MUSIC_URL = ReplyWriter.fragment("</MusicUrl><HQMusicUrl>");
+    private static final byte[] THUMB_MEDIA_ID = ReplyWriter.fragment("</HQMusicUrl><ThumbMediaId>");
+    private static final byte[] MUSIC_END = ReplyWriter.fragment("</ThumbMediaId></Music>");
+
     /**
      * 消息类型:音乐消息
      */
@@ -62,20 +70,18 @@ public class MusicOutputMessage extends OutputMessage {
 
     @Override
     public String toXML() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("<xml>");
-        sb.append("<ToUserName><![CDATA[").append(this.getToUserName()).append("]]></ToUserName>");
-        sb.append("<FromUserName><![CDATA[").append(this.getFromUserName()).append("]]></FromUserName>");
-        sb.append("<CreateTime>").append(this.getCreateTime()).append("</CreateTime>");
-        sb.append("<MsgType><![CDATA[" + this.MsgType + "]]></MsgType>");
-        sb.append("<Music>");
-        sb.append("<Title><![CDATA[").append(this.getMusic().getTitle()).append("]]></Title>");
-        sb.append("<Description><![CDATA[").append(this.getMusic().getDescription()).append("]]></Description>");
-        sb.append("<MusicUrl><![CDATA[").append(this.getMusic().getMusicUrl()).append("]]></MusicUrl>");
-        sb.append("<HQMusicUrl><![CDATA[").append(this.getMusic().getHQMusicUrl()).append("]]></HQMusicUrl>");
-        sb.append("<ThumbMediaId><![CDATA[").append(this.getMusic().getThumbMediaId()).append("]]></ThumbMediaId>");
-        sb.append("</Music>");
-        sb.append("</xml>");
-        return sb.toString();
+        return renderXML();
+    }
+
+    @Override
+    public void writeXML(ReplyWriter writer) {
+        writeHeader(writer);
+        writer.raw(MUSIC).cdata(this.getMusic().getTitle())
+                .raw(DESCRIPTION).cdata(this.getMusic().getDescription())
+                .raw(MUSIC_URL).cdata(this.getMusic().getMusicUrl())
+                .raw(HQ_MUSIC_URL).cdata(this.getMusic().getHQMusicUrl())
+                .raw(THUMB_MEDIA_ID).cdata(this.getMusic().getThumbMediaId())
+                .raw(MUSIC_END);
+        writer.raw(XML_END);
     }
 }
@@ -21,6 +21,7 @@ package org.weixin4j.model.message.output;
 
 import org.weixin4j.model.message.Articles;
 import org.weixin4j.model.message.OutputMessage;
+import org.weixin4j.util.ReplyWriter;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -35,6 +36,15 @@ import java.util.List;
  */
 public class NewsOutputMessage extends OutputMessage {
 
+    private static final byte[] ARTICLE_COUNT = ReplyWriter.fragment("<ArticleCount>");
+    private static final byte[] ARTICLES = ReplyWriter.fragment("</ArticleCount><Articles>");
+    private static final byte[] ITEM = ReplyWriter.fragment("<item><Title>");
+    private static final byte[] DESCRIPTION = ReplyWriter.fragment("</Title><Description>");
+    private static final byte[] PIC_URL = ReplyWriter.fragment("</Description><PicUrl>");
+    private static final byte[] URL = ReplyWriter.fragment("</PicUrl><Url>");
+    private static final byte[] ITEM_END = ReplyWriter.fragment("</Url></item>");
+    private static final byte[] ARTICLES_END = ReplyWriter.fragment("</Articles>");
+
     /**
      * 消息类型:图文消息
      */
@@ -93,24 +103,21 @@ public class NewsOutputMessage extends OutputMessage {
 
     @Override
     public String toXML() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("<xml>");
-        sb.append("<ToUserName><![CDATA[").append(this.getToUserName()).append("]]></ToUserName>");
-        sb.append("<FromUserName><![CDATA[").append(this.getFromUserName()).append("]]></FromUserName>");
-        sb.append("<CreateTime>").append(this.getCreateTime()).append("</CreateTime>");
-        sb.append("<MsgType><![CDATA[" + this.MsgType + "]]></MsgType>");
-        sb.append("<ArticleCount>").append(this.ArticleCount).append("</ArticleCount>");
-        sb.append("<Articles>");
+        return renderXML();
+    }
+
+    @Override
+    public void writeXML(ReplyWriter writer) {
+        writeHeader(writer);
+        writer.raw(ARTICLE_COUNT).number(this.ArticleCount == null ? null : this.ArticleCount.longValue()).raw(ARTICLES);
         for (Articles article : Articles) {
-            sb.append("<item>");
-            sb.append("<Title><![CDATA[").append(article.getTitle()).append("]]></Title>");
-            sb.append("<Description><![CDATA[").append(article.getDescription()).append("]]></Description>");
-            sb.append("<PicUrl><![CDATA[").append(article.getPicUrl()).append("]]></PicUrl>");
-            sb.append("<Url><![CDATA[").append(article.getUrl()).append("]]></Url>");
-            sb.append("</item>");
+            writer.raw(ITEM).cdata(article.getTitle())
+                    .raw(DESCRIPTION).cdata(article.getDescription())
+                    .raw(PIC_URL).cdata(article.getPicUrl())
+                    .raw(URL).cdata(article.getUrl())
+                    .raw(ITEM_END);
         }
-        sb.append("</Articles>");
-        sb.append("</xml>");
-        return sb.toString();
+        writer.raw(ARTICLES_END);
+        writer.raw(XML_END);
     }
 }
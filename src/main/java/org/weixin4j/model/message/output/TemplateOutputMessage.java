@@ -0,0 +1,148 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.model.message.output;
+
+import org.weixin4j.model.message.OutputMessage;
+import org.weixin4j.util.ReplyWriter;
+
+/**
+ * 预渲染的回复消息
+ *
+ * <p>
+ * 对所有用户内容相同的回复（菜单点击、关键字回复等），将&lt;/MsgType&gt;之后直至&lt;/xml&gt;的部分预先编码为字节，
+ * 回复时只写出ToUserName、FromUserName、CreateTime和MsgType，再拼接预渲染的字节。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ * @see org.weixin4j.spi.ReplyTemplateCache
+ */
+public class TemplateOutputMessage extends OutputMessage {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Template template;
+
+    /**
+     * 基于预渲染模板创建回复消息
+     *
+     * @param template 预渲染模板
+     */
+    public TemplateOutputMessage(Template template) {
+        this.template = template;
+    }
+
+    /**
+     * 预渲染回复消息
+     *
+     * <p>
+     * 渲染时会清空source的ToUserName、FromUserName、CreateTime，调用方不应再使用source回复。</p>
+     *
+     * @param source 回复消息
+     * @return 预渲染模板，source的xml结构无法拆分时返回null
+     */
+    public static Template compile(OutputMessage source) {
+        source.setToUserName(null);
+        source.setFromUserName(null);
+        source.setCreateTime(null);
+        ReplyWriter full = new ReplyWriter(512);
+        source.writeXML(full);
+        //相同MsgType、空头部时写出的固定前缀
+        TemplateOutputMessage blank = new TemplateOutputMessage(new Template(source.getMsgType(), new byte[0], source));
+        ReplyWriter header = new ReplyWriter(128);
+        blank.writeHeader(header);
+        byte[] fullBytes = full.toByteArray();
+        byte[] headerBytes = header.toByteArray();
+        if (fullBytes.length < headerBytes.length) {
+            return null;
+        }
+        for (int i = 0; i < headerBytes.length; i++) {
+            if (fullBytes[i] != headerBytes[i]) {
+                return null;
+            }
+        }
+        byte[] tail = new byte[fullBytes.length - headerBytes.length];
+        System.arraycopy(fullBytes, headerBytes.length, tail, 0, tail.length);
+        return new Template(source.getMsgType(), tail, source);
+    }
+
+    @Override
+    public String getMsgType() {
+        return template.msgType;
+    }
+
+    /**
+     * 获取预渲染前的原始回复消息，用于以客服消息补发
+     *
+     * @return 原始回复消息
+     */
+    public OutputMessage getSource() {
+        return template.source;
+    }
+
+    @Override
+    public String toXML() {
+        return renderXML();
+    }
+
+    @Override
+    public void writeXML(ReplyWriter writer) {
+        writeHeader(writer);
+        writer.raw(template.tail);
+    }
+
+    /**
+     * 预渲染模板，线程安全，可被多个请求共享
+     */
+    public static final class Template implements java.io.Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String msgType;
+        /**
+         * MsgType节点之后直至&lt;/xml&gt;的UTF-8字节
+         */
+        private final byte[] tail;
+        private final OutputMessage source;
+
+        Template(String msgType, byte[] tail, OutputMessage source) {
+            this.msgType = msgType;
+            this.tail = tail;
+            this.source = source;
+        }
+
+        /**
+         * 创建一条使用该模板的回复消息
+         *
+         * @return 回复消息
+         */
+        public TemplateOutputMessage newMessage() {
+            return new TemplateOutputMessage(this);
+        }
+
+        /**
+         * 获取预渲染的字节数
+         *
+         * @return 字节数
+         */
+        public int length() {
+            return tail.length;
+        }
+    }
+}
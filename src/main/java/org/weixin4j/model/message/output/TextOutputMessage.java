@@ -20,6 +20,7 @@
 package org.weixin4j.model.message.output;
 
 import org.weixin4j.model.message.OutputMessage;
+import org.weixin4j.util.ReplyWriter;
 
 /**
  * 这个类实现了<tt>OutputMessage</tt>，用来回复文本消息
@@ -32,6 +33,9 @@ import org.weixin4j.model.message.OutputMessage;
  */
 public class TextOutputMessage extends OutputMessage {
 
+    private static final byte[] CONTENT = ReplyWriter.fragment("<Content>");
+    private static final byte[] CONTENT_END = ReplyWriter.fragment("</Content>");
+
     /**
      * 消息类型:文本消息
      */
@@ -86,14 +90,13 @@ public class TextOutputMessage extends OutputMessage {
 
     @Override
     public String toXML() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("<xml>");
-        sb.append("<ToUserName><![CDATA[").append(this.getToUserName()).append("]]></ToUserName>");
-        sb.append("<FromUserName><![CDATA[").append(this.getFromUserName()).append("]]></FromUserName>");
-        sb.append("<CreateTime>").append(this.getCreateTime()).append("</CreateTime>");
-        sb.append("<MsgType><![CDATA[" + this.MsgType + "]]></MsgType>");
-        sb.append("<Content><![CDATA[").append(this.getContent()).append("]]></Content>");
-        sb.append("</xml>");
-        return sb.toString();
+        return renderXML();
+    }
+
+    @Override
+    public void writeXML(ReplyWriter writer) {
+        writeHeader(writer);
+        writer.element(CONTENT, this.getContent(), CONTENT_END);
+        writer.raw(XML_END);
     }
 }
@@ -21,6 +21,7 @@ package org.weixin4j.model.message.output;
 
 import org.weixin4j.model.message.Video;
 import org.weixin4j.model.message.OutputMessage;
+import org.weixin4j.util.ReplyWriter;
 
 /**
  * 这个类实现了<tt>OutputMessage</tt>，用来回复视频消息
@@ -33,6 +34,11 @@ import org.weixin4j.model.message.OutputMessage;
  */
 public class VideoOutputMessage extends OutputMessage {
 
+    private static final byte[] VIDEO = ReplyWriter.fragment("<Video><MediaId>");
+    private static final byte[] TITLE = ReplyWriter.fragment("</MediaId><Title>");
+    private static final byte[] DESCRIPTION = ReplyWriter.fragment("</Title><Description>");
+    private static final byte[] VIDEO_END = ReplyWriter.fragment("</Description></Video>");
+
     /**
      * 消息类型:视频消息
      */
@@ -91,18 +97,16 @@ public class VideoOutputMessage extends OutputMessage {
 
     @Override
     public String toXML() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("<xml>");
-        sb.append("<ToUserName><![CDATA[").append(this.getToUserName()).append("]]></ToUserName>");
-        sb.append("<FromUserName><![CDATA[").append(this.getFromUserName()).append("]]></FromUserName>");
-        sb.append("<CreateTime>").append(this.getCreateTime()).append("</CreateTime>");
-        sb.append("<MsgType><![CDATA[" + this.MsgType + "]]></MsgType>");
-        sb.append("<Video>");
-        sb.append("<MediaId><![CDATA[").append(this.getVideo().getMediaId()).append("]]></MediaId>");
-        sb.append("<Title><![CDATA[").append(this.getVideo().getTitle()).append("]]></Title>");
-        sb.append("<Description><![CDATA[").append(this.getVideo().getDescription()).append("]]></Description>");
-        sb.append("</Video>");
-        sb.append("</xml>");
-        return sb.toString();
+        return renderXML();
+    }
+
+    @Override
+    public void writeXML(ReplyWriter writer) {
+        writeHeader(writer);
+        writer.raw(VIDEO).cdata(this.getVideo().getMediaId())
+                .raw(TITLE).cdata(this.getVideo().getTitle())
+                .raw(DESCRIPTION).cdata(this.getVideo().getDescription())
+                .raw(VIDEO_END);
+        writer.raw(XML_END);
     }
 }
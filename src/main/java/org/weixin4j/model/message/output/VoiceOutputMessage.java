@@ -21,6 +21,7 @@ package org.weixin4j.model.message.output;
 
 import org.weixin4j.model.message.Voice;
 import org.weixin4j.model.message.OutputMessage;
+import org.weixin4j.util.ReplyWriter;
 
 /**
  * 这个类实现了<tt>OutputMessage</tt>，用来回复语音消息
@@ -32,6 +33,9 @@ import org.weixin4j.model.message.OutputMessage;
  */
 public class VoiceOutputMessage extends OutputMessage {
 
+    private static final byte[] VOICE = ReplyWriter.fragment("<Voice><MediaId>");
+    private static final byte[] VOICE_END = ReplyWriter.fragment("</MediaId></Voice>");
+
     /**
      * 消息类型:语音消息
      */
@@ -86,16 +90,13 @@ public class VoiceOutputMessage extends OutputMessage {
 
     @Override
     public String toXML() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("<xml>");
-        sb.append("<ToUserName><![CDATA[").append(this.getToUserName()).append("]]></ToUserName>");
-        sb.append("<FromUserName><![CDATA[").append(this.getFromUserName()).append("]]></FromUserName>");
-        sb.append("<CreateTime>").append(this.getCreateTime()).append("</CreateTime>");
-        sb.append("<MsgType><![CDATA[" + this.MsgType + "]]></MsgType>");
-        sb.append("<Voice>");
-        sb.append("<MediaId><![CDATA[").append(this.getVoice().getMediaId()).append("]]></MediaId>");
-        sb.append("</Voice>");
-        sb.append("</xml>");
-        return sb.toString();
+        return renderXML();
+    }
+
+    @Override
+    public void writeXML(ReplyWriter writer) {
+        writeHeader(writer);
+        writer.element(VOICE, this.getVoice().getMediaId(), VOICE_END);
+        writer.raw(XML_END);
     }
 }
\ No newline at end of file
@@ -0,0 +1,77 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.quota;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 内存式计数存储
+ *
+ * 进程重启后计数清零（生产环境推荐使用<tt>FileTokenQuotaStore</tt>）
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public class DefaultTokenQuotaStore implements ITokenQuotaStore {
+
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+
+    @Override
+    public int incrementIfBelow(String appId, int day, int limit) {
+        return counter(appId).increment(day, limit);
+    }
+
+    private Counter counter(String appId) {
+        Counter counter = counters.get(appId);
+        if (counter == null) {
+            Counter created = new Counter();
+            counter = counters.putIfAbsent(appId, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    @Override
+    public int get(String appId, int day) {
+        Counter counter = counters.get(appId);
+        return counter == null ? 0 : counter.get(day);
+    }
+
+    private static final class Counter {
+
+        private int day;
+        private int count;
+
+        synchronized int increment(int today, int limit) {
+            if (day != today) {
+                day = today;
+                count = 0;
+            }
+            return count < limit ? ++count : -1;
+        }
+
+        synchronized int get(int today) {
+            return day == today ? count : 0;
+        }
+    }
+}
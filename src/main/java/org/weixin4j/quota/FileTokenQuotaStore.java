@@ -0,0 +1,107 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.quota;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+
+/**
+ * 文件式计数存储
+ *
+ * <p>
+ * 每个公众号一个计数文件（{dir}/{appId}.quota），内容为8个字节：计数日 + 当日计数。
+ * 读写时持有文件锁，同一台主机上的多个进程共享同一份计数，进程重启后计数不丢失。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public class FileTokenQuotaStore implements ITokenQuotaStore {
+
+    private final File dir;
+
+    /**
+     * 创建文件式计数存储
+     *
+     * @param dir 计数文件目录
+     */
+    public FileTokenQuotaStore(File dir) {
+        if (dir == null) {
+            throw new IllegalArgumentException("dir can not be null");
+        }
+        if (!dir.exists() && !dir.mkdirs() && !dir.exists()) {
+            throw new IllegalStateException("can not create directory " + dir);
+        }
+        this.dir = dir;
+    }
+
+    @Override
+    public synchronized int incrementIfBelow(String appId, int day, int limit) {
+        return update(appId, day, true, limit);
+    }
+
+    @Override
+    public synchronized int get(String appId, int day) {
+        return update(appId, day, false, 0);
+    }
+
+    /**
+     * 在文件锁内读取计数，需要加一时计数小于limit才加一
+     *
+     * @return 不加一时返回当日计数，否则返回加一后的计数，已达到上限时返回-1
+     */
+    private int update(String appId, int day, boolean increment, int limit) {
+        File file = new File(dir, appId + ".quota");
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            FileLock lock = raf.getChannel().lock();
+            try {
+                int count = 0;
+                if (raf.length() >= 8 && raf.readInt() == day) {
+                    count = raf.readInt();
+                }
+                if (!increment) {
+                    return count;
+                }
+                if (count >= limit) {
+                    return -1;
+                }
+                count++;
+                raf.seek(0);
+                raf.writeInt(day);
+                raf.writeInt(count);
+                return count;
+            } finally {
+                lock.release();
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("access token quota file " + file + " error", ex);
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException ignore) {
+                }
+            }
+        }
+    }
+}
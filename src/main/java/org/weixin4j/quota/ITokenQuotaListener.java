@@ -0,0 +1,46 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.quota;
+
+/**
+ * access_token获取次数告警监听接口
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public interface ITokenQuotaListener {
+
+    /**
+     * 当日获取次数达到告警阈值
+     *
+     * @param appId 公众号开发者ID
+     * @param count 当日已获取次数
+     * @param limit 每日上限
+     */
+    void onThreshold(String appId, int count, int limit);
+
+    /**
+     * 获取请求被拒绝（刷新过于频繁或已达到每日上限）
+     *
+     * @param appId 公众号开发者ID
+     * @param reason 拒绝原因
+     */
+    void onRejected(String appId, String reason);
+}
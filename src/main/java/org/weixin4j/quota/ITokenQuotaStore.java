@@ -0,0 +1,48 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.quota;
+
+/**
+ * access_token获取次数计数存储接口
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public interface ITokenQuotaStore {
+
+    /**
+     * 当日计数小于上限时加一，检查和加一为一个原子操作
+     *
+     * @param appId 公众号开发者ID
+     * @param day 计数日（北京时间自1970-01-01起的天数）
+     * @param limit 每日上限
+     * @return 加一后的当日计数，已达到上限时返回-1
+     */
+    int incrementIfBelow(String appId, int day, int limit);
+
+    /**
+     * 获取当日计数
+     *
+     * @param appId 公众号开发者ID
+     * @param day 计数日（北京时间自1970-01-01起的天数）
+     * @return 当日计数
+     */
+    int get(String appId, int day);
+}
@@ -0,0 +1,324 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.quota;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang.StringUtils;
+import org.weixin4j.Configuration;
+import org.weixin4j.WeixinException;
+
+/**
+ * access_token获取配额计数器
+ *
+ * <p>
+ * 微信限制每个公众号每日调用cgi-bin/token接口2000次，超出后当日将无法获取access_token。
+ * 所有获取access_token的请求都应先调用<code>acquire(appId)</code>，由计数器完成以下检查：</p>
+ * <ol>
+ * <li>同一公众号两次获取的最小间隔，过于频繁的请求直接拒绝；</li>
+ * <li>每日调用次数上限，达到上限后拒绝；</li>
+ * <li>当日次数达到告警阈值时通知<tt>ITokenQuotaListener</tt>。</li>
+ * </ol>
+ *
+ * <p>
+ * 每日上限的检查和计数为一个原子操作；只有通过检查的获取才记录获取时间，
+ * 获取失败时调用<code>release</code>撤销获取时间，可立即重试（已计入的次数不退回）。</p>
+ *
+ * <p>
+ * 默认配置读取weixin4j.properties：</p>
+ * <pre>
+ * weixin4j.token.quota.limit=2000          #每日上限
+ * weixin4j.token.quota.interval=5000       #最小获取间隔(ms)
+ * weixin4j.token.quota.alarm=50,80,95      #告警阈值(百分比)
+ * weixin4j.token.quota.path=               #计数文件目录，为空时使用java.io.tmpdir/weixin4j-quota
+ * </pre>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+@Slf4j
+public class TokenQuota {
+
+    /**
+     * 北京时间偏移(ms)，微信每日配额按北京时间零点重置
+     */
+    private static final long CST_OFFSET = 8 * 3600 * 1000L;
+    private static final long DAY_MILLIS = 24 * 3600 * 1000L;
+
+    private static volatile TokenQuota defaultQuota;
+
+    private final ITokenQuotaStore store;
+    private final int limit;
+    private final long minInterval;
+    /**
+     * 告警阈值（次数），升序
+     */
+    private final int[] alarms;
+    private volatile ITokenQuotaListener listener = new LogListener();
+    /**
+     * 各公众号最近一次获取时间
+     */
+    private final ConcurrentMap<String, AtomicLong> lastFetch = new ConcurrentHashMap<String, AtomicLong>();
+    /**
+     * 各公众号被拒绝的次数
+     */
+    private final ConcurrentMap<String, AtomicLong> rejected = new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * 创建计数器
+     *
+     * @param store 计数存储
+     * @param limit 每日上限
+     * @param minInterval 同一公众号最小获取间隔(ms)，0表示不限制
+     * @param alarmPercents 告警阈值(百分比)
+     */
+    public TokenQuota(ITokenQuotaStore store, int limit, long minInterval, int... alarmPercents) {
+        if (store == null) {
+            throw new IllegalArgumentException("store can not be null");
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be greater than zero");
+        }
+        this.store = store;
+        this.limit = limit;
+        this.minInterval = Math.max(0, minInterval);
+        int[] counts = new int[alarmPercents == null ? 0 : alarmPercents.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = Math.max(1, (int) ((long) limit * alarmPercents[i] / 100));
+        }
+        Arrays.sort(counts);
+        this.alarms = counts;
+    }
+
+    /**
+     * 获取按weixin4j.properties配置创建的全局计数器
+     *
+     * @return 全局计数器
+     */
+    public static TokenQuota getDefault() {
+        TokenQuota quota = defaultQuota;
+        if (quota == null) {
+            synchronized (TokenQuota.class) {
+                quota = defaultQuota;
+                if (quota == null) {
+                    quota = fromConfiguration();
+                    defaultQuota = quota;
+                }
+            }
+        }
+        return quota;
+    }
+
+    private static TokenQuota fromConfiguration() {
+        int limit = Configuration.getIntProperty("weixin4j.token.quota.limit", 2000);
+        int interval = Configuration.getIntProperty("weixin4j.token.quota.interval", 5000);
+        String path = Configuration.getProperty("weixin4j.token.quota.path");
+        String[] alarmValues = StringUtils.split(Configuration.getProperty("weixin4j.token.quota.alarm", "50,80,95"), ',');
+        int[] alarmPercents = new int[alarmValues.length];
+        for (int i = 0; i < alarmValues.length; i++) {
+            alarmPercents[i] = Integer.parseInt(alarmValues[i].trim());
+        }
+        //默认使用文件计数，进程反复重启时计数不清零
+        File dir = StringUtils.isBlank(path)
+                ? new File(System.getProperty("java.io.tmpdir"), "weixin4j-quota") : new File(path.trim());
+        ITokenQuotaStore store;
+        try {
+            store = new FileTokenQuotaStore(dir);
+        } catch (IllegalStateException ex) {
+            log.warn("weixin4j:access_token计数目录" + dir + "不可用，改为内存计数，进程重启后计数清零", ex);
+            store = new DefaultTokenQuotaStore();
+        }
+        return new TokenQuota(store, limit > 0 ? limit : 2000, interval, alarmPercents);
+    }
+
+    /**
+     * 申请一次access_token获取
+     *
+     * @param appId 公众号开发者ID
+     * @return 本次获取时间，获取失败时传给<code>release</code>
+     * @throws WeixinException 获取过于频繁或已达到每日上限
+     */
+    public long acquire(String appId) throws WeixinException {
+        long now = System.currentTimeMillis();
+        AtomicLong last = counter(lastFetch, appId);
+        long previous = last.get();
+        if (minInterval > 0 && (now - previous < minInterval || !last.compareAndSet(previous, now))) {
+            reject(appId, "access_token获取过于频繁，最小间隔" + minInterval + "ms");
+        }
+        int count = store.incrementIfBelow(appId, today(now), limit);
+        if (count < 0) {
+            if (minInterval > 0) {
+                //未获取，撤销获取时间
+                last.compareAndSet(now, previous);
+            }
+            reject(appId, "access_token获取次数已达到每日上限" + limit + "次");
+        }
+        if (minInterval <= 0) {
+            last.set(now);
+        }
+        notifyThreshold(appId, count);
+        return now;
+    }
+
+    /**
+     * 获取失败时撤销获取时间，不再受最小获取间隔限制
+     *
+     * <p>
+     * 已计入的当日次数不退回，请求可能已到达微信服务器。</p>
+     *
+     * @param appId 公众号开发者ID
+     * @param fetchTime <code>acquire</code>返回的获取时间
+     */
+    public void release(String appId, long fetchTime) {
+        AtomicLong last = lastFetch.get(appId);
+        if (last != null) {
+            last.compareAndSet(fetchTime, 0);
+        }
+    }
+
+    private void notifyThreshold(String appId, int count) {
+        for (int alarm : alarms) {
+            if (count == alarm) {
+                listener.onThreshold(appId, count, limit);
+                break;
+            }
+        }
+    }
+
+    private void reject(String appId, String reason) throws WeixinException {
+        counter(rejected, appId).incrementAndGet();
+        listener.onRejected(appId, reason);
+        throw new WeixinException(reason);
+    }
+
+    private static AtomicLong counter(ConcurrentMap<String, AtomicLong> map, String appId) {
+        AtomicLong value = map.get(appId);
+        if (value == null) {
+            AtomicLong created = new AtomicLong();
+            value = map.putIfAbsent(appId, created);
+            if (value == null) {
+                value = created;
+            }
+        }
+        return value;
+    }
+
+    private static int today(long now) {
+        return (int) ((now + CST_OFFSET) / DAY_MILLIS);
+    }
+
+    /**
+     * 获取公众号当日已获取次数
+     *
+     * @param appId 公众号开发者ID
+     * @return 当日已获取次数
+     */
+    public int getCount(String appId) {
+        return store.get(appId, today(System.currentTimeMillis()));
+    }
+
+    /**
+     * 获取公众号当日剩余次数
+     *
+     * @param appId 公众号开发者ID
+     * @return 当日剩余次数
+     */
+    public int getRemaining(String appId) {
+        return Math.max(0, limit - getCount(appId));
+    }
+
+    /**
+     * 获取公众号最近一次获取时间
+     *
+     * @param appId 公众号开发者ID
+     * @return 最近一次获取时间(ms)，从未获取返回0
+     */
+    public long getLastFetchTime(String appId) {
+        AtomicLong last = lastFetch.get(appId);
+        return last == null ? 0 : last.get();
+    }
+
+    /**
+     * 获取公众号被拒绝的次数（进程内累计）
+     *
+     * @param appId 公众号开发者ID
+     * @return 被拒绝的次数
+     */
+    public long getRejectedCount(String appId) {
+        AtomicLong value = rejected.get(appId);
+        return value == null ? 0 : value.get();
+    }
+
+    /**
+     * 获取本进程内出现过的所有公众号的当日计数
+     *
+     * @return appId与当日计数的对应关系
+     */
+    public Map<String, Integer> getCounts() {
+        int day = today(System.currentTimeMillis());
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (String appId : lastFetch.keySet()) {
+            counts.put(appId, store.get(appId, day));
+        }
+        for (String appId : rejected.keySet()) {
+            if (!counts.containsKey(appId)) {
+                counts.put(appId, store.get(appId, day));
+            }
+        }
+        return counts;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public long getMinInterval() {
+        return minInterval;
+    }
+
+    public void setListener(ITokenQuotaListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("listener can not be null");
+        }
+        this.listener = listener;
+    }
+
+    /**
+     * 默认告警：输出警告日志
+     */
+    private static final class LogListener implements ITokenQuotaListener {
+
+        @Override
+        public void onThreshold(String appId, int count, int limit) {
+            log.warn("weixin4j:公众号[" + appId + "]今日已获取access_token " + count + " 次，每日上限 " + limit + " 次");
+        }
+
+        @Override
+        public void onRejected(String appId, String reason) {
+            log.warn("weixin4j:公众号[" + appId + "]" + reason);
+        }
+    }
+}
@@ -21,18 +21,28 @@ package org.weixin4j.spi;
 
 import lombok.extern.slf4j.Slf4j;
 import org.weixin4j.model.message.InputMessage;
+import java.io.File;
 import java.io.IOException;
-import java.io.StringReader;
-import java.util.Date;
+import java.nio.charset.Charset;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import javax.servlet.ServletInputStream;
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLStreamException;
 import org.weixin4j.Configuration;
 import org.weixin4j.WeixinException;
 import org.weixin4j.model.message.EventType;
 import org.weixin4j.model.message.MsgType;
 import org.weixin4j.model.message.OutputMessage;
-import org.weixin4j.util.XStreamFactory;
+import org.weixin4j.spi.journal.MappedJournal;
+import org.weixin4j.spi.journal.MessageJournal;
+import org.weixin4j.spi.pipeline.MessageChain;
+import org.weixin4j.spi.pipeline.MessagePipeline;
+import org.weixin4j.util.InputMessageParser;
+import org.weixin4j.util.RequestBody;
+import org.weixin4j.util.StripedExecutor;
 
 /**
  * 默认消息处理器
@@ -43,14 +53,43 @@ import org.weixin4j.util.XStreamFactory;
 @Slf4j
 public class DefaultMessageHandler implements IMessageHandler {
 
-    private final IEventMessageHandler eventMsgHandler;
-    private final INormalMessageHandler normalMsgHandler;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * 进程内共享的排重器和按粉丝有序的执行器，多公众号的处理器不重复创建
+     */
+    private static MessageDeduplicator sharedDeduplicator;
+    private static StripedExecutor sharedExecutor;
+
+    private final MessageDispatcher dispatcher;
+    /**
+     * 消息排重器，为null时不排重
+     */
+    private volatile MessageDeduplicator deduplicator;
+    /**
+     * 按粉丝有序的执行器，为null时在调用线程处理
+     */
+    private volatile StripedExecutor executor;
+    /**
+     * 消息日志，为null时不记录
+     */
+    private volatile MessageJournal journal;
+    /**
+     * 中间件和阶段耗时统计
+     */
+    private final MessagePipeline pipeline = new MessagePipeline();
+    /**
+     * 管道末端的排重和分发
+     */
+    private final MessageChain dispatchChain = new MessageChain() {
+        @Override
+        public OutputMessage proceed(InputMessage inputMsg) throws WeixinException {
+            return handle(inputMsg);
+        }
+    };
 
     public DefaultMessageHandler() {
-        //获取普通消息处理工具类
-        normalMsgHandler = HandlerFactory.getNormalMessageHandler();
-        //获取消息处理工具类
-        eventMsgHandler = HandlerFactory.getEventMessageHandler();
+        //获取普通消息处理工具类和事件消息处理工具类
+        this(HandlerFactory.getNormalMessageHandler(), HandlerFactory.getEventMessageHandler());
     }
 
     /**
@@ -61,110 +100,380 @@ public class DefaultMessageHandler implements IMessageHandler {
      * @since 0.1.3
      */
     public DefaultMessageHandler(INormalMessageHandler normalMsgHandler, IEventMessageHandler eventMsgHandler) {
-        this.normalMsgHandler = normalMsgHandler;
-        this.eventMsgHandler = eventMsgHandler;
+        this(new MessageDispatcher(normalMsgHandler, eventMsgHandler));
+    }
+
+    /**
+     * 带参构造，外部传入消息分发表
+     *
+     * <p>
+     * 按配置开启的排重器、按粉丝有序的执行器和消息日志在进程内共享，
+     * 为多个公众号创建的处理器使用同一组实例。</p>
+     *
+     * @param dispatcher 消息分发表
+     * @since 0.1.6
+     */
+    public DefaultMessageHandler(MessageDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+        if (Boolean.parseBoolean(Configuration.getProperty("weixin4j.message.dedup", "true"))) {
+            this.deduplicator = sharedDeduplicator();
+        }
+        if (Boolean.parseBoolean(Configuration.getProperty("weixin4j.message.ordered", "false"))) {
+            this.executor = sharedExecutor();
+        }
+        String journalDir = Configuration.getProperty("weixin4j.journal.dir", "");
+        if (!journalDir.trim().isEmpty()) {
+            try {
+                //同一目录的日志在进程内共享，多个处理器（如多公众号）写入同一日志
+                this.journal = MappedJournal.open(new File(journalDir.trim()));
+            } catch (IOException ex) {
+                log.error("消息日志打开失败，不记录消息日志:" + journalDir, ex);
+            }
+        }
+    }
+
+    private static synchronized MessageDeduplicator sharedDeduplicator() {
+        if (sharedDeduplicator == null) {
+            sharedDeduplicator = new MessageDeduplicator();
+        }
+        return sharedDeduplicator;
+    }
+
+    private static synchronized StripedExecutor sharedExecutor() {
+        if (sharedExecutor == null) {
+            int shards = Configuration.getIntProperty("weixin4j.message.ordered.shards", 0);
+            if (shards <= 0) {
+                shards = Runtime.getRuntime().availableProcessors();
+            }
+            sharedExecutor = new StripedExecutor(shards,
+                    Configuration.getIntProperty("weixin4j.message.ordered.queueSize", 1000), "weixin4j-ordered-");
+        }
+        return sharedExecutor;
+    }
+
+    /**
+     * 获取消息分发表，可在启动时注册新的消息类型或事件类型
+     *
+     * @return 消息分发表
+     * @since 0.1.6
+     */
+    public MessageDispatcher getDispatcher() {
+        return dispatcher;
     }
 
     @Override
     public String invoke(ServletInputStream inputStream) throws WeixinException {
+        return this.invoke(read(inputStream));
+    }
+
+    /**
+     * 读取并处理推送的消息，返回回复消息对象
+     *
+     * <p>
+     * 调用方可通过<code>OutputMessage.writeXML</code>将回复直接写出到响应流。
+     * 已设置按粉丝有序的执行器时，在粉丝对应的分片中处理，当前线程等待处理结果。</p>
+     *
+     * @param inputStream 输入流
+     * @return 输出消息对象，无需回复时返回null
+     * @throws WeixinException 处理异常
+     * @since 0.1.6
+     */
+    public OutputMessage process(ServletInputStream inputStream) throws WeixinException {
+        return processInOrder(read(inputStream));
+    }
+
+    private InputMessage read(ServletInputStream inputStream) throws WeixinException {
+        long start = pipeline.startTiming();
         try {
-            //将输入流转换为字符串
-            String xmlMsg = XStreamFactory.inputStream2String(inputStream);
+            //按字节读取请求体，直接交由解析器解码，不再转换为中间字符串
+            RequestBody body = RequestBody.read(inputStream);
             if (log.isDebugEnabled()) {
                 log.debug("获取POST的消息:");
-                log.debug(xmlMsg);
+                log.debug(body.toString());
                 log.debug("------------------------");
             }
-            return this.invoke(xmlMsg);
+            record(body.buffer(), 0, body.length());
+            InputMessage inputMsg = InputMessageParser.parse(body.openStream());
+            pipeline.record(MessagePipeline.STAGE_PARSE, start);
+            return inputMsg;
         } catch (IOException ex) {
             throw new WeixinException("输入流转换错误：", ex);
+        } catch (XMLStreamException ex) {
+            throw new WeixinException("消息解析错误：", ex);
         }
     }
 
     @Override
     public String invoke(String inputXml) throws WeixinException {
-        //输出消息对象
-        OutputMessage outputMsg = null;
+        if (journal != null && inputXml != null) {
+            byte[] payload = inputXml.getBytes(UTF_8);
+            record(payload, 0, payload.length);
+        }
+        long start = pipeline.startTiming();
+        InputMessage inputMsg;
         try {
-            JAXBContext context = JAXBContext.newInstance(InputMessage.class);
-            Unmarshaller unmarshaller = context.createUnmarshaller();
-            InputMessage inputMsg = (InputMessage) unmarshaller.unmarshal(new StringReader(inputXml));
+            inputMsg = InputMessageParser.parse(inputXml);
+        } catch (XMLStreamException ex) {
+            throw new WeixinException("消息解析错误：", ex);
+        }
+        pipeline.record(MessagePipeline.STAGE_PARSE, start);
+        return toXML(processInOrder(inputMsg));
+    }
+
+    /**
+     * 处理已解析的消息
+     *
+     * @param inputMsg 输入消息
+     * @return 回复消息XML，无需回复时返回空字符串
+     * @throws WeixinException 处理异常
+     * @since 0.1.6
+     */
+    public String invoke(InputMessage inputMsg) throws WeixinException {
+        return toXML(process(inputMsg));
+    }
+
+    private String toXML(OutputMessage outputMsg) throws WeixinException {
+        if (outputMsg != null) {
+            try {
+                long start = pipeline.startTiming();
+                // 把发送发送对象转换为xml输出
+                String xml = outputMsg.toXML();
+                pipeline.record(MessagePipeline.STAGE_SERIALIZE, start);
+                if (log.isDebugEnabled()) {
+                    log.debug("POST输出消息:");
+                    log.debug(xml);
+                    log.debug("------------------------");
+                }
+                return xml;
+            } catch (Exception ex) {
+                throw new WeixinException("转换回复消息为xml时错误：", ex);
+            }
+        }
+        return "";
+    }
+
+    /**
+     * 分发已解析的消息，返回回复消息对象
+     *
+     * <p>
+     * 消息依次经过<tt>getPipeline()</tt>中注册的中间件，再排重和分发。</p>
+     *
+     * @param inputMsg 输入消息
+     * @return 输出消息对象，无需回复时返回null
+     * @throws WeixinException 处理异常
+     * @since 0.1.6
+     */
+    public OutputMessage process(InputMessage inputMsg) throws WeixinException {
+        if (pipeline.isActive()) {
+            return pipeline.execute(inputMsg, dispatchChain);
+        }
+        return handle(inputMsg);
+    }
+
+    /**
+     * 排重并分发
+     */
+    private OutputMessage handle(InputMessage inputMsg) throws WeixinException {
+        MessageDeduplicator dedup = deduplicator;
+        if (dedup == null) {
+            return dispatch(inputMsg);
+        }
+        MessageDeduplicator.Duplicate duplicate = dedup.begin(inputMsg);
+        if (duplicate != null) {
+            //微信重试推送的消息，直接返回首次处理的结果
             if (log.isDebugEnabled()) {
-                log.debug("将指定节点下的xml节点数据转换为对象成功!");
+                log.debug("重复推送的消息:[" + inputMsg.getMsgType() + "] MsgId:[" + inputMsg.getMsgId() + "]");
+            }
+            return duplicate.getOutputMessage();
+        }
+        OutputMessage outputMsg;
+        try {
+            outputMsg = dispatch(inputMsg);
+        } catch (WeixinException ex) {
+            dedup.fail(inputMsg);
+            throw ex;
+        } catch (RuntimeException ex) {
+            dedup.fail(inputMsg);
+            throw ex;
+        }
+        dedup.complete(inputMsg, outputMsg);
+        return outputMsg;
+    }
+
+    /**
+     * 获取消息处理管道，可注册中间件和阶段耗时统计
+     *
+     * @return 消息处理管道
+     * @since 0.1.6
+     */
+    public MessagePipeline getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * 获取消息排重器
+     *
+     * @return 消息排重器，未开启排重时返回null
+     * @since 0.1.6
+     */
+    public MessageDeduplicator getDeduplicator() {
+        return deduplicator;
+    }
+
+    /**
+     * 设置消息排重器
+     *
+     * @param deduplicator 消息排重器，为null时关闭排重
+     * @since 0.1.6
+     */
+    public void setDeduplicator(MessageDeduplicator deduplicator) {
+        this.deduplicator = deduplicator;
+    }
+
+    /**
+     * 获取消息日志
+     *
+     * @return 消息日志，未开启时返回null
+     * @since 0.1.6
+     */
+    public MessageJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * 设置消息日志
+     *
+     * @param journal 消息日志，为null时不记录
+     * @since 0.1.6
+     */
+    public void setJournal(MessageJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * 将消息原文写入消息日志，未开启消息日志时不做处理
+     *
+     * <p>
+     * 写入失败只记录警告，不影响消息处理。</p>
+     *
+     * @param payload 消息原文（UTF-8编码的XML）
+     * @param offset 起始位置
+     * @param length 长度
+     * @since 0.1.6
+     */
+    public void record(byte[] payload, int offset, int length) {
+        MessageJournal j = journal;
+        if (j == null || length <= 0) {
+            return;
+        }
+        try {
+            j.append(payload, offset, length);
+        } catch (RuntimeException ex) {
+            log.warn("消息日志写入失败", ex);
+        }
+    }
+
+    /**
+     * 获取按粉丝有序的执行器
+     *
+     * @return 执行器，未开启时返回null
+     * @since 0.1.6
+     */
+    public StripedExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * 设置按粉丝有序的执行器
+     *
+     * <p>
+     * 设置后消息按FromUserName分片处理，同一粉丝的消息按提交顺序依次处理，不同粉丝之间并行。</p>
+     *
+     * @param executor 执行器，为null时在调用线程处理
+     * @since 0.1.6
+     */
+    public void setExecutor(StripedExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * 提交消息处理
+     *
+     * <p>
+     * 已设置执行器时在FromUserName对应的分片中处理，否则在调用线程中处理。</p>
+     *
+     * @param inputMsg 输入消息
+     * @return 回复消息
+     * @throws RejectedExecutionException 分片队列已满
+     * @since 0.1.6
+     */
+    public Future<OutputMessage> submit(final InputMessage inputMsg) {
+        FutureTask<OutputMessage> task = new FutureTask<OutputMessage>(new Callable<OutputMessage>() {
+            @Override
+            public OutputMessage call() throws Exception {
+                return process(inputMsg);
+            }
+        });
+        StripedExecutor e = executor;
+        if (e == null) {
+            task.run();
+        } else {
+            e.execute(inputMsg.getFromUserName(), task);
+        }
+        return task;
+    }
+
+    /**
+     * 已设置执行器时在分片中处理并等待结果，分片队列已满时丢弃消息
+     */
+    private OutputMessage processInOrder(InputMessage inputMsg) throws WeixinException {
+        StripedExecutor e = executor;
+        if (e == null || e.inShardThread()) {
+            return process(inputMsg);
+        }
+        Future<OutputMessage> future;
+        try {
+            future = submit(inputMsg);
+        } catch (RejectedExecutionException ex) {
+            //在调用线程中处理会打乱该粉丝的消息顺序，回复空内容丢弃
+            log.warn("weixin4j:分片队列已满，丢弃" + inputMsg.getFromUserName() + "的消息:[" + inputMsg.getMsgType() + "]");
+            return null;
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new WeixinException("等待消息处理时被中断", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof WeixinException) {
+                throw (WeixinException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
             }
-            // 取得消息类型
-            String msgType = inputMsg.getMsgType();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new WeixinException("系统错误：", (Exception) cause);
+        }
+    }
+
+    private OutputMessage dispatch(InputMessage inputMsg) throws WeixinException {
+        //输出消息对象
+        OutputMessage outputMsg = null;
+        try {
             if (log.isDebugEnabled()) {
-                log.debug("POST的消息类型:[" + msgType + "]");
+                log.debug("POST的消息类型:[" + inputMsg.getMsgType() + "]");
             }
-            if (msgType.equals(MsgType.Text.toString())) {
-                //处理文本消息
-                outputMsg = normalMsgHandler.textTypeMsg(inputMsg.toTextInputMessage());
-            } else if (msgType.equals(MsgType.Image.toString())) {
-                //处理图片消息
-                outputMsg = normalMsgHandler.imageTypeMsg(inputMsg.toImageInputMessage());
-            } else if (msgType.equals(MsgType.Voice.toString())) {
-                //处理语音消息
-                outputMsg = normalMsgHandler.voiceTypeMsg(inputMsg.toVoiceInputMessage());
-            } else if (msgType.equals(MsgType.Video.toString())) {
-                //处理视频消息
-                outputMsg = normalMsgHandler.videoTypeMsg(inputMsg.toVideoInputMessage());
-            } else if (msgType.equals(MsgType.ShortVideo.toString())) {
-                //处理小视频消息
-                outputMsg = normalMsgHandler.shortvideoTypeMsg(inputMsg.toShortVideoInputMessage());
-            } else if (msgType.equals(MsgType.Location.toString())) {
-                //处理地理位置消息
-                outputMsg = normalMsgHandler.locationTypeMsg(inputMsg.toLocationInputMessage());
-            } else if (msgType.equals(MsgType.Link.toString())) {
-                //处理链接消息
-                outputMsg = normalMsgHandler.linkTypeMsg(inputMsg.toLinkInputMessage());
-            } else if (msgType.equals(MsgType.Event.toString())) {
-                //获取事件类型
-                String event = inputMsg.getEvent();
-                //自定义菜单事件
-                if (event.equals(EventType.Click.toString())) {
-                    //点击菜单拉取消息时的事件推送
-                    outputMsg = eventMsgHandler.click(inputMsg.toClickEventMessage());
-                } else if (event.equals(EventType.View.toString())) {
-                    //点击菜单跳转链接时的事件推送
-                    outputMsg = eventMsgHandler.view(inputMsg.toViewEventMessage());
-                } else if (event.equals(EventType.Subscribe.toString())) {
-                    //获取事件KEY值，判断是否关注
-                    String eventKey = inputMsg.getEventKey();
-                    if (eventKey != null && eventKey.startsWith("qrscene_")) {
-                        //用户未关注时，进行关注后的事件推送
-                        outputMsg = eventMsgHandler.qrsceneSubscribe(inputMsg.toQrsceneSubscribeEventMessage());
-                    } else {
-                        //关注事件
-                        outputMsg = eventMsgHandler.subscribe(inputMsg.toSubscribeEventMessage());
-                    }
-                } else if (event.equals(EventType.Unsubscribe.toString())) {
-                    //取消关注事件
-                    outputMsg = eventMsgHandler.unSubscribe(inputMsg.toUnSubscribeEventMessage());
-                } else if (event.equals(EventType.Scan.toString())) {
-                    //扫描带参数二维码事件
-                    outputMsg = eventMsgHandler.qrsceneScan(inputMsg.toQrsceneScanEventMessage());
-                } else if (event.equals(EventType.Location.toString())) {
-                    //上报地理位置事件
-                    outputMsg = eventMsgHandler.location(inputMsg.toLocationEventMessage());
-                } else if (event.equals(EventType.Scancode_Push.toString())) {
-                    //扫码推事件的事件推送
-                    outputMsg = eventMsgHandler.scanCodePush(inputMsg.toScanCodePushEventMessage());
-                } else if (event.equals(EventType.Scancode_Waitmsg.toString())) {
-                    //扫码推事件且弹出“消息接收中”提示框的事件推送
-                    outputMsg = eventMsgHandler.scanCodeWaitMsg(inputMsg.toScanCodeWaitMsgEventMessage());
-                } else if (event.equals(EventType.Pic_Sysphoto.toString())) {
-                    //弹出系统拍照发图的事件推送
-                    outputMsg = eventMsgHandler.picSysPhoto(inputMsg.toPicSysPhotoEventMessage());
-                } else if (event.equals(EventType.Pic_Photo_OR_Album.toString())) {
-                    //弹出拍照或者相册发图的事件推送
-                    outputMsg = eventMsgHandler.picPhotoOrAlbum(inputMsg.toPicPhotoOrAlbumEventMessage());
-                } else if (event.equals(EventType.Pic_Weixin.toString())) {
-                    //弹出微信相册发图器的事件推送
-                    outputMsg = eventMsgHandler.picWeixin(inputMsg.toPicWeixinEventMessage());
-                } else if (event.equals(EventType.Location_Select.toString())) {
-                    //弹出地理位置选择器的事件推送
-                    outputMsg = eventMsgHandler.locationSelect(inputMsg.toLocationSelectEventMessage());
+            //按消息类型和事件类型查表分发
+            try {
+                outputMsg = dispatcher.dispatch(inputMsg);
+            } finally {
+                if (EventType.Unsubscribe.toString().equals(inputMsg.getEvent())
+                        && MsgType.Event.toString().equals(inputMsg.getMsgType())) {
+                    //取消关注后删除粉丝会话
+                    HandlerFactory.removeSession(inputMsg.getFromUserName());
                 }
             }
             if (outputMsg != null) {
@@ -180,21 +489,7 @@ public class DefaultMessageHandler implements IMessageHandler {
         } catch (Exception ex) {
             throw new WeixinException("系统错误：", ex);
         }
-        if (outputMsg != null) {
-            try {
-                // 把发送发送对象转换为xml输出
-                String xml = outputMsg.toXML();
-                if (log.isDebugEnabled()) {
-                    log.debug("POST输出消息:");
-                    log.debug(xml);
-                    log.debug("------------------------");
-                }
-                return xml;
-            } catch (Exception ex) {
-                throw new WeixinException("转换回复消息为xml时错误：", ex);
-            }
-        }
-        return "";
+        return outputMsg;
     }
 
     //设置详细信息
@@ -19,96 +19,314 @@
  */
 package org.weixin4j.spi;
 
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang.StringUtils;
 import org.weixin4j.Configuration;
+import org.weixin4j.spi.session.FileSessionTier;
+import org.weixin4j.spi.session.LocalSessionStore;
+import org.weixin4j.spi.session.SessionStore;
 
 /**
  * 输入消息处理器工具类
  *
+ * <p>
+ * 每种处理器只创建一次，创建后安全发布给所有线程。处理器实现类按以下顺序确定：</p>
+ * <ol>
+ * <li>weixin4j.properties中配置的非默认实现类：weixin4j.handler、weixin4j.message.handler.normal、
+ * weixin4j.message.handler.event</li>
+ * <li>通过<tt>ServiceLoader</tt>发现的实现类（META-INF/services/org.weixin4j.spi.IMessageHandler等）</li>
+ * <li>默认实现类</li>
+ * </ol>
+ *
+ * <p>
+ * 多公众号时，可为每个公众号配置独立的处理器，配置项为上述配置项加上“.公众号标识”，
+ * 例如weixin4j.message.handler.event.shop，未配置的处理器使用默认处理器；
+ * 也可通过<tt>register</tt>直接注册。配置的输入消息处理器有(INormalMessageHandler, IEventMessageHandler)构造方法时，
+ * 以该公众号的普通消息、事件消息处理器创建；ServiceLoader发现的实现类以无参构造方法创建。
+ * 各公众号的<tt>DefaultMessageHandler</tt>共用进程内的排重器、按粉丝有序的执行器和消息日志。</p>
+ *
+ * <p>
+ * <tt>WeixinUrlFilter</tt>在启动时加载处理器，首个回调不再有反射创建的开销。</p>
+ *
  * @author yangqisheng
  * @since 0.0.6
  */
 @Slf4j
 public class HandlerFactory {
 
-    private static IMessageHandler messageHandler = null;
-    private static String defaultHandler = "org.weixin4j.spi.DefaultMessageHandler";
+    private static final String MESSAGE_HANDLER_KEY = "weixin4j.handler";
+    private static final String NORMAL_HANDLER_KEY = "weixin4j.message.handler.normal";
+    private static final String EVENT_HANDLER_KEY = "weixin4j.message.handler.event";
+    private static final String DEFAULT_MESSAGE_HANDLER = "org.weixin4j.spi.DefaultMessageHandler";
+    private static final String DEFAULT_NORMAL_HANDLER = "org.weixin4j.spi.DefaultNormalMessageHandler";
+    private static final String DEFAULT_EVENT_HANDLER = "org.weixin4j.spi.DefaultEventMessageHandler";
+
+    private static volatile IMessageHandler messageHandler = null;
+    private static volatile INormalMessageHandler normalMessageHandler = null;
+    private static volatile IEventMessageHandler eventMessageHandler = null;
+    private static final ConcurrentMap<String, HandlerSet> accountHandlers = new ConcurrentHashMap<String, HandlerSet>();
 
     public static IMessageHandler getMessageHandler() {
-        if (messageHandler == null) {
-            try {
-                //获取
-                defaultHandler = Configuration.getProperty("weixin4j.handler", defaultHandler);
-                if (log.isDebugEnabled()) {
-                    log.debug("微信输入消息处理Hanler:" + defaultHandler);
-                }
-                // 加载处理器
-                Class<?> clazz = Class.forName(defaultHandler);
-                try {
-                    messageHandler = (IMessageHandler) clazz.newInstance();
-                } catch (Exception ex) {
-                    log.debug("初始化 IMessageHandler 异常：");
-                    ex.printStackTrace();
+        IMessageHandler handler = messageHandler;
+        if (handler == null) {
+            synchronized (HandlerFactory.class) {
+                handler = messageHandler;
+                if (handler == null) {
+                    //先创建普通消息、事件消息处理器，默认处理器的无参构造方法会用到
+                    handler = createMessageHandler(MESSAGE_HANDLER_KEY, getNormalMessageHandler(), getEventMessageHandler());
+                    messageHandler = handler;
                 }
-            } catch (ClassNotFoundException ex) {
-                log.debug("找不到: " + defaultHandler + " 类!");
-                ex.printStackTrace();
             }
         }
-        return messageHandler;
+        return handler;
     }
 
-    private static INormalMessageHandler normalMessageHandler = null;
-    private static String defaultNormalHandler = "org.weixin4j.spi.DefaultNormalMessageHandler";
-
     public static INormalMessageHandler getNormalMessageHandler() {
-        if (normalMessageHandler == null) {
-            try {
-                //获取
-                defaultNormalHandler = Configuration.getProperty("weixin4j.message.handler.normal", defaultNormalHandler);
-                if (log.isDebugEnabled()) {
-                    log.debug("微信接受消息处理Hanler:" + defaultNormalHandler);
+        INormalMessageHandler handler = normalMessageHandler;
+        if (handler == null) {
+            synchronized (HandlerFactory.class) {
+                handler = normalMessageHandler;
+                if (handler == null) {
+                    handler = create(INormalMessageHandler.class, NORMAL_HANDLER_KEY, DEFAULT_NORMAL_HANDLER);
+                    normalMessageHandler = handler;
                 }
-                // 加载处理器
-                Class<?> clazz = Class.forName(defaultNormalHandler);
-                try {
-                    normalMessageHandler = (INormalMessageHandler) clazz.newInstance();
-                } catch (Exception ex) {
-                    log.debug("初始化 INormalMessageHandler 异常：");
-                    ex.printStackTrace();
+            }
+        }
+        return handler;
+    }
+
+    public static IEventMessageHandler getEventMessageHandler() {
+        IEventMessageHandler handler = eventMessageHandler;
+        if (handler == null) {
+            synchronized (HandlerFactory.class) {
+                handler = eventMessageHandler;
+                if (handler == null) {
+                    handler = create(IEventMessageHandler.class, EVENT_HANDLER_KEY, DEFAULT_EVENT_HANDLER);
+                    eventMessageHandler = handler;
                 }
-            } catch (ClassNotFoundException ex) {
-                log.debug("找不到: " + defaultNormalHandler + " 类!");
-                ex.printStackTrace();
             }
         }
-        return normalMessageHandler;
+        return handler;
     }
 
-    private static IEventMessageHandler eventMessageHandler = null;
-    private static String defaultEventHandler = "org.weixin4j.spi.DefaultEventMessageHandler";
+    /**
+     * 获取公众号的输入消息处理器
+     *
+     * @param account 公众号标识，为null时返回默认处理器
+     * @return 输入消息处理器
+     * @since 0.1.6
+     */
+    public static IMessageHandler getMessageHandler(String account) {
+        return account == null ? getMessageHandler() : getHandlers(account).getMessageHandler();
+    }
 
-    public static IEventMessageHandler getEventMessageHandler() {
-        if (eventMessageHandler == null) {
+    /**
+     * 获取公众号的处理器，首次获取时按配置创建
+     *
+     * @param account 公众号标识，为null时返回默认处理器
+     * @return 处理器组合
+     * @since 0.1.6
+     */
+    public static HandlerSet getHandlers(String account) {
+        if (account == null) {
+            return new HandlerSet(getMessageHandler(), getNormalMessageHandler(), getEventMessageHandler());
+        }
+        HandlerSet handlers = accountHandlers.get(account);
+        if (handlers == null) {
+            synchronized (HandlerFactory.class) {
+                handlers = accountHandlers.get(account);
+                if (handlers == null) {
+                    handlers = createHandlers(account);
+                    accountHandlers.put(account, handlers);
+                }
+            }
+        }
+        return handlers;
+    }
+
+    /**
+     * 注册公众号的处理器，替换已有的处理器
+     *
+     * @param account 公众号标识
+     * @param handlers 处理器组合
+     * @since 0.1.6
+     */
+    public static void register(String account, HandlerSet handlers) {
+        if (account == null || handlers == null) {
+            throw new IllegalArgumentException("account and handlers can not be null");
+        }
+        accountHandlers.put(account, handlers);
+    }
+
+    private static HandlerSet createHandlers(String account) {
+        String normalKey = NORMAL_HANDLER_KEY + "." + account;
+        String eventKey = EVENT_HANDLER_KEY + "." + account;
+        String messageKey = MESSAGE_HANDLER_KEY + "." + account;
+        boolean ownNormal = StringUtils.isNotBlank(Configuration.getProperty(normalKey, null));
+        boolean ownEvent = StringUtils.isNotBlank(Configuration.getProperty(eventKey, null));
+        boolean ownMessage = StringUtils.isNotBlank(Configuration.getProperty(messageKey, null));
+        INormalMessageHandler normal = ownNormal ? create(INormalMessageHandler.class, normalKey, DEFAULT_NORMAL_HANDLER) : getNormalMessageHandler();
+        IEventMessageHandler event = ownEvent ? create(IEventMessageHandler.class, eventKey, DEFAULT_EVENT_HANDLER) : getEventMessageHandler();
+        IMessageHandler message;
+        if (ownMessage || ownNormal || ownEvent) {
+            message = createMessageHandler(ownMessage ? messageKey : MESSAGE_HANDLER_KEY, normal, event);
+        } else {
+            //未单独配置，与默认公众号共用处理器
+            message = getMessageHandler();
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("公众号" + account + "的消息处理器:" + message.getClass().getName());
+        }
+        return new HandlerSet(message, normal, event);
+    }
+
+    private static IMessageHandler createMessageHandler(String key, INormalMessageHandler normal, IEventMessageHandler event) {
+        String className = configured(key, DEFAULT_MESSAGE_HANDLER);
+        if (className == null) {
+            IMessageHandler discovered = discover(IMessageHandler.class, DEFAULT_MESSAGE_HANDLER);
+            if (discovered != null) {
+                return discovered;
+            }
+            className = DEFAULT_MESSAGE_HANDLER;
+        }
+        Class<? extends IMessageHandler> clazz = load(IMessageHandler.class, className);
+        try {
             try {
-                //获取
-                defaultEventHandler = Configuration.getProperty("weixin4j.message.handler.event", defaultEventHandler);
-                if (log.isDebugEnabled()) {
-                    log.debug("微信接受消息处理Hanler:" + defaultEventHandler);
+                Constructor<? extends IMessageHandler> constructor = clazz.getConstructor(INormalMessageHandler.class, IEventMessageHandler.class);
+                return constructor.newInstance(normal, event);
+            } catch (NoSuchMethodException ex) {
+                return clazz.newInstance();
+            }
+        } catch (Exception ex) {
+            throw new IllegalStateException("初始化 IMessageHandler 异常：" + className, ex);
+        }
+    }
+
+    private static <T> T create(Class<T> type, String key, String defaultClassName) {
+        String className = configured(key, defaultClassName);
+        if (className == null) {
+            T discovered = discover(type, defaultClassName);
+            if (discovered != null) {
+                return discovered;
+            }
+            className = defaultClassName;
+        }
+        try {
+            return load(type, className).newInstance();
+        } catch (Exception ex) {
+            throw new IllegalStateException("初始化 " + type.getSimpleName() + " 异常：" + className, ex);
+        }
+    }
+
+    /**
+     * 获取配置的非默认实现类
+     *
+     * @return 实现类名，未配置或配置为默认实现类时返回null
+     */
+    private static String configured(String key, String defaultClassName) {
+        String className = Configuration.getProperty(key, "").trim();
+        if (className.isEmpty() || className.equals(defaultClassName)) {
+            return null;
+        }
+        return className;
+    }
+
+    private static <T> Class<? extends T> load(Class<T> type, String className) {
+        if (log.isDebugEnabled()) {
+            log.debug("微信消息处理Hanler:" + className);
+        }
+        try {
+            return Class.forName(className).asSubclass(type);
+        } catch (ClassNotFoundException ex) {
+            throw new IllegalStateException("找不到: " + className + " 类!", ex);
+        } catch (ClassCastException ex) {
+            throw new IllegalStateException(className + " 未实现 " + type.getName(), ex);
+        }
+    }
+
+    /**
+     * 通过ServiceLoader发现第一个非默认的实现，以无参构造方法创建
+     */
+    private static <T> T discover(Class<T> type, String defaultClassName) {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        if (loader == null) {
+            loader = HandlerFactory.class.getClassLoader();
+        }
+        try {
+            Iterator<T> it = ServiceLoader.load(type, loader).iterator();
+            while (it.hasNext()) {
+                T provider = it.next();
+                if (!provider.getClass().getName().equals(defaultClassName)) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("通过ServiceLoader发现微信消息处理Hanler:" + provider.getClass().getName());
+                    }
+                    return provider;
                 }
-                // 加载处理器
-                Class<?> clazz = Class.forName(defaultEventHandler);
-                try {
-                    eventMessageHandler = (IEventMessageHandler) clazz.newInstance();
-                } catch (Exception ex) {
-                    log.debug("初始化 IEventMessageHandler 异常：");
-                    ex.printStackTrace();
+            }
+        } catch (ServiceConfigurationError ex) {
+            log.warn("ServiceLoader加载" + type.getName() + "失败", ex);
+        }
+        return null;
+    }
+
+    private static volatile SessionStore sessionStore = null;
+
+    /**
+     * 获取粉丝会话存储
+     *
+     * <p>
+     * 按weixin4j.properties中的weixin4j.session.*配置创建，粉丝取消关注时自动删除其会话。</p>
+     *
+     * @return 会话存储
+     * @since 0.1.6
+     */
+    public static SessionStore getSessionStore() {
+        SessionStore store = sessionStore;
+        if (store == null) {
+            synchronized (HandlerFactory.class) {
+                store = sessionStore;
+                if (store == null) {
+                    int maxSize = Configuration.getIntProperty("weixin4j.session.maxSize", 10000);
+                    int ttl = Configuration.getIntProperty("weixin4j.session.ttl", 1800000);
+                    String dir = Configuration.getProperty("weixin4j.session.dir", "");
+                    store = new LocalSessionStore(maxSize, ttl,
+                            StringUtils.isBlank(dir) ? null : new FileSessionTier(new File(dir.trim()), ttl));
+                    if (log.isDebugEnabled()) {
+                        log.debug("微信粉丝会话存储:" + maxSize + "个，有效时间" + ttl + "ms" + (StringUtils.isBlank(dir) ? "" : "，文件目录" + dir));
+                    }
+                    sessionStore = store;
                 }
-            } catch (ClassNotFoundException ex) {
-                log.debug("找不到: " + defaultEventHandler + " 类!");
-                ex.printStackTrace();
             }
         }
-        return eventMessageHandler;
+        return store;
+    }
+
+    /**
+     * 设置粉丝会话存储，替换默认的存储
+     *
+     * @param store 会话存储
+     * @since 0.1.6
+     */
+    public static void setSessionStore(SessionStore store) {
+        sessionStore = store;
+    }
+
+    /**
+     * 删除粉丝会话，会话存储尚未创建时不做处理
+     *
+     * @param openid 粉丝openid
+     */
+    static void removeSession(String openid) {
+        SessionStore store = sessionStore;
+        if (store != null && openid != null) {
+            store.remove(openid);
+        }
     }
 }
@@ -0,0 +1,62 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi;
+
+/**
+ * 一个公众号使用的消息处理器
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ * @see HandlerFactory#getHandlers(String)
+ */
+public final class HandlerSet {
+
+    private final IMessageHandler messageHandler;
+    private final INormalMessageHandler normalMessageHandler;
+    private final IEventMessageHandler eventMessageHandler;
+
+    /**
+     * 创建处理器组合
+     *
+     * @param messageHandler 输入消息处理器
+     * @param normalMessageHandler 普通消息处理器
+     * @param eventMessageHandler 事件消息处理器
+     */
+    public HandlerSet(IMessageHandler messageHandler, INormalMessageHandler normalMessageHandler, IEventMessageHandler eventMessageHandler) {
+        if (messageHandler == null) {
+            throw new IllegalArgumentException("messageHandler can not be null");
+        }
+        this.messageHandler = messageHandler;
+        this.normalMessageHandler = normalMessageHandler;
+        this.eventMessageHandler = eventMessageHandler;
+    }
+
+    public IMessageHandler getMessageHandler() {
+        return messageHandler;
+    }
+
+    public INormalMessageHandler getNormalMessageHandler() {
+        return normalMessageHandler;
+    }
+
+    public IEventMessageHandler getEventMessageHandler() {
+        return eventMessageHandler;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi;
+
+import org.weixin4j.model.message.InputMessage;
+import org.weixin4j.model.message.OutputMessage;
+
+/**
+ * 单一类型消息处理器
+ *
+ * <p>
+ * 注册到<tt>MessageDispatcher</tt>中，处理某一种消息类型或事件类型的推送。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ * @see org.weixin4j.spi.MessageDispatcher
+ */
+public interface IInputMessageHandler {
+
+    /**
+     * 处理消息
+     *
+     * @param inputMsg 接受消息对象
+     * @return 输出消息对象，无需回复时返回null
+     */
+    public OutputMessage handle(InputMessage inputMsg);
+}
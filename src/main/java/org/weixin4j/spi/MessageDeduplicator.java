@@ -0,0 +1,212 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.weixin4j.Configuration;
+import org.weixin4j.model.message.InputMessage;
+import org.weixin4j.model.message.MsgType;
+import org.weixin4j.model.message.OutputMessage;
+import org.weixin4j.util.ExpiringCache;
+
+/**
+ * 消息排重器
+ *
+ * <p>
+ * 微信服务器在5秒内未收到回复时会重试3次，同一条消息可能被推送多次。
+ * 普通消息以ToUserName+MsgId、事件消息以FromUserName+CreateTime+Event作为排重键，多个公众号可共用一个排重器。
+ * 在有效时间内重复推送的消息不再交给处理器，直接返回首次处理的回复；
+ * 首次处理尚未完成时返回空回复。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public class MessageDeduplicator {
+
+    /**
+     * 处理中的占位值
+     */
+    private static final Object PENDING = new Object();
+    /**
+     * 处理完成但无需回复的占位值
+     */
+    private static final Object NO_REPLY = new Object();
+    /**
+     * 处理失败的占位值，微信重试时再次处理
+     */
+    private static final Object FAILED = new Object();
+
+    private final ExpiringCache<String, Object> cache;
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /**
+     * 按配置创建排重器
+     *
+     * <p>
+     * weixin4j.message.dedup.size为最大条目数（默认10000），
+     * weixin4j.message.dedup.ttl为有效时间（默认30000ms），覆盖微信的全部重试窗口。</p>
+     */
+    public MessageDeduplicator() {
+        this(Configuration.getIntProperty("weixin4j.message.dedup.size", 10000),
+                Configuration.getIntProperty("weixin4j.message.dedup.ttl", 30000));
+    }
+
+    /**
+     * 创建排重器
+     *
+     * @param capacity 最大条目数
+     * @param ttlMillis 有效时间(ms)
+     */
+    public MessageDeduplicator(int capacity, long ttlMillis) {
+        this.cache = new ExpiringCache<String, Object>(capacity, ttlMillis, 16);
+    }
+
+    /**
+     * 生成排重键
+     *
+     * @param inputMsg 接受消息对象
+     * @return 排重键，无法生成时返回null
+     */
+    protected String keyOf(InputMessage inputMsg) {
+        if (MsgType.Event.toString().equals(inputMsg.getMsgType())) {
+            if (inputMsg.getFromUserName() == null || inputMsg.getCreateTime() == null) {
+                return null;
+            }
+            return inputMsg.getFromUserName() + '#' + inputMsg.getCreateTime() + '#' + inputMsg.getEvent();
+        }
+        Long msgId = inputMsg.getMsgId();
+        if (msgId == null) {
+            return null;
+        }
+        //MsgId只在公众号内唯一
+        return inputMsg.getToUserName() == null ? msgId.toString() : inputMsg.getToUserName() + '#' + msgId;
+    }
+
+    /**
+     * 开始处理消息
+     *
+     * @param inputMsg 接受消息对象
+     * @return 首次推送返回null，重复推送返回<tt>Duplicate</tt>
+     */
+    public Duplicate begin(InputMessage inputMsg) {
+        requestCount.incrementAndGet();
+        String key = keyOf(inputMsg);
+        if (key == null) {
+            return null;
+        }
+        Object existing = cache.putIfAbsent(key, PENDING);
+        if (existing == null || (existing == FAILED && cache.replace(key, FAILED, PENDING))) {
+            return null;
+        }
+        hitCount.incrementAndGet();
+        if (!(existing instanceof OutputMessage)) {
+            return Duplicate.EMPTY;
+        }
+        return new Duplicate((OutputMessage) existing);
+    }
+
+    /**
+     * 记录消息的处理结果
+     *
+     * @param inputMsg 接受消息对象
+     * @param outputMsg 回复消息，无需回复时为null
+     */
+    public void complete(InputMessage inputMsg, OutputMessage outputMsg) {
+        String key = keyOf(inputMsg);
+        if (key != null) {
+            cache.replace(key, PENDING, outputMsg == null ? NO_REPLY : outputMsg);
+        }
+    }
+
+    /**
+     * 处理失败，允许微信重试时再次处理
+     *
+     * @param inputMsg 接受消息对象
+     */
+    public void fail(InputMessage inputMsg) {
+        String key = keyOf(inputMsg);
+        if (key != null) {
+            cache.replace(key, PENDING, FAILED);
+        }
+    }
+
+    /**
+     * 判断消息是否已推送过（处理中、已完成或处理失败）
+     *
+     * @param inputMsg 接受消息对象
+     * @return 有效时间内已推送过返回true
+     */
+    public boolean contains(InputMessage inputMsg) {
+        String key = keyOf(inputMsg);
+        return key != null && cache.get(key) != null;
+    }
+
+    /**
+     * 获取处理的消息总数
+     *
+     * @return 消息总数
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * 获取重复消息数
+     *
+     * @return 重复消息数
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * 获取重复消息比例
+     *
+     * @return 重复消息比例，未处理过消息时为0
+     */
+    public double getHitRate() {
+        long requests = requestCount.get();
+        return requests == 0 ? 0 : (double) hitCount.get() / requests;
+    }
+
+    /**
+     * 重复推送的消息
+     */
+    public static final class Duplicate {
+
+        static final Duplicate EMPTY = new Duplicate(null);
+
+        private final OutputMessage outputMsg;
+
+        Duplicate(OutputMessage outputMsg) {
+            this.outputMsg = outputMsg;
+        }
+
+        /**
+         * 获取首次处理的回复
+         *
+         * @return 回复消息，首次处理尚未完成或无需回复时返回null
+         */
+        public OutputMessage getOutputMessage() {
+            return outputMsg;
+        }
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.weixin4j.model.message.EventType;
+import org.weixin4j.model.message.InputMessage;
+import org.weixin4j.model.message.MsgType;
+import org.weixin4j.model.message.OutputMessage;
+
+/**
+ * 消息分发表
+ *
+ * <p>
+ * 按<tt>MsgType</tt>和<tt>Event</tt>查表分发消息，取代逐个比较的if-else链。
+ * 分发表在注册时整体复制后替换（copy-on-write），分发时无锁读取。
+ * 未注册的消息类型和事件类型交由兜底处理器处理，默认仅记录日志。</p>
+ *
+ * <p>
+ * 新的事件类型可在启动时注册，例如：</p>
+ * <pre>
+ * dispatcher.register(EventType.TemplateSendJobFinish, new IInputMessageHandler() {
+ *     public OutputMessage handle(InputMessage inputMsg) {
+ *         ...
+ *     }
+ * });
+ * </pre>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+@Slf4j
+public class MessageDispatcher {
+
+    /**
+     * 消息类型分发表
+     */
+    private volatile Map<String, IInputMessageHandler> msgHandlers = new HashMap<String, IInputMessageHandler>();
+    /**
+     * 事件类型分发表
+     */
+    private volatile Map<String, IInputMessageHandler> eventHandlers = new HashMap<String, IInputMessageHandler>();
+    /**
+     * 兜底处理器
+     */
+    private volatile IInputMessageHandler fallback = new IInputMessageHandler() {
+        @Override
+        public OutputMessage handle(InputMessage inputMsg) {
+            if (log.isDebugEnabled()) {
+                log.debug("未注册处理器的消息:[" + inputMsg.getMsgType() + "] 事件:[" + inputMsg.getEvent() + "]");
+            }
+            return null;
+        }
+    };
+
+    /**
+     * 创建空分发表
+     */
+    public MessageDispatcher() {
+    }
+
+    /**
+     * 创建分发表，并注册普通消息和事件消息的默认处理
+     *
+     * @param normalMsgHandler 普通消息处理类
+     * @param eventMsgHandler 事件消息处理类
+     */
+    public MessageDispatcher(final INormalMessageHandler normalMsgHandler, final IEventMessageHandler eventMsgHandler) {
+        Map<String, IInputMessageHandler> msgs = new HashMap<String, IInputMessageHandler>();
+        Map<String, IInputMessageHandler> events = new HashMap<String, IInputMessageHandler>();
+        if (normalMsgHandler != null) {
+            msgs.put(MsgType.Text.toString(), new IInputMessageHandler() {
+                @Override
+                public OutputMessage handle(InputMessage inputMsg) {
+                    //处理文本消息
+                    return normalMsgHandler.textTypeMsg(inputMsg.toTextInputMessage());
+                }
+            });
+            msgs.put(MsgType.Image.toString(), new IInputMessageHandler() {
+                @Override
+                public OutputMessage handle(InputMessage inputMsg) {
+                    //处理图片消息
+                    return normalMsgHandler.imageTypeMsg(inputMsg.toImageInputMessage());
+                }
+            });
+            msgs.put(MsgType.Voice.toString(), new IInputMessageHandler() {
+                @Override
+                public OutputMessage handle(InputMessage inputMsg) {
+                    //处理语音消息
+                    return normalMsgHandler.voiceTypeMsg(inputMsg.toVoiceInputMessage());
+                }
+            });
+            msgs.put(MsgType.Video.toString(), new IInputMessageHandler() {
+                @Override
+                public OutputMessage handle(InputMessage inputMsg) {
+                    //处理视频消息
+                    return normalMsgHandler.videoTypeMsg(inputMsg.toVideoInputMessage());
+                }
+            });
+            msgs.put(MsgType.ShortVideo.toString(), new IInputMessageHandler() {
+                @Override
+                public OutputMessage handle(InputMessage inputMsg) {
+                    //处理小视频消息
+                    return normalMsgHandler.shortvideoTypeMsg(inputMsg.toShortVideoInputMessage());
+                }
+            });
+            msgs.put(MsgType.Location.toString(), new IInputMessageHandler() {
+                @Override
+                public OutputMessage handle(InputMessage inputMsg) {
+                    //处理地理位置消息
+                    return normalMsgHandler.locationTypeMsg(inputMsg.toLocationInputMessage());
+                }
+            });
+            msgs.put(MsgType.Link.toString(), new IInputMessageHandler() {
+                @Override
+                public OutputMessage handle(InputMessage inputMsg) {
+                    //处理链接消息
+                    return normalMsgHandler.linkTypeMsg(inputMsg.toLinkInputMessage());
+                }
+            });
+        }
+        if (eventMsgHandler != null) {
+            events.put(EventType.Click.toString(), new IInputMessageHandler() {
+                @Override
+                public OutputMessage handle(InputMessage inputMsg) {
+                    //点击菜单拉取消息时的事件推送
+                    return eventMsgHandler.click(inputMsg.toClickEventMessage());
+                }
+            });
+            events.put(EventType.View.toString(), new IInputMessageHandler() {
+                @Override
+                public OutputMessage handle(InputMessage inputMsg) {
+                    //点击菜单跳转链接时的事件推送
+                    return eventMsgHandler.view(inputMsg.toViewEventMessage());
+                }
+            });
+            events.put(EventType.Subscribe.toString(), new IInputMessageHandler() {
+                @Override
+                public OutputMessage handle(InputMessage inputMsg) {
+                    //获取事件KEY值，判断是否关注
+                    String eventKey = inputMsg.getEventKey();
+                    if (eventKey != null && eventKey.startsWith("qrscene_")) {
+                        //用户未关注时，进行关注后的事件推送
+                        return eventMsgHandler.qrsceneSubscribe(inputMsg.toQrsceneSubscribeEventMessage());
+                    }
+                    //关注事件
+                    return eventMsgHandler.subscribe(inputMsg.toSubscribeEventMessage());
+                }
+            });
+            events.put(EventType.Unsubscribe.toString(), new IInputMessageHandler() {
+                @Override
+                public OutputMessage handle(InputMessage inputMsg) {
+                    //取消关注事件
+                    return eventMsgHandler.unSubscribe(inputMsg.toUnSubscribeEventMessage());
+                }
+            });
+            events.put(EventType.Scan.toString(), new IInputMessageHandler() {
+                @Override
+                public OutputMessage handle(InputMessage inputMsg) {
+                    //扫描带参数二维码事件
+                    return eventMsgHandler.qrsceneScan(inputMsg.toQrsceneScanEventMessage());
+                }
+            });
+            events.put(EventType.Location.toString(), new IInputMessageHandler() {
+                @Override
+                public OutputMessage handle(InputMessage inputMsg) {
+                    //上报地理位置事件
+                    return eventMsgHandler.location(inputMsg.toLocationEventMessage());
+                }
+            });
+            events.put(EventType.Scancode_Push.toString(), new IInputMessageHandler() {
+                @Override
+                public OutputMessage handle(InputMessage inputMsg) {
+                    //扫码推事件的事件推送
+                    return eventMsgHandler.scanCodePush(inputMsg.toScanCodePushEventMessage());
+                }
+            });
+            events.put(EventType.Scancode_Waitmsg.toString(), new IInputMessageHandler() {
+                @Override
+                public OutputMessage handle(InputMessage inputMsg) {
+                    //扫码推事件且弹出“消息接收中”提示框的事件推送
+                    return eventMsgHandler.scanCodeWaitMsg(inputMsg.toScanCodeWaitMsgEventMessage());
+                }
+            });
+            events.put(EventType.Pic_Sysphoto.toString(), new IInputMessageHandler() {
+                @Override
+                public OutputMessage handle(InputMessage inputMsg) {
+                    //弹出系统拍照发图的事件推送
+                    return eventMsgHandler.picSysPhoto(inputMsg.toPicSysPhotoEventMessage());
+                }
+            });
+            events.put(EventType.Pic_Photo_OR_Album.toString(), new IInputMessageHandler() {
+                @Override
+                public OutputMessage handle(InputMessage inputMsg) {
+                    //弹出拍照或者相册发图的事件推送
+                    return eventMsgHandler.picPhotoOrAlbum(inputMsg.toPicPhotoOrAlbumEventMessage());
+                }
+            });
+            events.put(EventType.Pic_Weixin.toString(), new IInputMessageHandler() {
+                @Override
+                public OutputMessage handle(InputMessage inputMsg) {
+                    //弹出微信相册发图器的事件推送
+                    return eventMsgHandler.picWeixin(inputMsg.toPicWeixinEventMessage());
+                }
+            });
+            events.put(EventType.Location_Select.toString(), new IInputMessageHandler() {
+                @Override
+                public OutputMessage handle(InputMessage inputMsg) {
+                    //弹出地理位置选择器的事件推送
+                    return eventMsgHandler.locationSelect(inputMsg.toLocationSelectEventMessage());
+                }
+            });
+        }
+        this.msgHandlers = msgs;
+        this.eventHandlers = events;
+    }
+
+    /**
+     * 注册消息类型处理器，替换已有的处理器
+     *
+     * @param msgType 消息类型
+     * @param handler 处理器，为null时移除
+     */
+    public void register(MsgType msgType, IInputMessageHandler handler) {
+        registerMsgType(msgType.toString(), handler);
+    }
+
+    /**
+     * 注册消息类型处理器，用于<tt>MsgType</tt>中未定义的消息类型
+     *
+     * @param msgType 消息类型，与推送XML中的MsgType一致
+     * @param handler 处理器，为null时移除
+     */
+    public synchronized void registerMsgType(String msgType, IInputMessageHandler handler) {
+        msgHandlers = copyAndPut(msgHandlers, msgType, handler);
+    }
+
+    /**
+     * 注册事件类型处理器，替换已有的处理器
+     *
+     * @param eventType 事件类型
+     * @param handler 处理器，为null时移除
+     */
+    public void register(EventType eventType, IInputMessageHandler handler) {
+        registerEvent(eventType.toString(), handler);
+    }
+
+    /**
+     * 注册事件类型处理器，用于<tt>EventType</tt>中未定义的事件类型
+     *
+     * @param event 事件类型，不区分大小写
+     * @param handler 处理器，为null时移除
+     */
+    public synchronized void registerEvent(String event, IInputMessageHandler handler) {
+        eventHandlers = copyAndPut(eventHandlers, event.toLowerCase(Locale.ENGLISH), handler);
+    }
+
+    /**
+     * 获取已注册的消息类型处理器
+     *
+     * @param msgType 消息类型
+     * @return 处理器，未注册时返回null
+     */
+    public IInputMessageHandler getMsgTypeHandler(String msgType) {
+        return msgHandlers.get(msgType);
+    }
+
+    /**
+     * 获取已注册的事件类型处理器
+     *
+     * @param event 事件类型，不区分大小写
+     * @return 处理器，未注册时返回null
+     */
+    public IInputMessageHandler getEventHandler(String event) {
+        return eventHandlers.get(event.toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * 获取兜底处理器
+     *
+     * @return 兜底处理器
+     */
+    public IInputMessageHandler getFallback() {
+        return fallback;
+    }
+
+    /**
+     * 设置兜底处理器，处理未注册的消息类型和事件类型
+     *
+     * @param fallback 兜底处理器
+     */
+    public void setFallback(IInputMessageHandler fallback) {
+        if (fallback == null) {
+            throw new IllegalArgumentException("fallback can not be null");
+        }
+        this.fallback = fallback;
+    }
+
+    /**
+     * 查找消息对应的处理器
+     *
+     * @param inputMsg 接受消息对象
+     * @return 处理器，未注册时返回兜底处理器
+     */
+    public IInputMessageHandler lookup(InputMessage inputMsg) {
+        String msgType = inputMsg.getMsgType();
+        IInputMessageHandler handler;
+        if (MsgType.Event.toString().equals(msgType)) {
+            String event = inputMsg.getEvent();
+            handler = event == null ? null : eventHandlers.get(event);
+        } else {
+            handler = msgType == null ? null : msgHandlers.get(msgType);
+        }
+        return handler == null ? fallback : handler;
+    }
+
+    /**
+     * 分发消息
+     *
+     * @param inputMsg 接受消息对象
+     * @return 输出消息对象
+     */
+    public OutputMessage dispatch(InputMessage inputMsg) {
+        return lookup(inputMsg).handle(inputMsg);
+    }
+
+    private static Map<String, IInputMessageHandler> copyAndPut(Map<String, IInputMessageHandler> source,
+            String key, IInputMessageHandler handler) {
+        Map<String, IInputMessageHandler> copy = new HashMap<String, IInputMessageHandler>(source);
+        if (handler == null) {
+            copy.remove(key);
+        } else {
+            copy.put(key, handler);
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.weixin4j.model.message.OutputMessage;
+import org.weixin4j.model.message.output.TemplateOutputMessage;
+
+/**
+ * 回复模板缓存
+ *
+ * <p>
+ * 按路由（例如 click:MENU_ABOUT）缓存预渲染的回复，命中时不再构造回复对象、不再序列化，
+ * 只写出收发件人和时间。回复内容变化时按路由失效即可。</p>
+ * <pre>
+ * OutputMessage reply = cache.reply("click:MENU_ABOUT", new ReplyTemplateCache.Loader() {
+ *     public OutputMessage load() {
+ *         return new NewsOutputMessage(...);
+ *     }
+ * });
+ * </pre>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public class ReplyTemplateCache {
+
+    /**
+     * 回复加载器，缓存未命中时调用
+     */
+    public interface Loader {
+
+        /**
+         * 构造回复消息
+         *
+         * @return 回复消息，返回null时不缓存
+         */
+        OutputMessage load();
+    }
+
+    private final ConcurrentMap<String, TemplateOutputMessage.Template> templates = new ConcurrentHashMap<String, TemplateOutputMessage.Template>();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * 获取路由对应的回复
+     *
+     * @param route 路由
+     * @param loader 回复加载器
+     * @return 回复消息
+     */
+    public OutputMessage reply(String route, Loader loader) {
+        TemplateOutputMessage.Template template = templates.get(route);
+        if (template != null) {
+            hitCount.incrementAndGet();
+            return template.newMessage();
+        }
+        missCount.incrementAndGet();
+        OutputMessage source = loader.load();
+        if (source == null) {
+            return null;
+        }
+        template = TemplateOutputMessage.compile(source);
+        if (template == null) {
+            //自定义回复的xml结构无法预渲染，直接使用原对象
+            return source;
+        }
+        TemplateOutputMessage.Template existing = templates.putIfAbsent(route, template);
+        return (existing != null ? existing : template).newMessage();
+    }
+
+    /**
+     * 使路由对应的回复失效
+     *
+     * @param route 路由
+     */
+    public void invalidate(String route) {
+        templates.remove(route);
+    }
+
+    /**
+     * 使所有回复失效
+     */
+    public void invalidateAll() {
+        templates.clear();
+    }
+
+    /**
+     * 获取缓存的路由数
+     *
+     * @return 路由数
+     */
+    public int size() {
+        return templates.size();
+    }
+
+    /**
+     * 获取命中次数
+     *
+     * @return 命中次数
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * 获取未命中次数
+     *
+     * @return 未命中次数
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi.journal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+import lombok.extern.slf4j.Slf4j;
+import org.weixin4j.WeixinException;
+import org.weixin4j.spi.IMessageHandler;
+
+/**
+ * 消息日志读取器
+ *
+ * <p>
+ * 按序号顺序读取日志目录下的全部段，遇到不完整或校验失败的记录时结束当前段。
+ * 可读取正在写入的日志，只能读到读取时已完整写入的记录。</p>
+ * <pre>
+ * JournalReader reader = new JournalReader(new File("/data/weixin4j/journal"));
+ * try {
+ *     reader.replay(fromSequence, messageHandler);
+ * } finally {
+ *     reader.close();
+ * }
+ * </pre>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+@Slf4j
+public class JournalReader implements Closeable {
+
+    private final File[] segments;
+    private final CRC32 crc = new CRC32();
+    private int segmentIndex = -1;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+
+    /**
+     * 创建读取器
+     *
+     * @param dir 日志目录
+     */
+    public JournalReader(File dir) {
+        this.segments = MappedJournal.listSegments(dir);
+    }
+
+    /**
+     * 定位到指定序号，之后<tt>next()</tt>返回序号不小于该值的记录
+     *
+     * @param sequence 序号
+     * @throws IOException 读取异常
+     */
+    public void seek(long sequence) throws IOException {
+        closeSegment();
+        //从起始序号不大于sequence的最后一个段开始
+        int index = 0;
+        for (int i = 0; i < segments.length; i++) {
+            if (MappedJournal.baseSequenceOf(segments[i]) <= sequence) {
+                index = i;
+            }
+        }
+        segmentIndex = index - 1;
+        while (openNextSegment()) {
+            while (buffer.position() + MappedJournal.RECORD_HEADER_SIZE <= buffer.limit()) {
+                int position = buffer.position();
+                int length = buffer.getInt(position);
+                if (length <= 0 || buffer.getLong(position + 8) >= sequence) {
+                    return;
+                }
+                buffer.position(position + MappedJournal.RECORD_HEADER_SIZE + Math.min(length, buffer.limit() - position - MappedJournal.RECORD_HEADER_SIZE));
+            }
+        }
+    }
+
+    /**
+     * 读取下一条记录
+     *
+     * @return 记录，已读完时返回null
+     * @throws IOException 读取异常
+     */
+    public JournalRecord next() throws IOException {
+        for (;;) {
+            if (buffer == null && !openNextSegment()) {
+                return null;
+            }
+            JournalRecord record = readRecord();
+            if (record != null) {
+                return record;
+            }
+            closeSegment();
+            if (segmentIndex + 1 >= segments.length) {
+                return null;
+            }
+        }
+    }
+
+    private JournalRecord readRecord() {
+        int position = buffer.position();
+        if (position + MappedJournal.RECORD_HEADER_SIZE > buffer.limit()) {
+            return null;
+        }
+        int length = buffer.getInt(position);
+        if (length <= 0 || position + MappedJournal.RECORD_HEADER_SIZE + length > buffer.limit()) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        buffer.position(position + MappedJournal.RECORD_HEADER_SIZE);
+        buffer.get(payload);
+        crc.reset();
+        crc.update(payload, 0, length);
+        if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+            buffer.position(position);
+            return null;
+        }
+        return new JournalRecord(buffer.getLong(position + 8), buffer.getLong(position + 16), payload);
+    }
+
+    private boolean openNextSegment() throws IOException {
+        closeSegment();
+        while (++segmentIndex < segments.length) {
+            File file = segments[segmentIndex];
+            if (!file.isFile()) {
+                //已按保留策略删除
+                continue;
+            }
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            FileChannel ch = raf.getChannel();
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (buf.limit() < MappedJournal.SEGMENT_HEADER_SIZE || buf.getInt(0) != MappedJournal.MAGIC) {
+                log.warn("weixin4j:跳过无效的消息日志段" + file.getName());
+                ch.close();
+                continue;
+            }
+            buf.position(MappedJournal.SEGMENT_HEADER_SIZE);
+            channel = ch;
+            buffer = buf;
+            return true;
+        }
+        return false;
+    }
+
+    private void closeSegment() throws IOException {
+        buffer = null;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * 将日志中的消息重新交给消息处理器处理
+     *
+     * <p>
+     * 处理器如为开启了消息日志的<tt>DefaultMessageHandler</tt>，重放的消息会再次写入日志，
+     * 重放前应先关闭其日志；开启排重时，有效期内已处理的消息不会再次处理。单条消息处理失败不影响后续消息。</p>
+     *
+     * @param fromSequence 起始序号
+     * @param handler 消息处理器
+     * @return 重放的消息数
+     * @throws IOException 读取异常
+     */
+    public int replay(long fromSequence, IMessageHandler handler) throws IOException {
+        seek(fromSequence);
+        int count = 0;
+        for (JournalRecord record; (record = next()) != null;) {
+            try {
+                handler.invoke(record.getPayloadAsString());
+            } catch (WeixinException ex) {
+                log.warn("weixin4j:重放消息" + record.getSequence() + "失败", ex);
+            } catch (RuntimeException ex) {
+                log.warn("weixin4j:重放消息" + record.getSequence() + "失败", ex);
+            }
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeSegment();
+        segmentIndex = segments.length;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi.journal;
+
+import java.nio.charset.Charset;
+
+/**
+ * 消息日志记录
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public final class JournalRecord {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final long sequence;
+    private final long timestamp;
+    private final byte[] payload;
+
+    JournalRecord(long sequence, long timestamp, byte[] payload) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.payload = payload;
+    }
+
+    /**
+     * 获取消息序号
+     *
+     * @return 消息序号
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * 获取接收时间
+     *
+     * @return 接收时间(ms)
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * 获取消息原文
+     *
+     * @return 消息原文
+     */
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    /**
+     * 获取消息原文
+     *
+     * @return 消息XML
+     */
+    public String getPayloadAsString() {
+        return new String(payload, UTF_8);
+    }
+}
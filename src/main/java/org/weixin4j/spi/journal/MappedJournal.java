@@ -0,0 +1,491 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi.journal;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+import lombok.extern.slf4j.Slf4j;
+import org.weixin4j.Configuration;
+
+/**
+ * 基于内存映射文件的分段消息日志
+ *
+ * <p>
+ * 日志由若干固定大小的段文件组成，文件名为段内第一条消息的序号。追加时只是一次内存复制，
+ * 由后台线程每隔<tt>flushInterval</tt>毫秒将新写入的内容一次性刷盘（组提交）；
+ * 开启<tt>sync</tt>时追加方等待其消息刷盘后返回，同一批等待的消息共享一次刷盘。</p>
+ *
+ * <p>
+ * 段写满后切换到新段，并按保留时间和最大段数删除最旧的段。重启后从最后一个段的末尾继续追加，
+ * 校验失败的残缺记录会被清除。</p>
+ *
+ * <p>
+ * 段文件格式：64字节段头（magic、版本、起始序号、段大小），之后依次为记录，
+ * 记录头24字节（长度、CRC32、序号、接收时间），长度最后写入，作为记录完整的标记。</p>
+ *
+ * <p>
+ * 同一目录只允许一个日志写入：打开时对目录下的<tt>journal.lock</tt>加排他文件锁，
+ * 已被其他进程锁定时抛出<tt>IOException</tt>。同一进程内请通过<tt>open</tt>共享同一目录的日志。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ * @see org.weixin4j.spi.journal.JournalReader
+ */
+@Slf4j
+public class MappedJournal implements MessageJournal {
+
+    static final int MAGIC = 0x574A4E4C;
+    static final int VERSION = 1;
+    static final int SEGMENT_HEADER_SIZE = 64;
+    static final int RECORD_HEADER_SIZE = 24;
+    static final String SUFFIX = ".journal";
+    static final String LOCK_FILE = "journal.lock";
+    /**
+     * 最小段大小
+     */
+    private static final int MIN_SEGMENT_SIZE = 1024 * 1024;
+    /**
+     * 进程内已打开的日志，按目录规范路径索引
+     */
+    private static final Map<String, MappedJournal> OPENED = new HashMap<String, MappedJournal>();
+
+    private final File dir;
+    private final String key;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final int segmentSize;
+    private final long retentionMillis;
+    private final int maxSegments;
+    private final long flushIntervalNanos;
+    private final boolean sync;
+
+    private final Object writeLock = new Object();
+    private final Object flushMonitor = new Object();
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private File segment;
+    private long nextSequence;
+    private volatile long writtenSequence;
+    private volatile long flushedSequence;
+    private volatile boolean closed;
+    private final Thread flusher;
+
+    private final AtomicLong appendCount = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong rotateCount = new AtomicLong();
+
+    /**
+     * 获取目录对应的消息日志，同一进程内同一目录共享一个实例
+     *
+     * <p>
+     * 目录尚未打开时按weixin4j.properties中的weixin4j.journal.*配置创建，关闭后再次获取会重新打开。</p>
+     *
+     * @param dir 日志目录
+     * @return 消息日志
+     * @throws IOException 打开日志异常，或目录已被其他进程锁定
+     */
+    public static MappedJournal open(File dir) throws IOException {
+        String path = dir.getCanonicalPath();
+        synchronized (OPENED) {
+            MappedJournal journal = OPENED.get(path);
+            if (journal == null) {
+                journal = new MappedJournal(dir);
+                OPENED.put(path, journal);
+            }
+            return journal;
+        }
+    }
+
+    /**
+     * 按weixin4j.properties中的weixin4j.journal.*配置创建消息日志
+     *
+     * @param dir 日志目录
+     * @throws IOException 打开日志异常，或目录已被锁定
+     */
+    public MappedJournal(File dir) throws IOException {
+        this(dir, Configuration.getIntProperty("weixin4j.journal.segmentSize", 64 * 1024 * 1024),
+                Configuration.getIntProperty("weixin4j.journal.retention", 7 * 24 * 3600) * 1000L,
+                Configuration.getIntProperty("weixin4j.journal.maxSegments", 100),
+                Configuration.getIntProperty("weixin4j.journal.flushInterval", 10),
+                Boolean.parseBoolean(Configuration.getProperty("weixin4j.journal.sync", "false")));
+    }
+
+    /**
+     * 创建消息日志
+     *
+     * @param dir 日志目录，不存在时创建
+     * @param segmentSize 段大小(字节)，最小1MB
+     * @param retentionMillis 段保留时间(ms)，0表示不按时间删除
+     * @param maxSegments 最多保留的段数，0表示不限制
+     * @param flushIntervalMillis 刷盘间隔(ms)
+     * @param sync 追加时是否等待刷盘
+     * @throws IOException 打开日志异常，或目录已被锁定
+     */
+    public MappedJournal(File dir, int segmentSize, long retentionMillis, int maxSegments,
+            long flushIntervalMillis, boolean sync) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("can not create journal directory " + dir);
+        }
+        this.dir = dir;
+        this.key = dir.getCanonicalPath();
+        this.segmentSize = Math.max(MIN_SEGMENT_SIZE, segmentSize);
+        this.retentionMillis = retentionMillis;
+        this.maxSegments = maxSegments;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushIntervalMillis));
+        this.sync = sync;
+        this.lockChannel = new RandomAccessFile(new File(dir, LOCK_FILE), "rw").getChannel();
+        FileLock acquired;
+        try {
+            acquired = lockChannel.tryLock();
+        } catch (OverlappingFileLockException ex) {
+            //本进程内已有日志打开该目录
+            acquired = null;
+        }
+        if (acquired == null) {
+            lockChannel.close();
+            throw new IOException("journal directory " + dir + " is locked by another writer");
+        }
+        this.lock = acquired;
+        try {
+            File[] segments = listSegments(dir);
+            if (segments.length == 0) {
+                openSegment(0);
+            } else {
+                recover(segments[segments.length - 1]);
+            }
+        } catch (IOException ex) {
+            lockChannel.close();
+            throw ex;
+        }
+        this.writtenSequence = nextSequence - 1;
+        this.flushedSequence = writtenSequence;
+        retain();
+        this.flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flushLoop();
+            }
+        }, "weixin4j-journal-flush");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * 列出目录下的段文件，按起始序号升序
+     *
+     * @param dir 日志目录
+     * @return 段文件
+     */
+    static File[] listSegments(File dir) {
+        File[] files = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(SUFFIX);
+            }
+        });
+        if (files == null) {
+            return new File[0];
+        }
+        //文件名为定长的起始序号，按名称排序即按序号排序
+        Arrays.sort(files);
+        return files;
+    }
+
+    static long baseSequenceOf(File segment) {
+        String name = segment.getName();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    private void openSegment(long baseSequence) throws IOException {
+        File file = new File(dir, String.format("%020d", baseSequence) + SUFFIX);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        FileChannel ch = raf.getChannel();
+        MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        buf.putLong(8, baseSequence);
+        buf.putInt(16, segmentSize);
+        buf.putInt(4, VERSION);
+        buf.putInt(0, MAGIC);
+        buf.position(SEGMENT_HEADER_SIZE);
+        this.channel = ch;
+        this.buffer = buf;
+        this.segment = file;
+        this.nextSequence = baseSequence;
+    }
+
+    private void recover(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        FileChannel ch = raf.getChannel();
+        int size = (int) Math.max(segmentSize, ch.size());
+        MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        if (buf.getInt(0) != MAGIC) {
+            ch.close();
+            throw new IOException(file + " is not a weixin4j journal segment");
+        }
+        long sequence = buf.getLong(8);
+        int position = SEGMENT_HEADER_SIZE;
+        CRC32 check = new CRC32();
+        byte[] payload = new byte[0];
+        while (position + RECORD_HEADER_SIZE <= size) {
+            int length = buf.getInt(position);
+            if (length <= 0 || position + RECORD_HEADER_SIZE + length > size) {
+                break;
+            }
+            if (payload.length < length) {
+                payload = new byte[length];
+            }
+            buf.position(position + RECORD_HEADER_SIZE);
+            buf.get(payload, 0, length);
+            check.reset();
+            check.update(payload, 0, length);
+            if ((int) check.getValue() != buf.getInt(position + 4)) {
+                break;
+            }
+            sequence = buf.getLong(position + 8) + 1;
+            position += RECORD_HEADER_SIZE + length;
+        }
+        if (position + 4 <= size && buf.getInt(position) != 0) {
+            //清除上次异常退出时写了一半的记录
+            log.warn("weixin4j:消息日志" + file.getName() + "在" + position + "处有残缺记录，已清除");
+            for (int i = position; i < size; i++) {
+                buf.put(i, (byte) 0);
+            }
+        }
+        buf.position(position);
+        this.channel = ch;
+        this.buffer = buf;
+        this.segment = file;
+        this.nextSequence = sequence;
+    }
+
+    @Override
+    public long append(byte[] payload, int offset, int length) {
+        if (length <= 0 || RECORD_HEADER_SIZE + length > segmentSize - SEGMENT_HEADER_SIZE) {
+            throw new IllegalArgumentException("invalid payload length " + length);
+        }
+        long sequence;
+        synchronized (writeLock) {
+            if (closed) {
+                throw new IllegalStateException("journal has been closed");
+            }
+            if (buffer.position() + RECORD_HEADER_SIZE + length > buffer.capacity()) {
+                rotate();
+            }
+            sequence = nextSequence++;
+            int position = buffer.position();
+            crc.reset();
+            crc.update(payload, offset, length);
+            buffer.putInt(position + 4, (int) crc.getValue());
+            buffer.putLong(position + 8, sequence);
+            buffer.putLong(position + 16, System.currentTimeMillis());
+            buffer.position(position + RECORD_HEADER_SIZE);
+            buffer.put(payload, offset, length);
+            //长度最后写入，读取方以此判断记录完整
+            buffer.putInt(position, length);
+            writtenSequence = sequence;
+        }
+        appendCount.incrementAndGet();
+        if (sync) {
+            awaitFlushed(sequence);
+        }
+        return sequence;
+    }
+
+    private void rotate() {
+        try {
+            buffer.force();
+            channel.close();
+            rotateCount.incrementAndGet();
+            openSegment(nextSequence);
+        } catch (IOException ex) {
+            throw new IllegalStateException("journal rotation failed", ex);
+        }
+        retain();
+    }
+
+    /**
+     * 按保留时间和最大段数删除最旧的段，当前段不删除
+     */
+    private void retain() {
+        File[] segments = listSegments(dir);
+        long expireBefore = retentionMillis > 0 ? System.currentTimeMillis() - retentionMillis : Long.MIN_VALUE;
+        int remaining = segments.length;
+        for (File file : segments) {
+            if (file.equals(segment)) {
+                break;
+            }
+            boolean tooMany = maxSegments > 0 && remaining > maxSegments;
+            if (!tooMany && file.lastModified() >= expireBefore) {
+                break;
+            }
+            if (file.delete()) {
+                remaining--;
+                if (log.isDebugEnabled()) {
+                    log.debug("weixin4j:删除过期的消息日志段" + file.getName());
+                }
+            }
+        }
+    }
+
+    private void awaitFlushed(long sequence) {
+        synchronized (flushMonitor) {
+            while (flushedSequence < sequence && !closed) {
+                LockSupport.unpark(flusher);
+                try {
+                    flushMonitor.wait(1);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void flushLoop() {
+        while (!closed) {
+            LockSupport.parkNanos(this, flushIntervalNanos);
+            flush();
+        }
+    }
+
+    /**
+     * 将已追加的消息刷盘
+     */
+    public void flush() {
+        MappedByteBuffer target;
+        long sequence;
+        synchronized (writeLock) {
+            target = buffer;
+            sequence = writtenSequence;
+        }
+        if (sequence <= flushedSequence) {
+            return;
+        }
+        //更早段中的消息已在切换段时刷盘
+        target.force();
+        flushCount.incrementAndGet();
+        synchronized (flushMonitor) {
+            if (sequence > flushedSequence) {
+                flushedSequence = sequence;
+            }
+            flushMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * 获取下一条消息的序号
+     *
+     * @return 序号
+     */
+    public long getNextSequence() {
+        synchronized (writeLock) {
+            return nextSequence;
+        }
+    }
+
+    /**
+     * 获取已刷盘的最大序号
+     *
+     * @return 序号，没有消息时为-1
+     */
+    public long getFlushedSequence() {
+        return flushedSequence;
+    }
+
+    /**
+     * 获取追加次数
+     *
+     * @return 追加次数
+     */
+    public long getAppendCount() {
+        return appendCount.get();
+    }
+
+    /**
+     * 获取刷盘次数
+     *
+     * @return 刷盘次数
+     */
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    /**
+     * 获取切换段次数
+     *
+     * @return 切换段次数
+     */
+    public long getRotateCount() {
+        return rotateCount.get();
+    }
+
+    /**
+     * 获取日志目录
+     *
+     * @return 日志目录
+     */
+    public File getDirectory() {
+        return dir;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join(1000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (writeLock) {
+            buffer.force();
+            flushedSequence = writtenSequence;
+            channel.close();
+        }
+        synchronized (flushMonitor) {
+            flushMonitor.notifyAll();
+        }
+        synchronized (OPENED) {
+            if (OPENED.get(key) == this) {
+                OPENED.remove(key);
+            }
+        }
+        lock.release();
+        lockChannel.close();
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi.journal;
+
+import java.io.Closeable;
+
+/**
+ * 消息日志
+ *
+ * <p>
+ * 记录微信推送的每一条消息原文，用于审计和重放。写入在消息处理前进行，须足够快，不应阻塞被动回复。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ * @see org.weixin4j.spi.journal.MappedJournal
+ */
+public interface MessageJournal extends Closeable {
+
+    /**
+     * 追加一条消息
+     *
+     * @param payload 消息原文（UTF-8编码的XML）
+     * @param offset 起始位置
+     * @param length 长度，须大于0
+     * @return 消息序号
+     */
+    long append(byte[] payload, int offset, int length);
+}
@@ -0,0 +1,41 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi.keyword;
+
+import org.weixin4j.model.message.OutputMessage;
+import org.weixin4j.model.message.normal.TextInputMessage;
+
+/**
+ * 关键字回复处理器
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public interface KeywordHandler {
+
+    /**
+     * 生成关键字回复
+     *
+     * @param inputMsg 文本消息
+     * @param rule 命中的规则
+     * @return 回复消息，返回null时不回复
+     */
+    OutputMessage reply(TextInputMessage inputMsg, KeywordRule rule);
+}
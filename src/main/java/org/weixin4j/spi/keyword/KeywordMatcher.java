@@ -0,0 +1,296 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi.keyword;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 关键字匹配自动机（Aho-Corasick）
+ *
+ * <p>
+ * 将完全匹配、前缀匹配、包含匹配的规则一并编译为一个自动机，匹配时文本只扫描一遍，
+ * 耗时与文本长度成正比，与规则数量无关。转移表以有序字符数组保存，按状态二分查找。</p>
+ *
+ * <p>
+ * 编译后不可修改，线程安全；规则变化时重新编译并替换整个实例。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public final class KeywordMatcher {
+
+    private final KeywordRule[] rules;
+    /**
+     * 规则的关键字长度
+     */
+    private final int[] lengths;
+    /**
+     * 规则的排名，越小越优先
+     */
+    private final int[] ranks;
+    private final boolean ignoreCase;
+    /**
+     * 状态s的转移边为edgeChars/edgeTargets中[edgeStart[s], edgeStart[s + 1])的部分
+     */
+    private final int[] edgeStart;
+    private final char[] edgeChars;
+    private final int[] edgeTargets;
+    private final int[] fail;
+    /**
+     * 在状态处结束的规则，没有时为null
+     */
+    private final int[][] outputs;
+    /**
+     * 失败链上下一个有输出的状态，没有时为-1
+     */
+    private final int[] outputLink;
+
+    private KeywordMatcher(List<KeywordRule> ruleList, boolean ignoreCase) {
+        int ruleCount = ruleList.size();
+        this.rules = ruleList.toArray(new KeywordRule[ruleCount]);
+        this.ignoreCase = ignoreCase;
+        this.lengths = new int[ruleCount];
+        this.ranks = rank(rules);
+        //构建字典树
+        List<TreeMap<Character, Integer>> children = new ArrayList<TreeMap<Character, Integer>>();
+        List<List<Integer>> ends = new ArrayList<List<Integer>>();
+        children.add(new TreeMap<Character, Integer>());
+        ends.add(null);
+        for (int r = 0; r < ruleCount; r++) {
+            String keyword = rules[r].getKeyword();
+            lengths[r] = keyword.length();
+            int state = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                char c = fold(keyword.charAt(i));
+                Integer next = children.get(state).get(c);
+                if (next == null) {
+                    next = children.size();
+                    children.add(new TreeMap<Character, Integer>());
+                    ends.add(null);
+                    children.get(state).put(c, next);
+                }
+                state = next;
+            }
+            List<Integer> end = ends.get(state);
+            if (end == null) {
+                end = new ArrayList<Integer>(1);
+                ends.set(state, end);
+            }
+            end.add(r);
+        }
+        //转换为数组
+        int stateCount = children.size();
+        this.edgeStart = new int[stateCount + 1];
+        int edgeCount = 0;
+        for (int s = 0; s < stateCount; s++) {
+            edgeStart[s] = edgeCount;
+            edgeCount += children.get(s).size();
+        }
+        edgeStart[stateCount] = edgeCount;
+        this.edgeChars = new char[edgeCount];
+        this.edgeTargets = new int[edgeCount];
+        this.outputs = new int[stateCount][];
+        for (int s = 0; s < stateCount; s++) {
+            int e = edgeStart[s];
+            for (Map.Entry<Character, Integer> entry : children.get(s).entrySet()) {
+                edgeChars[e] = entry.getKey();
+                edgeTargets[e] = entry.getValue();
+                e++;
+            }
+            List<Integer> end = ends.get(s);
+            if (end != null) {
+                int[] out = new int[end.size()];
+                for (int i = 0; i < out.length; i++) {
+                    out[i] = end.get(i);
+                }
+                outputs[s] = out;
+            }
+        }
+        //按层次计算失败指针
+        this.fail = new int[stateCount];
+        this.outputLink = new int[stateCount];
+        Arrays.fill(outputLink, -1);
+        int[] queue = new int[stateCount];
+        int head = 0;
+        int tail = 0;
+        for (int e = edgeStart[0]; e < edgeStart[1]; e++) {
+            queue[tail++] = edgeTargets[e];
+        }
+        while (head < tail) {
+            int s = queue[head++];
+            for (int e = edgeStart[s]; e < edgeStart[s + 1]; e++) {
+                int t = edgeTargets[e];
+                char c = edgeChars[e];
+                int f = fail[s];
+                int next;
+                while ((next = child(f, c)) < 0 && f != 0) {
+                    f = fail[f];
+                }
+                fail[t] = next < 0 ? 0 : next;
+                outputLink[t] = outputs[fail[t]] != null ? fail[t] : outputLink[fail[t]];
+                queue[tail++] = t;
+            }
+        }
+    }
+
+    /**
+     * 编译规则，区分大小写
+     *
+     * @param rules 规则
+     * @return 匹配自动机
+     */
+    public static KeywordMatcher compile(Collection<KeywordRule> rules) {
+        return compile(rules, false);
+    }
+
+    /**
+     * 编译规则
+     *
+     * @param rules 规则
+     * @param ignoreCase 是否忽略大小写
+     * @return 匹配自动机
+     */
+    public static KeywordMatcher compile(Collection<KeywordRule> rules, boolean ignoreCase) {
+        return new KeywordMatcher(new ArrayList<KeywordRule>(rules), ignoreCase);
+    }
+
+    private static int[] rank(final KeywordRule[] rules) {
+        Integer[] order = new Integer[rules.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        //优先级降序、关键字长度降序、加入顺序升序
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                KeywordRule ra = rules[a];
+                KeywordRule rb = rules[b];
+                if (ra.getPriority() != rb.getPriority()) {
+                    return ra.getPriority() > rb.getPriority() ? -1 : 1;
+                }
+                if (ra.getKeyword().length() != rb.getKeyword().length()) {
+                    return rb.getKeyword().length() - ra.getKeyword().length();
+                }
+                return a - b;
+            }
+        });
+        int[] ranks = new int[rules.length];
+        for (int i = 0; i < order.length; i++) {
+            ranks[order[i]] = i;
+        }
+        return ranks;
+    }
+
+    private char fold(char c) {
+        return ignoreCase ? Character.toLowerCase(Character.toUpperCase(c)) : c;
+    }
+
+    private int child(int state, char c) {
+        int low = edgeStart[state];
+        int high = edgeStart[state + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char m = edgeChars[mid];
+            if (m < c) {
+                low = mid + 1;
+            } else if (m > c) {
+                high = mid - 1;
+            } else {
+                return edgeTargets[mid];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 查找文本命中的最优规则
+     *
+     * @param text 文本
+     * @return 命中的规则，未命中时返回null
+     */
+    public KeywordRule match(String text) {
+        if (text == null || rules.length == 0) {
+            return null;
+        }
+        int n = text.length();
+        int best = -1;
+        int state = 0;
+        for (int i = 0; i < n; i++) {
+            char c = fold(text.charAt(i));
+            int next;
+            while ((next = child(state, c)) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = next < 0 ? 0 : next;
+            for (int s = outputs[state] != null ? state : outputLink[state]; s >= 0; s = outputLink[s]) {
+                for (int r : outputs[s]) {
+                    if (best >= 0 && ranks[r] >= ranks[best]) {
+                        continue;
+                    }
+                    int start = i + 1 - lengths[r];
+                    KeywordRule.Type type = rules[r].getType();
+                    if (type == KeywordRule.Type.CONTAINS
+                            || (start == 0 && (type == KeywordRule.Type.PREFIX || i + 1 == n))) {
+                        best = r;
+                    }
+                }
+            }
+            if (best >= 0 && ranks[best] == 0) {
+                //已命中最优规则
+                break;
+            }
+        }
+        return best < 0 ? null : rules[best];
+    }
+
+    /**
+     * 获取规则列表
+     *
+     * @return 规则列表，按编译时的顺序
+     */
+    public List<KeywordRule> getRules() {
+        return Collections.unmodifiableList(Arrays.asList(rules));
+    }
+
+    /**
+     * 获取规则数
+     *
+     * @return 规则数
+     */
+    public int size() {
+        return rules.length;
+    }
+
+    /**
+     * 获取自动机状态数
+     *
+     * @return 状态数
+     */
+    public int getStateCount() {
+        return fail.length;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi.keyword;
+
+import java.util.Collection;
+import java.util.Collections;
+import lombok.extern.slf4j.Slf4j;
+import org.weixin4j.model.message.InputMessage;
+import org.weixin4j.model.message.MsgType;
+import org.weixin4j.model.message.OutputMessage;
+import org.weixin4j.model.message.normal.TextInputMessage;
+import org.weixin4j.spi.IInputMessageHandler;
+import org.weixin4j.spi.MessageDispatcher;
+
+/**
+ * 关键字自动回复引擎
+ *
+ * <p>
+ * 文本消息内容（去除首尾空白后）交由<tt>KeywordMatcher</tt>匹配，命中时调用规则的处理器回复，
+ * 未命中时交由安装前原有的文本消息处理器处理。</p>
+ *
+ * <p>
+ * 规则集可在运行期整体替换：新规则在调用线程上编译完成后一次性发布，
+ * 正在处理的消息继续使用旧的自动机，不会看到编译到一半的规则。</p>
+ * <pre>
+ * KeywordReplyEngine engine = new KeywordReplyEngine(rules, true);
+ * engine.install(((DefaultMessageHandler) HandlerFactory.getMessageHandler()).getDispatcher());
+ * ...
+ * engine.publish(newRules);
+ * </pre>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+@Slf4j
+public class KeywordReplyEngine implements IInputMessageHandler {
+
+    private final boolean ignoreCase;
+    private volatile KeywordMatcher matcher;
+    private volatile IInputMessageHandler fallback;
+
+    /**
+     * 创建空规则的引擎
+     *
+     * @param ignoreCase 是否忽略大小写
+     */
+    public KeywordReplyEngine(boolean ignoreCase) {
+        this(Collections.<KeywordRule>emptyList(), ignoreCase);
+    }
+
+    /**
+     * 创建引擎
+     *
+     * @param rules 规则
+     * @param ignoreCase 是否忽略大小写
+     */
+    public KeywordReplyEngine(Collection<KeywordRule> rules, boolean ignoreCase) {
+        this.ignoreCase = ignoreCase;
+        this.matcher = KeywordMatcher.compile(rules, ignoreCase);
+    }
+
+    /**
+     * 发布新的规则集，替换全部规则
+     *
+     * @param rules 规则
+     * @return 被替换的自动机
+     */
+    public KeywordMatcher publish(Collection<KeywordRule> rules) {
+        return publish(KeywordMatcher.compile(rules, ignoreCase));
+    }
+
+    /**
+     * 发布已编译的自动机，替换全部规则
+     *
+     * @param matcher 自动机
+     * @return 被替换的自动机
+     */
+    public synchronized KeywordMatcher publish(KeywordMatcher matcher) {
+        if (matcher == null) {
+            throw new IllegalArgumentException("matcher can not be null");
+        }
+        KeywordMatcher old = this.matcher;
+        this.matcher = matcher;
+        if (log.isDebugEnabled()) {
+            log.debug("weixin4j:关键字规则已更新，规则" + matcher.size() + "条，状态" + matcher.getStateCount() + "个");
+        }
+        return old;
+    }
+
+    /**
+     * 获取当前的自动机
+     *
+     * @return 自动机
+     */
+    public KeywordMatcher getMatcher() {
+        return matcher;
+    }
+
+    /**
+     * 设置未命中时的处理器
+     *
+     * @param fallback 处理器，为null时不回复
+     */
+    public void setFallback(IInputMessageHandler fallback) {
+        this.fallback = fallback;
+    }
+
+    /**
+     * 安装到消息分发表，未命中的文本消息交由原有的处理器处理
+     *
+     * @param dispatcher 消息分发表
+     */
+    public void install(MessageDispatcher dispatcher) {
+        IInputMessageHandler previous = dispatcher.getMsgTypeHandler(MsgType.Text.toString());
+        setFallback(previous != null ? previous : dispatcher.getFallback());
+        dispatcher.register(MsgType.Text, this);
+    }
+
+    @Override
+    public OutputMessage handle(InputMessage inputMsg) {
+        TextInputMessage textMsg = inputMsg.toTextInputMessage();
+        KeywordRule rule = match(textMsg.getContent());
+        if (rule == null) {
+            IInputMessageHandler handler = fallback;
+            return handler == null ? null : handler.handle(inputMsg);
+        }
+        return rule.getHandler().reply(textMsg, rule);
+    }
+
+    /**
+     * 回复文本消息
+     *
+     * @param textMsg 文本消息
+     * @return 回复消息，未命中时返回null
+     */
+    public OutputMessage textTypeMsg(TextInputMessage textMsg) {
+        KeywordRule rule = match(textMsg.getContent());
+        return rule == null ? null : rule.getHandler().reply(textMsg, rule);
+    }
+
+    /**
+     * 匹配文本
+     *
+     * @param content 文本内容
+     * @return 命中的规则，未命中时返回null
+     */
+    public KeywordRule match(String content) {
+        return content == null ? null : matcher.match(content.trim());
+    }
+}
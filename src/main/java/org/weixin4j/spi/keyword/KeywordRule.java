@@ -0,0 +1,138 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi.keyword;
+
+/**
+ * 关键字回复规则
+ *
+ * <p>
+ * 规则构建后不可修改。同一条文本匹配多条规则时，优先级高的规则生效；优先级相同时关键字更长的生效，
+ * 仍相同时先加入规则集的生效。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public final class KeywordRule {
+
+    /**
+     * 匹配方式
+     */
+    public enum Type {
+
+        /**
+         * 文本与关键字完全相同
+         */
+        EXACT,
+        /**
+         * 文本以关键字开头
+         */
+        PREFIX,
+        /**
+         * 文本包含关键字
+         */
+        CONTAINS
+    }
+
+    private final Type type;
+    private final String keyword;
+    private final int priority;
+    private final KeywordHandler handler;
+
+    /**
+     * 创建规则
+     *
+     * @param type 匹配方式
+     * @param keyword 关键字，不能为空
+     * @param priority 优先级，越大越优先
+     * @param handler 回复处理器
+     */
+    public KeywordRule(Type type, String keyword, int priority, KeywordHandler handler) {
+        if (type == null) {
+            throw new IllegalArgumentException("type can not be null");
+        }
+        if (keyword == null || keyword.length() == 0) {
+            throw new IllegalArgumentException("keyword can not be empty");
+        }
+        if (handler == null) {
+            throw new IllegalArgumentException("handler can not be null");
+        }
+        this.type = type;
+        this.keyword = keyword;
+        this.priority = priority;
+        this.handler = handler;
+    }
+
+    /**
+     * 创建完全匹配规则
+     *
+     * @param keyword 关键字
+     * @param priority 优先级
+     * @param handler 回复处理器
+     * @return 规则
+     */
+    public static KeywordRule exact(String keyword, int priority, KeywordHandler handler) {
+        return new KeywordRule(Type.EXACT, keyword, priority, handler);
+    }
+
+    /**
+     * 创建前缀匹配规则
+     *
+     * @param keyword 关键字
+     * @param priority 优先级
+     * @param handler 回复处理器
+     * @return 规则
+     */
+    public static KeywordRule prefix(String keyword, int priority, KeywordHandler handler) {
+        return new KeywordRule(Type.PREFIX, keyword, priority, handler);
+    }
+
+    /**
+     * 创建包含匹配规则
+     *
+     * @param keyword 关键字
+     * @param priority 优先级
+     * @param handler 回复处理器
+     * @return 规则
+     */
+    public static KeywordRule contains(String keyword, int priority, KeywordHandler handler) {
+        return new KeywordRule(Type.CONTAINS, keyword, priority, handler);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getKeyword() {
+        return keyword;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public KeywordHandler getHandler() {
+        return handler;
+    }
+
+    @Override
+    public String toString() {
+        return type + ":" + keyword + "(" + priority + ")";
+    }
+}
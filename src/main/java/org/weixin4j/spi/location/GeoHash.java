@@ -0,0 +1,149 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi.location;
+
+/**
+ * GeoHash编码工具
+ *
+ * <p>
+ * 编码为经度、纬度交替的二进制位，经度在前，与标准GeoHash的位序一致；
+ * 位数为5的倍数时可转换为Base32字符串。偶数位时纬度、经度各占一半位数，
+ * 30位时每个格子约为0.0055°×0.011°（赤道附近约610m×1.2km）。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public final class GeoHash {
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+    /**
+     * 地球平均半径(m)
+     */
+    private static final double EARTH_RADIUS = 6371008.8;
+
+    private GeoHash() {
+    }
+
+    /**
+     * 计算坐标所在格子的纬度序号
+     *
+     * @param latitude 纬度
+     * @param half 纬度位数
+     * @return 纬度序号
+     */
+    static int latitudeIndex(double latitude, int half) {
+        return index((latitude + 90) / 180, half);
+    }
+
+    /**
+     * 计算坐标所在格子的经度序号
+     *
+     * @param longitude 经度
+     * @param half 经度位数
+     * @return 经度序号
+     */
+    static int longitudeIndex(double longitude, int half) {
+        return index((longitude + 180) / 360, half);
+    }
+
+    private static int index(double ratio, int half) {
+        long cells = 1L << half;
+        long i = (long) Math.floor(ratio * cells);
+        return (int) Math.max(0, Math.min(cells - 1, i));
+    }
+
+    /**
+     * 交替合并经度、纬度序号
+     *
+     * @param lonIndex 经度序号
+     * @param latIndex 纬度序号
+     * @param half 每个方向的位数
+     * @return GeoHash
+     */
+    static long interleave(int lonIndex, int latIndex, int half) {
+        long hash = 0;
+        for (int i = half - 1; i >= 0; i--) {
+            hash = (hash << 2) | (((lonIndex >>> i) & 1L) << 1) | ((latIndex >>> i) & 1L);
+        }
+        return hash;
+    }
+
+    /**
+     * 编码坐标
+     *
+     * @param latitude 纬度
+     * @param longitude 经度
+     * @param bits 位数，1到60
+     * @return GeoHash
+     */
+    public static long encode(double latitude, double longitude, int bits) {
+        if (bits < 1 || bits > 60) {
+            throw new IllegalArgumentException("bits must be between 1 and 60");
+        }
+        if ((bits & 1) != 0) {
+            //奇数位时经度多一位，去掉偶数编码的最后一个纬度位
+            return encode(latitude, longitude, bits + 1) >>> 1;
+        }
+        int half = bits / 2;
+        return interleave(longitudeIndex(longitude, half), latitudeIndex(latitude, half), half);
+    }
+
+    /**
+     * 转换为Base32字符串
+     *
+     * @param hash GeoHash
+     * @param bits 位数，需为5的倍数
+     * @return Base32字符串，例如ws0e9d
+     */
+    public static String toBase32(long hash, int bits) {
+        if (bits % 5 != 0) {
+            throw new IllegalArgumentException("bits must be a multiple of 5");
+        }
+        char[] chars = new char[bits / 5];
+        for (int i = chars.length - 1; i >= 0; i--) {
+            chars[i] = BASE32[(int) (hash & 31)];
+            hash >>>= 5;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 计算两点间的球面距离
+     *
+     * @param lat1 点1纬度
+     * @param lon1 点1经度
+     * @param lat2 点2纬度
+     * @param lon2 点2经度
+     * @return 距离(m)
+     */
+    public static double distance(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    static void checkBits(int bits) {
+        if (bits < 2 || bits > 60 || (bits & 1) != 0) {
+            throw new IllegalArgumentException("bits must be an even number between 2 and 60");
+        }
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi.location;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 基于GeoHash格子的粉丝位置索引
+ *
+ * <p>
+ * 每个粉丝只保留最新位置，按固定位数的GeoHash归入格子。查询附近粉丝时，
+ * 按半径换算出经纬度范围内的全部格子，逐个格子取出粉丝再按球面距离过滤；
+ * 范围内的格子数超过上限（半径远大于格子）时退化为全量扫描。</p>
+ *
+ * <p>
+ * 线程安全。同一粉丝的更新按openid分段加锁，查询不加锁。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public class GeoIndex {
+
+    /**
+     * 查询时最多遍历的格子数
+     */
+    private static final int MAX_CELLS = 4096;
+    /**
+     * 每度纬度的长度(m)
+     */
+    private static final double METERS_PER_DEGREE = 111320;
+
+    private final int half;
+    private final ConcurrentMap<String, UserLocation> locations = new ConcurrentHashMap<String, UserLocation>();
+    private final ConcurrentMap<Long, Set<String>> cells = new ConcurrentHashMap<Long, Set<String>>();
+    private final Object[] locks = new Object[64];
+
+    /**
+     * 创建索引
+     *
+     * @param bits GeoHash位数，2到60之间的偶数，30位时格子约为610m×1.2km
+     */
+    public GeoIndex(int bits) {
+        GeoHash.checkBits(bits);
+        this.half = bits / 2;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    private Object lockOf(String openid) {
+        int h = openid.hashCode();
+        return locks[(h ^ (h >>> 16)) & (locks.length - 1)];
+    }
+
+    private long cellOf(UserLocation location) {
+        return GeoHash.interleave(GeoHash.longitudeIndex(location.getLongitude(), half),
+                GeoHash.latitudeIndex(location.getLatitude(), half), half);
+    }
+
+    /**
+     * 更新粉丝位置
+     *
+     * @param location 位置
+     * @return 原来的位置，不存在时返回null
+     */
+    public UserLocation put(UserLocation location) {
+        synchronized (lockOf(location.getOpenid())) {
+            return replace(location);
+        }
+    }
+
+    /**
+     * 粉丝没有位置或原位置的上报时间不晚于新位置时更新
+     *
+     * @param location 位置
+     * @return 是否已更新，原位置更新时返回false
+     */
+    public boolean putIfNewer(UserLocation location) {
+        synchronized (lockOf(location.getOpenid())) {
+            UserLocation current = locations.get(location.getOpenid());
+            if (current != null && current.getCreateTime() > location.getCreateTime()) {
+                return false;
+            }
+            replace(location);
+            return true;
+        }
+    }
+
+    /**
+     * 替换粉丝位置并调整所在格子，调用方需持有该openid的锁
+     */
+    private UserLocation replace(UserLocation location) {
+        long cell = cellOf(location);
+        UserLocation previous = locations.put(location.getOpenid(), location);
+        if (previous != null) {
+            long previousCell = cellOf(previous);
+            if (previousCell == cell) {
+                return previous;
+            }
+            removeFromCell(previousCell, location.getOpenid());
+        }
+        addToCell(cell, location.getOpenid());
+        return previous;
+    }
+
+    /**
+     * 删除粉丝位置
+     *
+     * @param openid 粉丝openid
+     * @return 被删除的位置，不存在时返回null
+     */
+    public UserLocation remove(String openid) {
+        synchronized (lockOf(openid)) {
+            UserLocation previous = locations.remove(openid);
+            if (previous != null) {
+                removeFromCell(cellOf(previous), openid);
+            }
+            return previous;
+        }
+    }
+
+    /**
+     * 删除收到时间早于指定时间的位置
+     *
+     * @param receivedBefore 收到时间(ms)
+     * @return 删除的个数
+     */
+    public int expire(long receivedBefore) {
+        int removed = 0;
+        for (UserLocation location : locations.values()) {
+            if (location.getReceivedAt() < receivedBefore) {
+                synchronized (lockOf(location.getOpenid())) {
+                    //加锁后确认没有被新位置替换
+                    if (locations.remove(location.getOpenid(), location)) {
+                        removeFromCell(cellOf(location), location.getOpenid());
+                        removed++;
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+
+    private void addToCell(long cell, String openid) {
+        Long key = cell;
+        while (true) {
+            Set<String> members = cells.get(key);
+            if (members == null) {
+                Set<String> created = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>(4));
+                members = cells.putIfAbsent(key, created);
+                if (members == null) {
+                    members = created;
+                }
+            }
+            synchronized (members) {
+                //格子可能刚被清空移除，需重新获取
+                if (cells.get(key) == members) {
+                    members.add(openid);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void removeFromCell(long cell, String openid) {
+        Long key = cell;
+        Set<String> members = cells.get(key);
+        if (members != null) {
+            synchronized (members) {
+                members.remove(openid);
+                if (members.isEmpty()) {
+                    cells.remove(key, members);
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取粉丝位置
+     *
+     * @param openid 粉丝openid
+     * @return 位置，不存在时返回null
+     */
+    public UserLocation get(String openid) {
+        return locations.get(openid);
+    }
+
+    /**
+     * 获取粉丝数
+     *
+     * @return 粉丝数
+     */
+    public int size() {
+        return locations.size();
+    }
+
+    /**
+     * 获取非空格子数
+     *
+     * @return 格子数
+     */
+    public int getCellCount() {
+        return cells.size();
+    }
+
+    /**
+     * 查询附近的粉丝
+     *
+     * @param latitude 纬度
+     * @param longitude 经度
+     * @param radius 半径(m)
+     * @param limit 最多返回的个数，0表示不限制
+     * @return 按距离由近到远排列的位置
+     */
+    public List<UserLocation> nearby(double latitude, double longitude, double radius, int limit) {
+        List<Candidate> candidates = new ArrayList<Candidate>();
+        double dLat = radius / METERS_PER_DEGREE;
+        double cos = Math.cos(Math.toRadians(latitude));
+        //靠近两极时经度范围覆盖全部
+        double dLon = cos < 1e-6 ? 360 : radius / (METERS_PER_DEGREE * cos);
+        int latFrom = GeoHash.latitudeIndex(Math.max(-90, latitude - dLat), half);
+        int latTo = GeoHash.latitudeIndex(Math.min(90, latitude + dLat), half);
+        long lonCells = 1L << half;
+        long lonSpan;
+        int lonFrom;
+        if (dLon >= 180) {
+            lonFrom = 0;
+            lonSpan = lonCells;
+        } else {
+            lonFrom = GeoHash.longitudeIndex(wrap(longitude - dLon), half);
+            int lonTo = GeoHash.longitudeIndex(wrap(longitude + dLon), half);
+            //跨越180°经线时序号回绕
+            lonSpan = (lonTo - lonFrom + lonCells) % lonCells + 1;
+        }
+        if ((long) (latTo - latFrom + 1) * lonSpan > MAX_CELLS) {
+            for (UserLocation location : locations.values()) {
+                collect(candidates, location, latitude, longitude, radius);
+            }
+        } else {
+            for (int lat = latFrom; lat <= latTo; lat++) {
+                for (long i = 0; i < lonSpan; i++) {
+                    int lon = (int) ((lonFrom + i) % lonCells);
+                    long cell = GeoHash.interleave(lon, lat, half);
+                    Set<String> members = cells.get(cell);
+                    if (members == null) {
+                        continue;
+                    }
+                    for (Iterator<String> it = members.iterator(); it.hasNext();) {
+                        UserLocation location = locations.get(it.next());
+                        //移动中的粉丝可能短暂出现在两个格子中，只在当前位置所在格子中计入
+                        if (location != null && cellOf(location) == cell) {
+                            collect(candidates, location, latitude, longitude, radius);
+                        }
+                    }
+                }
+            }
+        }
+        Collections.sort(candidates, new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate a, Candidate b) {
+                return Double.compare(a.distance, b.distance);
+            }
+        });
+        int n = limit > 0 ? Math.min(limit, candidates.size()) : candidates.size();
+        List<UserLocation> result = new ArrayList<UserLocation>(n);
+        for (int i = 0; i < n; i++) {
+            result.add(candidates.get(i).location);
+        }
+        return result;
+    }
+
+    private static void collect(List<Candidate> candidates, UserLocation location, double latitude, double longitude, double radius) {
+        double distance = location.distanceTo(latitude, longitude);
+        if (distance <= radius) {
+            candidates.add(new Candidate(location, distance));
+        }
+    }
+
+    private static final class Candidate {
+
+        private final UserLocation location;
+        private final double distance;
+
+        Candidate(UserLocation location, double distance) {
+            this.location = location;
+            this.distance = distance;
+        }
+    }
+
+    private static double wrap(double longitude) {
+        if (longitude < -180) {
+            return longitude + 360;
+        }
+        if (longitude >= 180) {
+            return longitude - 360;
+        }
+        return longitude;
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi.location;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.weixin4j.Configuration;
+import org.weixin4j.model.message.EventType;
+import org.weixin4j.model.message.InputMessage;
+import org.weixin4j.model.message.OutputMessage;
+import org.weixin4j.spi.IInputMessageHandler;
+import org.weixin4j.spi.MessageDispatcher;
+
+/**
+ * 上报地理位置事件聚合器
+ *
+ * <p>
+ * 开启上报地理位置后，粉丝在会话中时微信每5秒推送一次LOCATION事件。聚合器在内存中按openid合并，
+ * 只保留最新位置，按固定间隔将有变化的位置分批交给<tt>LocationSink</tt>写出；
+ * 同时维护GeoHash索引，查询附近的粉丝无需访问数据库。</p>
+ * <pre>
+ * LocationAggregator aggregator = new LocationAggregator(new LocationSink() {
+ *     public void flush(List&lt;UserLocation&gt; batch) throws Exception {
+ *         locationDao.batchUpdate(batch);
+ *     }
+ * });
+ * aggregator.install(((DefaultMessageHandler) HandlerFactory.getMessageHandler()).getDispatcher());
+ * List&lt;UserLocation&gt; users = aggregator.nearby(23.13, 113.35, 1000, 20);
+ * </pre>
+ *
+ * <p>
+ * 安装后LOCATION事件不再交给<tt>IEventMessageHandler.location</tt>，也不回复。
+ * 超过有效时间未再上报的粉丝从索引中移除。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+@Slf4j
+public class LocationAggregator implements IInputMessageHandler, Closeable {
+
+    private final LocationSink sink;
+    private final int batchSize;
+    private final long ttl;
+    private final GeoIndex index;
+    /**
+     * 待写出的最新位置
+     */
+    private final ConcurrentMap<String, UserLocation> pending = new ConcurrentHashMap<String, UserLocation>();
+    private final Object flushLock = new Object();
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final AtomicLong receivedCount = new AtomicLong();
+    private final AtomicLong flushedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    /**
+     * 按配置创建聚合器
+     *
+     * <p>
+     * weixin4j.location.flushInterval为写出间隔（默认30000ms），weixin4j.location.batchSize为每批个数（默认500），
+     * weixin4j.location.ttl为位置有效时间（默认600000ms），weixin4j.location.geohashBits为索引格子精度（默认30位）。</p>
+     *
+     * @param sink 位置写出接口
+     */
+    public LocationAggregator(LocationSink sink) {
+        this(sink, Configuration.getIntProperty("weixin4j.location.flushInterval", 30000),
+                Configuration.getIntProperty("weixin4j.location.batchSize", 500),
+                Configuration.getIntProperty("weixin4j.location.ttl", 600000),
+                Configuration.getIntProperty("weixin4j.location.geohashBits", 30));
+    }
+
+    /**
+     * 创建聚合器
+     *
+     * @param sink 位置写出接口
+     * @param flushInterval 写出间隔(ms)
+     * @param batchSize 每批个数
+     * @param ttl 位置有效时间(ms)，0表示不过期
+     * @param geohashBits 索引格子精度，2到60之间的偶数
+     */
+    public LocationAggregator(LocationSink sink, long flushInterval, int batchSize, long ttl, int geohashBits) {
+        if (sink == null) {
+            throw new IllegalArgumentException("sink can not be null");
+        }
+        if (flushInterval <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("flushInterval and batchSize must be greater than zero");
+        }
+        this.sink = sink;
+        this.batchSize = batchSize;
+        this.ttl = Math.max(0, ttl);
+        this.index = new GeoIndex(geohashBits);
+        this.scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "weixin4j-location-flusher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flush();
+                    expire();
+                } catch (RuntimeException ex) {
+                    log.error("weixin4j:位置写出异常", ex);
+                }
+            }
+        }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 安装到消息分发表，接管LOCATION事件
+     *
+     * @param dispatcher 消息分发表
+     */
+    public void install(MessageDispatcher dispatcher) {
+        dispatcher.register(EventType.Location, this);
+    }
+
+    @Override
+    public OutputMessage handle(InputMessage inputMsg) {
+        String openid = inputMsg.getFromUserName();
+        if (openid == null || inputMsg.getLatitude() == null || inputMsg.getLongitude() == null) {
+            return null;
+        }
+        double latitude;
+        double longitude;
+        double precision;
+        try {
+            latitude = Double.parseDouble(inputMsg.getLatitude().trim());
+            longitude = Double.parseDouble(inputMsg.getLongitude().trim());
+            precision = inputMsg.getPrecision() == null ? 0 : Double.parseDouble(inputMsg.getPrecision().trim());
+        } catch (NumberFormatException ex) {
+            log.warn("weixin4j:地理位置格式错误, openid:" + openid + " Latitude:" + inputMsg.getLatitude()
+                    + " Longitude:" + inputMsg.getLongitude());
+            return null;
+        }
+        long createTime = inputMsg.getCreateTime() == null ? 0 : inputMsg.getCreateTime();
+        update(new UserLocation(openid, latitude, longitude, precision, createTime, System.currentTimeMillis()));
+        return null;
+    }
+
+    /**
+     * 更新粉丝位置
+     *
+     * @param location 位置
+     */
+    public void update(UserLocation location) {
+        if (location.getLatitude() < -90 || location.getLatitude() > 90
+                || location.getLongitude() < -180 || location.getLongitude() > 180) {
+            return;
+        }
+        receivedCount.incrementAndGet();
+        //微信重试或乱序推送时，不以旧位置覆盖新位置
+        if (!index.putIfNewer(location)) {
+            return;
+        }
+        String openid = location.getOpenid();
+        for (;;) {
+            UserLocation queued = pending.putIfAbsent(openid, location);
+            //并发更新时保留上报时间较晚的位置
+            if (queued == null || queued.getCreateTime() > location.getCreateTime()
+                    || pending.replace(openid, queued, location)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 立即写出全部待写出的位置
+     *
+     * @return 写出的个数
+     */
+    public int flush() {
+        synchronized (flushLock) {
+            int flushed = 0;
+            List<UserLocation> batch = new ArrayList<UserLocation>(Math.min(batchSize, Math.max(16, pending.size())));
+            for (Iterator<Map.Entry<String, UserLocation>> it = pending.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<String, UserLocation> entry = it.next();
+                //写出期间有新位置时保留新位置，下次再写出
+                if (pending.remove(entry.getKey(), entry.getValue())) {
+                    batch.add(entry.getValue());
+                }
+                if (batch.size() >= batchSize) {
+                    flushed += write(batch);
+                    batch = new ArrayList<UserLocation>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                flushed += write(batch);
+            }
+            return flushed;
+        }
+    }
+
+    private int write(List<UserLocation> batch) {
+        try {
+            sink.flush(batch);
+            flushedCount.addAndGet(batch.size());
+            return batch.size();
+        } catch (Exception ex) {
+            failedCount.addAndGet(batch.size());
+            log.warn("weixin4j:位置写出失败，" + batch.size() + "个位置将在下次重试", ex);
+            for (UserLocation location : batch) {
+                pending.putIfAbsent(location.getOpenid(), location);
+            }
+            return 0;
+        }
+    }
+
+    private void expire() {
+        if (ttl > 0) {
+            int removed = index.expire(System.currentTimeMillis() - ttl);
+            if (removed > 0 && log.isDebugEnabled()) {
+                log.debug("weixin4j:移除" + removed + "个过期位置");
+            }
+        }
+    }
+
+    /**
+     * 获取粉丝的最新位置
+     *
+     * @param openid 粉丝openid
+     * @return 位置，不存在或已过期时返回null
+     */
+    public UserLocation get(String openid) {
+        return index.get(openid);
+    }
+
+    /**
+     * 查询附近的粉丝
+     *
+     * @param latitude 纬度
+     * @param longitude 经度
+     * @param radius 半径(m)
+     * @param limit 最多返回的个数，0表示不限制
+     * @return 按距离由近到远排列的位置
+     */
+    public List<UserLocation> nearby(double latitude, double longitude, double radius, int limit) {
+        return index.nearby(latitude, longitude, radius, limit);
+    }
+
+    /**
+     * 删除粉丝位置，例如取消关注时，已待写出的位置仍会写出
+     *
+     * @param openid 粉丝openid
+     */
+    public void remove(String openid) {
+        index.remove(openid);
+    }
+
+    /**
+     * 获取位置索引
+     *
+     * @return 位置索引
+     */
+    public GeoIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * 获取待写出的位置数
+     *
+     * @return 位置数
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * 获取收到的位置事件数
+     *
+     * @return 事件数
+     */
+    public long getReceivedCount() {
+        return receivedCount.get();
+    }
+
+    /**
+     * 获取已写出的位置数，与收到的事件数之差即为合并掉的写入
+     *
+     * @return 位置数
+     */
+    public long getFlushedCount() {
+        return flushedCount.get();
+    }
+
+    /**
+     * 获取写出失败的位置数（含重试）
+     *
+     * @return 位置数
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * 停止定时写出，并写出剩余的位置
+     */
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+}
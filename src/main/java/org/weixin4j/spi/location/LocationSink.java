@@ -0,0 +1,39 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi.location;
+
+import java.util.List;
+
+/**
+ * 位置批量写出接口，通常实现为数据库批量更新
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public interface LocationSink {
+
+    /**
+     * 批量写出粉丝的最新位置，每个粉丝在一批中最多出现一次
+     *
+     * @param batch 位置
+     * @throws Exception 写出失败，失败的位置在下次刷新时重试（已有更新的位置时以新位置为准）
+     */
+    void flush(List<UserLocation> batch) throws Exception;
+}
@@ -0,0 +1,98 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi.location;
+
+/**
+ * 粉丝的最新位置
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public final class UserLocation implements java.io.Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String openid;
+    private final double latitude;
+    private final double longitude;
+    private final double precision;
+    private final long createTime;
+    private final long receivedAt;
+
+    /**
+     * 创建位置
+     *
+     * @param openid 粉丝openid
+     * @param latitude 纬度
+     * @param longitude 经度
+     * @param precision 精度(m)
+     * @param createTime 微信推送的消息创建时间(s)
+     * @param receivedAt 收到时间(ms)
+     */
+    public UserLocation(String openid, double latitude, double longitude, double precision, long createTime, long receivedAt) {
+        this.openid = openid;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.precision = precision;
+        this.createTime = createTime;
+        this.receivedAt = receivedAt;
+    }
+
+    public String getOpenid() {
+        return openid;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public double getPrecision() {
+        return precision;
+    }
+
+    public long getCreateTime() {
+        return createTime;
+    }
+
+    public long getReceivedAt() {
+        return receivedAt;
+    }
+
+    /**
+     * 计算到指定坐标的距离
+     *
+     * @param lat 纬度
+     * @param lon 经度
+     * @return 距离(m)
+     */
+    public double distanceTo(double lat, double lon) {
+        return GeoHash.distance(latitude, longitude, lat, lon);
+    }
+
+    @Override
+    public String toString() {
+        return "UserLocation{openid=" + openid + ", latitude=" + latitude + ", longitude=" + longitude
+                + ", precision=" + precision + ", createTime=" + createTime + "}";
+    }
+}
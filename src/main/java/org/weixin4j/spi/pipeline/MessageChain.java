@@ -0,0 +1,42 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi.pipeline;
+
+import org.weixin4j.WeixinException;
+import org.weixin4j.model.message.InputMessage;
+import org.weixin4j.model.message.OutputMessage;
+
+/**
+ * 消息处理链，由<tt>MessageMiddleware</tt>调用以交给下一个中间件或最终的消息分发
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public interface MessageChain {
+
+    /**
+     * 继续处理消息
+     *
+     * @param inputMsg 输入消息
+     * @return 回复消息，无需回复时返回null
+     * @throws WeixinException 处理异常
+     */
+    OutputMessage proceed(InputMessage inputMsg) throws WeixinException;
+}
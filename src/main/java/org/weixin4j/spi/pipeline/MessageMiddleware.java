@@ -0,0 +1,61 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi.pipeline;
+
+import org.weixin4j.WeixinException;
+import org.weixin4j.model.message.InputMessage;
+import org.weixin4j.model.message.OutputMessage;
+
+/**
+ * 消息处理中间件
+ *
+ * <p>
+ * 按注册顺序包裹在消息排重和分发之外，用于鉴权、日志、限流等横切逻辑。
+ * 调用<tt>chain.proceed</tt>继续处理，不调用则短路，直接以返回值作为回复；
+ * 在<tt>proceed</tt>返回后可修改回复，此时回复尚未序列化。</p>
+ * <pre>
+ * handler.getPipeline().add("blacklist", new MessageMiddleware() {
+ *     public OutputMessage handle(InputMessage inputMsg, MessageChain chain) throws WeixinException {
+ *         if (blacklist.contains(inputMsg.getFromUserName())) {
+ *             return null;
+ *         }
+ *         return chain.proceed(inputMsg);
+ *     }
+ * });
+ * </pre>
+ *
+ * <p>
+ * 实现类需线程安全，每次处理中最多调用一次<tt>chain.proceed</tt>。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public interface MessageMiddleware {
+
+    /**
+     * 处理消息
+     *
+     * @param inputMsg 输入消息
+     * @param chain 后续处理链
+     * @return 回复消息，无需回复时返回null
+     * @throws WeixinException 处理异常
+     */
+    OutputMessage handle(InputMessage inputMsg, MessageChain chain) throws WeixinException;
+}
@@ -0,0 +1,246 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.weixin4j.WeixinException;
+import org.weixin4j.model.message.InputMessage;
+import org.weixin4j.model.message.OutputMessage;
+
+/**
+ * 消息处理管道：有序的中间件链和阶段耗时统计
+ *
+ * <p>
+ * 中间件按注册顺序执行，最后交给排重和分发。中间件列表为写时复制的数组，处理时只读一次，
+ * 运行中增删中间件不影响正在处理的消息。未注册中间件且未设置统计时，
+ * <tt>DefaultMessageHandler</tt>直接分发，不经过管道，也不调用<tt>System.nanoTime()</tt>。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public class MessagePipeline {
+
+    /**
+     * 读取并解析请求体
+     */
+    public static final String STAGE_PARSE = "parse";
+    /**
+     * 排重和分发
+     */
+    public static final String STAGE_DISPATCH = "dispatch";
+    /**
+     * 回复序列化
+     */
+    public static final String STAGE_SERIALIZE = "serialize";
+
+    private static final Stage[] EMPTY = new Stage[0];
+
+    private volatile Stage[] stages = EMPTY;
+    private volatile PipelineMetrics metrics;
+
+    /**
+     * 在末尾（最靠近分发处）添加中间件
+     *
+     * @param name 名称，同时作为耗时统计的阶段名称
+     * @param middleware 中间件
+     * @throws IllegalArgumentException 名称已存在
+     */
+    public synchronized void add(String name, MessageMiddleware middleware) {
+        add(stages.length, name, middleware);
+    }
+
+    /**
+     * 在指定位置添加中间件，位置0最先执行
+     *
+     * @param index 位置
+     * @param name 名称，同时作为耗时统计的阶段名称
+     * @param middleware 中间件
+     * @throws IllegalArgumentException 名称已存在
+     * @throws IndexOutOfBoundsException 位置超出范围
+     */
+    public synchronized void add(int index, String name, MessageMiddleware middleware) {
+        if (name == null || middleware == null) {
+            throw new NullPointerException();
+        }
+        Stage[] current = stages;
+        if (index < 0 || index > current.length) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + current.length);
+        }
+        for (Stage stage : current) {
+            if (stage.name.equals(name)) {
+                throw new IllegalArgumentException("middleware " + name + " already exists");
+            }
+        }
+        Stage[] next = new Stage[current.length + 1];
+        System.arraycopy(current, 0, next, 0, index);
+        next[index] = new Stage(name, middleware);
+        System.arraycopy(current, index, next, index + 1, current.length - index);
+        stages = next;
+    }
+
+    /**
+     * 移除中间件
+     *
+     * @param name 名称
+     * @return 被移除的中间件，不存在时返回null
+     */
+    public synchronized MessageMiddleware remove(String name) {
+        Stage[] current = stages;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].name.equals(name)) {
+                Stage[] next = current.length == 1 ? EMPTY : new Stage[current.length - 1];
+                System.arraycopy(current, 0, next, 0, i);
+                System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+                stages = next;
+                return current[i].middleware;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 获取已注册的中间件名称
+     *
+     * @return 按执行顺序排列的名称
+     */
+    public List<String> getNames() {
+        Stage[] current = stages;
+        List<String> names = new ArrayList<String>(current.length);
+        for (Stage stage : current) {
+            names.add(stage.name);
+        }
+        return names;
+    }
+
+    /**
+     * 获取阶段耗时统计
+     *
+     * @return 统计接口，未设置时返回null
+     */
+    public PipelineMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 设置阶段耗时统计
+     *
+     * @param metrics 统计接口，为null时不统计
+     */
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * 是否需要经过管道处理
+     *
+     * @return 已注册中间件或已设置统计时返回true
+     */
+    public boolean isActive() {
+        return stages.length != 0 || metrics != null;
+    }
+
+    /**
+     * 开始计时
+     *
+     * @return 开始时间(ns)，未设置统计时返回0
+     */
+    public long startTiming() {
+        return metrics == null ? 0L : System.nanoTime();
+    }
+
+    /**
+     * 记录从<tt>startTiming()</tt>开始的阶段耗时
+     *
+     * @param stage 阶段名称
+     * @param startNanos <tt>startTiming()</tt>的返回值
+     */
+    public void record(String stage, long startNanos) {
+        PipelineMetrics m = metrics;
+        if (m != null && startNanos != 0L) {
+            m.record(stage, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * 依次经过中间件处理消息
+     *
+     * @param inputMsg 输入消息
+     * @param dispatcher 最终的排重和分发
+     * @return 回复消息，无需回复时返回null
+     * @throws WeixinException 处理异常
+     */
+    public OutputMessage execute(InputMessage inputMsg, MessageChain dispatcher) throws WeixinException {
+        return new Invocation(stages, dispatcher, metrics).proceed(inputMsg);
+    }
+
+    private static final class Stage {
+
+        private final String name;
+        private final MessageMiddleware middleware;
+
+        Stage(String name, MessageMiddleware middleware) {
+            this.name = name;
+            this.middleware = middleware;
+        }
+    }
+
+    /**
+     * 一次消息处理中的链位置
+     */
+    private static final class Invocation implements MessageChain {
+
+        private final Stage[] stages;
+        private final MessageChain dispatcher;
+        private final PipelineMetrics metrics;
+        private int index;
+        /**
+         * 当前阶段的后续阶段累计耗时，用于计算中间件自身的耗时
+         */
+        private long downstreamNanos;
+
+        Invocation(Stage[] stages, MessageChain dispatcher, PipelineMetrics metrics) {
+            this.stages = stages;
+            this.dispatcher = dispatcher;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public OutputMessage proceed(InputMessage inputMsg) throws WeixinException {
+            int i = index++;
+            if (i > stages.length) {
+                throw new IllegalStateException("MessageChain.proceed called more than once");
+            }
+            if (metrics == null) {
+                return i < stages.length ? stages[i].middleware.handle(inputMsg, this) : dispatcher.proceed(inputMsg);
+            }
+            long outer = downstreamNanos;
+            downstreamNanos = 0;
+            long start = System.nanoTime();
+            try {
+                return i < stages.length ? stages[i].middleware.handle(inputMsg, this) : dispatcher.proceed(inputMsg);
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                metrics.record(i < stages.length ? stages[i].name : MessagePipeline.STAGE_DISPATCH, elapsed - downstreamNanos);
+                downstreamNanos = outer + elapsed;
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi.pipeline;
+
+/**
+ * 消息处理各阶段耗时的统计接口
+ *
+ * <p>
+ * 阶段包括parse（读取并解析请求体）、各中间件（按注册名称，不含后续阶段的耗时）、
+ * dispatch（排重和分发）、serialize（回复序列化）。
+ * 实现类在处理线程中被同步调用，需线程安全且足够轻量，可对接Micrometer、Dropwizard Metrics等。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ * @see StageStatistics
+ */
+public interface PipelineMetrics {
+
+    /**
+     * 记录一次阶段耗时
+     *
+     * @param stage 阶段名称
+     * @param nanos 耗时(ns)
+     */
+    void record(String stage, long nanos);
+}
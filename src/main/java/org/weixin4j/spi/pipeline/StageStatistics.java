@@ -0,0 +1,129 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi.pipeline;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 内存中的阶段耗时统计，记录各阶段的次数、总耗时和最大耗时
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public class StageStatistics implements PipelineMetrics {
+
+    private final ConcurrentMap<String, Stage> stages = new ConcurrentHashMap<String, Stage>();
+
+    @Override
+    public void record(String stage, long nanos) {
+        Stage s = stages.get(stage);
+        if (s == null) {
+            Stage created = new Stage(stage);
+            s = stages.putIfAbsent(stage, created);
+            if (s == null) {
+                s = created;
+            }
+        }
+        s.count.incrementAndGet();
+        s.totalNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = s.maxNanos.get())) {
+            if (s.maxNanos.compareAndSet(max, nanos)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 获取阶段统计
+     *
+     * @param stage 阶段名称
+     * @return 阶段统计，未记录过时返回null
+     */
+    public Stage getStage(String stage) {
+        return stages.get(stage);
+    }
+
+    /**
+     * 获取全部阶段统计
+     *
+     * @return 阶段名称到统计的映射
+     */
+    public Map<String, Stage> getStages() {
+        return new LinkedHashMap<String, Stage>(stages);
+    }
+
+    /**
+     * 清空统计
+     */
+    public void reset() {
+        stages.clear();
+    }
+
+    /**
+     * 单个阶段的统计
+     */
+    public static final class Stage {
+
+        private final String name;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.get();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        /**
+         * 获取平均耗时
+         *
+         * @return 平均耗时(ns)，未记录时为0
+         */
+        public double getMeanNanos() {
+            long c = count.get();
+            return c == 0 ? 0 : (double) totalNanos.get() / c;
+        }
+
+        @Override
+        public String toString() {
+            return name + "{count=" + getCount() + ", mean=" + (long) getMeanNanos() + "ns, max=" + getMaxNanos() + "ns}";
+        }
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi.route;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+import org.weixin4j.model.message.EventType;
+import org.weixin4j.model.message.InputMessage;
+import org.weixin4j.model.message.OutputMessage;
+import org.weixin4j.spi.IInputMessageHandler;
+import org.weixin4j.spi.MessageDispatcher;
+import org.weixin4j.spi.ReplyTemplateCache;
+
+/**
+ * 事件KEY路由器
+ *
+ * <p>
+ * 启动时扫描处理对象上标注了<tt>&#64;EventRoute</tt>的方法，按事件类型分别编译为
+ * 完全匹配的哈希表和前缀匹配的前缀树，方法预先转换为<tt>MethodHandle</tt>，
+ * 分发时不再使用反射，路由耗时与菜单KEY、场景值的数量无关。</p>
+ *
+ * <p>
+ * 使用方式：</p>
+ * <pre>
+ * EventKeyRouter router = new EventKeyRouter(new MenuHandler(), new QrsceneHandler());
+ * router.install(((DefaultMessageHandler) HandlerFactory.getMessageHandler()).getDispatcher());
+ * </pre>
+ *
+ * <p>
+ * 匹配顺序为：完全匹配的KEY、最长匹配的前缀，均未匹配时交由安装前该事件原有的处理器处理。</p>
+ *
+ * <p>
+ * 标注了<tt>cacheable = true</tt>的KEY路由，回复按路由 <tt>事件类型:KEY</tt>（如 click:MENU_ABOUT）
+ * 缓存在<tt>ReplyTemplateCache</tt>中，菜单内容变化后调用<tt>invalidate</tt>使其失效。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ * @see org.weixin4j.spi.route.EventRoute
+ */
+@Slf4j
+public class EventKeyRouter {
+
+    private static final MethodType ROUTE_TYPE = MethodType.methodType(OutputMessage.class, InputMessage.class, String.class);
+
+    /**
+     * 各事件类型的路由表
+     */
+    private final Map<EventType, Table> tables;
+    /**
+     * 回复模板缓存
+     */
+    private final ReplyTemplateCache replyCache = new ReplyTemplateCache();
+
+    /**
+     * 扫描处理对象，编译路由表
+     *
+     * @param handlers 处理对象，传入Class时仅扫描静态方法
+     * @throws IllegalArgumentException 方法签名不符合要求或KEY重复
+     */
+    public EventKeyRouter(Object... handlers) {
+        Map<EventType, Table> map = new HashMap<EventType, Table>();
+        int count = 0;
+        for (Object handler : handlers) {
+            boolean staticOnly = handler instanceof Class;
+            Class<?> clazz = staticOnly ? (Class<?>) handler : handler.getClass();
+            for (Method method : clazz.getMethods()) {
+                EventRoute route = method.getAnnotation(EventRoute.class);
+                if (route == null) {
+                    continue;
+                }
+                boolean isStatic = Modifier.isStatic(method.getModifiers());
+                if (staticOnly && !isStatic) {
+                    throw new IllegalArgumentException(method + " must be static when routing a class");
+                }
+                Route compiled = new Route(method.toString(), compile(method, isStatic ? null : handler));
+                Table table = map.get(route.event());
+                if (table == null) {
+                    table = new Table(route.event());
+                    map.put(route.event(), table);
+                }
+                for (String key : route.key()) {
+                    table.putKey(key, route.cacheable() ? compiled.cached(routeOf(route.event(), key)) : compiled);
+                    count++;
+                }
+                for (String prefix : route.prefix()) {
+                    table.putPrefix(prefix, compiled);
+                    count++;
+                }
+            }
+        }
+        this.tables = map;
+        if (log.isDebugEnabled()) {
+            log.debug("weixin4j:EventKey路由编译完成，事件类型" + map.size() + "个，路由" + count + "条");
+        }
+    }
+
+    private static String routeOf(EventType eventType, String key) {
+        return eventType.toString() + ':' + key;
+    }
+
+    private static MethodHandle compile(Method method, Object target) {
+        Class<?>[] params = method.getParameterTypes();
+        Class<?> returnType = method.getReturnType();
+        if (returnType != void.class && !OutputMessage.class.isAssignableFrom(returnType)) {
+            throw new IllegalArgumentException(method + " must return OutputMessage or void");
+        }
+        MethodHandle handle;
+        try {
+            method.setAccessible(true);
+            handle = MethodHandles.lookup().unreflect(method);
+        } catch (IllegalAccessException ex) {
+            throw new IllegalArgumentException("can not access " + method, ex);
+        }
+        if (target != null) {
+            handle = handle.bindTo(target);
+        }
+        if (params.length == 0) {
+            handle = MethodHandles.dropArguments(handle, 0, InputMessage.class, String.class);
+        } else if (params.length == 1 && params[0].isAssignableFrom(InputMessage.class)) {
+            handle = MethodHandles.dropArguments(handle, 1, String.class);
+        } else if (params.length != 2 || !params[0].isAssignableFrom(InputMessage.class) || params[1] != String.class) {
+            throw new IllegalArgumentException(method + " parameters must be (), (InputMessage) or (InputMessage, String)");
+        }
+        //统一为(InputMessage, String)OutputMessage，void方法返回null
+        return handle.asType(ROUTE_TYPE);
+    }
+
+    /**
+     * 获取已配置路由的事件类型
+     *
+     * @return 事件类型集合
+     */
+    public Set<EventType> getEventTypes() {
+        return Collections.unmodifiableSet(tables.keySet());
+    }
+
+    /**
+     * 获取指定事件类型的路由处理器
+     *
+     * @param eventType 事件类型
+     * @param fallback 未匹配时的处理器，可以为null
+     * @return 处理器，该事件类型未配置路由时返回fallback
+     */
+    public IInputMessageHandler handlerFor(EventType eventType, IInputMessageHandler fallback) {
+        Table table = tables.get(eventType);
+        return table == null ? fallback : new RoutedHandler(table, fallback, replyCache);
+    }
+
+    /**
+     * 获取回复模板缓存
+     *
+     * @return 回复模板缓存
+     */
+    public ReplyTemplateCache getReplyCache() {
+        return replyCache;
+    }
+
+    /**
+     * 使KEY路由缓存的回复失效，下次推送时重新调用处理方法
+     *
+     * @param eventType 事件类型
+     * @param key EventKey
+     */
+    public void invalidate(EventType eventType, String key) {
+        replyCache.invalidate(routeOf(eventType, key));
+    }
+
+    /**
+     * 使所有缓存的回复失效
+     */
+    public void invalidateAll() {
+        replyCache.invalidateAll();
+    }
+
+    /**
+     * 安装到消息分发表，未匹配的事件交由原有的处理器处理
+     *
+     * @param dispatcher 消息分发表
+     */
+    public void install(MessageDispatcher dispatcher) {
+        for (EventType eventType : tables.keySet()) {
+            IInputMessageHandler previous = dispatcher.getEventHandler(eventType.toString());
+            dispatcher.register(eventType, handlerFor(eventType, previous != null ? previous : dispatcher.getFallback()));
+        }
+    }
+
+    /**
+     * 单一事件类型的路由表
+     */
+    private static final class Table {
+
+        final EventType eventType;
+        final Map<String, Route> keys = new HashMap<String, Route>();
+        final PrefixTrie<Route> prefixes = new PrefixTrie<Route>();
+
+        Table(EventType eventType) {
+            this.eventType = eventType;
+        }
+
+        void putKey(String key, Route route) {
+            Route old = keys.put(key, route);
+            if (old != null) {
+                throw new IllegalArgumentException(eventType + " key [" + key + "] is routed to both " + old.name + " and " + route.name);
+            }
+        }
+
+        void putPrefix(String prefix, Route route) {
+            Route old = prefixes.put(prefix, route);
+            if (old != null) {
+                throw new IllegalArgumentException(eventType + " prefix [" + prefix + "] is routed to both " + old.name + " and " + route.name);
+            }
+        }
+    }
+
+    private static final class Route {
+
+        final String name;
+        final MethodHandle handle;
+        /**
+         * 回复缓存的路由，不缓存时为null
+         */
+        final String cacheRoute;
+
+        Route(String name, MethodHandle handle) {
+            this(name, handle, null);
+        }
+
+        private Route(String name, MethodHandle handle, String cacheRoute) {
+            this.name = name;
+            this.handle = handle;
+            this.cacheRoute = cacheRoute;
+        }
+
+        Route cached(String cacheRoute) {
+            return new Route(name, handle, cacheRoute);
+        }
+
+        OutputMessage invoke(InputMessage inputMsg, String rest) {
+            try {
+                return (OutputMessage) handle.invokeExact(inputMsg, rest);
+            } catch (RuntimeException ex) {
+                throw ex;
+            } catch (Error ex) {
+                throw ex;
+            } catch (Throwable ex) {
+                throw new IllegalStateException(name + " failed", ex);
+            }
+        }
+    }
+
+    private static final class RoutedHandler implements IInputMessageHandler {
+
+        private final Table table;
+        private final IInputMessageHandler fallback;
+        private final ReplyTemplateCache replyCache;
+
+        RoutedHandler(Table table, IInputMessageHandler fallback, ReplyTemplateCache replyCache) {
+            this.table = table;
+            this.fallback = fallback;
+            this.replyCache = replyCache;
+        }
+
+        @Override
+        public OutputMessage handle(final InputMessage inputMsg) {
+            String eventKey = inputMsg.getEventKey();
+            if (eventKey == null) {
+                eventKey = "";
+            }
+            Route route = table.keys.get(eventKey);
+            String rest = "";
+            if (route == null) {
+                PrefixTrie.Match<Route> match = table.prefixes.longestMatch(eventKey);
+                if (match != null) {
+                    route = match.value;
+                    rest = eventKey.substring(match.length);
+                }
+            }
+            if (route == null) {
+                return fallback == null ? null : fallback.handle(inputMsg);
+            }
+            if (route.cacheRoute != null) {
+                final Route target = route;
+                return replyCache.reply(route.cacheRoute, new ReplyTemplateCache.Loader() {
+                    @Override
+                    public OutputMessage load() {
+                        return target.invoke(inputMsg, "");
+                    }
+                });
+            }
+            return route.invoke(inputMsg, rest);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi.route;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import org.weixin4j.model.message.EventType;
+
+/**
+ * 事件KEY路由
+ *
+ * <p>
+ * 标注在处理方法上，按事件类型和EventKey将事件推送路由到该方法，例如：</p>
+ * <pre>
+ * &#64;EventRoute(event = EventType.Click, key = "MENU_ABOUT")
+ * public OutputMessage about(InputMessage msg) { ... }
+ *
+ * &#64;EventRoute(event = EventType.Subscribe, prefix = "qrscene_")
+ * public OutputMessage qrscene(InputMessage msg, String sceneId) { ... }
+ * </pre>
+ *
+ * <p>
+ * 方法须为public，参数可以为空、<tt>(InputMessage)</tt>或<tt>(InputMessage, String)</tt>，
+ * 第二个参数为EventKey去掉匹配前缀后的部分；返回值为<tt>OutputMessage</tt>或其子类，也可以为void。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ * @see org.weixin4j.spi.route.EventKeyRouter
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface EventRoute {
+
+    /**
+     * 事件类型
+     *
+     * @return 事件类型
+     */
+    EventType event();
+
+    /**
+     * 完全匹配的EventKey
+     *
+     * @return EventKey列表
+     */
+    String[] key() default {};
+
+    /**
+     * 前缀匹配的EventKey，多个前缀均匹配时取最长的前缀
+     *
+     * @return 前缀列表
+     */
+    String[] prefix() default {};
+
+    /**
+     * 是否缓存回复
+     *
+     * <p>
+     * 为true时，完全匹配KEY的回复在首次调用后预渲染并缓存，之后不再调用该方法，
+     * 适用于对所有用户都相同的回复。缓存可通过<tt>EventKeyRouter.invalidate</tt>按路由失效。
+     * 前缀匹配的路由不缓存。</p>
+     *
+     * @return 是否缓存回复
+     */
+    boolean cacheable() default false;
+}
@@ -0,0 +1,151 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi.route;
+
+/**
+ * 字符前缀树，查找最长匹配前缀
+ *
+ * <p>
+ * 构建完成后只读，子节点以有序字符数组保存，查找时二分定位。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+final class PrefixTrie<V> {
+
+    private final Node<V> root = new Node<V>();
+    private int size;
+
+    /**
+     * 添加前缀
+     *
+     * @param prefix 前缀
+     * @param value 值
+     * @return 该前缀原有的值
+     */
+    V put(String prefix, V value) {
+        Node<V> node = root;
+        for (int i = 0; i < prefix.length(); i++) {
+            node = node.childOrCreate(prefix.charAt(i));
+        }
+        V old = node.value;
+        node.value = value;
+        if (old == null) {
+            size++;
+        }
+        return old;
+    }
+
+    /**
+     * 查找最长匹配前缀
+     *
+     * @param key 键
+     * @return 匹配结果，无匹配时返回null
+     */
+    Match<V> longestMatch(String key) {
+        Node<V> node = root;
+        V value = root.value;
+        int length = 0;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.child(key.charAt(i));
+            if (node == null) {
+                break;
+            }
+            if (node.value != null) {
+                value = node.value;
+                length = i + 1;
+            }
+        }
+        return value == null ? null : new Match<V>(value, length);
+    }
+
+    int size() {
+        return size;
+    }
+
+    static final class Match<V> {
+
+        final V value;
+        /**
+         * 匹配前缀的长度
+         */
+        final int length;
+
+        Match(V value, int length) {
+            this.value = value;
+            this.length = length;
+        }
+    }
+
+    private static final class Node<V> {
+
+        private static final char[] NO_KEYS = new char[0];
+
+        private char[] keys = NO_KEYS;
+        private Node<V>[] children;
+        V value;
+
+        Node<V> child(char c) {
+            int idx = search(c);
+            return idx < 0 ? null : children[idx];
+        }
+
+        @SuppressWarnings("unchecked")
+        Node<V> childOrCreate(char c) {
+            int idx = search(c);
+            if (idx >= 0) {
+                return children[idx];
+            }
+            int pos = -idx - 1;
+            int n = keys.length;
+            char[] nk = new char[n + 1];
+            Node<V>[] nc = (Node<V>[]) new Node<?>[n + 1];
+            System.arraycopy(keys, 0, nk, 0, pos);
+            nk[pos] = c;
+            System.arraycopy(keys, pos, nk, pos + 1, n - pos);
+            if (n > 0) {
+                System.arraycopy(children, 0, nc, 0, pos);
+                System.arraycopy(children, pos, nc, pos + 1, n - pos);
+            }
+            Node<V> created = new Node<V>();
+            nc[pos] = created;
+            keys = nk;
+            children = nc;
+            return created;
+        }
+
+        private int search(char c) {
+            int lo = 0;
+            int hi = keys.length - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                char k = keys[mid];
+                if (k < c) {
+                    lo = mid + 1;
+                } else if (k > c) {
+                    hi = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(lo + 1);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi.session;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 文件会话存储
+ *
+ * <p>
+ * 每个会话序列化为目录下的一个文件，先写临时文件再重命名，读取时不会看到写了一半的内容。
+ * 读取或写入失败的会话视为不存在。文件名为openid的十六进制编码，在不区分大小写的文件系统上也不会冲突。</p>
+ *
+ * <p>
+ * 淘汰到文件的粉丝可能不再访问，指定有效时间时由后台线程定期删除修改时间早于有效时间的文件。
+ * 会话写入文件时的最后访问时间不晚于文件修改时间，被删除的会话必然已过期。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+@Slf4j
+public class FileSessionTier implements SessionTier, Closeable {
+
+    private static final String SUFFIX = ".session";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * 清理间隔上下限(ms)
+     */
+    private static final long MIN_SWEEP_INTERVAL = 60 * 1000L;
+    private static final long MAX_SWEEP_INTERVAL = 3600 * 1000L;
+
+    private final File dir;
+    /**
+     * 定期清理过期文件，未指定有效时间时为null
+     */
+    private final ScheduledThreadPoolExecutor sweeper;
+
+    /**
+     * 创建文件会话存储，不清理过期文件
+     *
+     * @param dir 存储目录，不存在时创建
+     */
+    public FileSessionTier(File dir) {
+        this(dir, 0);
+    }
+
+    /**
+     * 创建文件会话存储
+     *
+     * @param dir 存储目录，不存在时创建
+     * @param ttlMillis 会话有效时间(ms)，修改时间早于该时间的文件被定期删除，0表示不清理
+     */
+    public FileSessionTier(File dir, final long ttlMillis) {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IllegalArgumentException("can not create session directory " + dir);
+        }
+        this.dir = dir;
+        if (ttlMillis <= 0) {
+            this.sweeper = null;
+            return;
+        }
+        long interval = Math.max(MIN_SWEEP_INTERVAL, Math.min(ttlMillis, MAX_SWEEP_INTERVAL));
+        this.sweeper = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "weixin4j-session-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.sweeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    int removed = expire(System.currentTimeMillis() - ttlMillis);
+                    if (removed > 0 && log.isDebugEnabled()) {
+                        log.debug("weixin4j:删除过期的会话文件" + removed + "个");
+                    }
+                } catch (RuntimeException ex) {
+                    log.error("weixin4j:会话文件清理异常", ex);
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private File fileOf(String openid) {
+        //openid区分大小写，而部分文件系统不区分，文件名统一按UTF-8转为小写十六进制
+        byte[] bytes = openid.getBytes(UTF_8);
+        StringBuilder sb = new StringBuilder(bytes.length * 2 + 1).append('x');
+        for (byte b : bytes) {
+            sb.append(HEX_DIGITS[(b >> 4) & 0x0f]).append(HEX_DIGITS[b & 0x0f]);
+        }
+        return new File(dir, sb.append(SUFFIX).toString());
+    }
+
+    @Override
+    public void store(Session session) {
+        File file = fileOf(session.getId());
+        File tmp = new File(file.getPath() + ".tmp" + Thread.currentThread().getId());
+        ObjectOutputStream out = null;
+        try {
+            out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeObject(session);
+            out.close();
+            out = null;
+            if (!tmp.renameTo(file)) {
+                //部分平台目标文件存在时无法重命名
+                file.delete();
+                if (!tmp.renameTo(file)) {
+                    throw new IOException("can not rename " + tmp + " to " + file);
+                }
+            }
+        } catch (IOException ex) {
+            log.warn("weixin4j:会话写入文件失败，已丢弃:" + session.getId(), ex);
+            tmp.delete();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    @Override
+    public Session load(String openid) {
+        File file = fileOf(openid);
+        if (!file.isFile()) {
+            return null;
+        }
+        ObjectInputStream in = null;
+        try {
+            in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+            Session session = (Session) in.readObject();
+            if (!openid.equals(session.getId())) {
+                //文件名冲突，不能把其他粉丝的会话交给当前粉丝
+                log.warn("weixin4j:会话文件不属于" + openid + "，视为不存在:" + file);
+                return null;
+            }
+            return session;
+        } catch (Exception ex) {
+            log.warn("weixin4j:会话文件读取失败，已删除:" + file, ex);
+            closeQuietly(in);
+            in = null;
+            file.delete();
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    @Override
+    public void remove(String openid) {
+        File file = fileOf(openid);
+        if (file.exists() && !file.delete()) {
+            log.warn("weixin4j:会话文件删除失败:" + file);
+        }
+    }
+
+    @Override
+    public void clear() {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().endsWith(SUFFIX)) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * 删除修改时间早于指定时间的会话文件，以及残留的临时文件
+     *
+     * @param expireBefore 过期时间点(ms)
+     * @return 删除的会话文件数
+     */
+    public int expire(long expireBefore) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        int removed = 0;
+        for (File file : files) {
+            String name = file.getName();
+            boolean session = name.endsWith(SUFFIX);
+            if ((session || name.contains(SUFFIX + ".tmp")) && file.lastModified() < expireBefore && file.delete() && session) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 停止定期清理，已写入的文件保留
+     */
+    @Override
+    public void close() {
+        if (sweeper != null) {
+            sweeper.shutdown();
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ex) {
+                //忽略
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi.session;
+
+/**
+ * 访问频率估算（Count-Min Sketch）
+ *
+ * <p>
+ * 每个键映射到4个计数器，频率取最小值，计数上限15；累计次数达到容量的10倍时所有计数减半，
+ * 使频率随时间衰减。非线程安全，由调用方加锁。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+final class FrequencySketch {
+
+    private static final int MAX_COUNT = 15;
+
+    private final byte[] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int capacity) {
+        int size = Integer.highestOneBit(Math.max(16, capacity) - 1) << 2;
+        this.table = new byte[size];
+        this.mask = size - 1;
+        this.sampleSize = Math.max(160, capacity * 10);
+    }
+
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x45d9f3b;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @param key 键
+     */
+    void increment(Object key) {
+        int h = spread(key.hashCode());
+        //双重哈希，步长为奇数
+        int step = (Integer.rotateLeft(h, 16) * 31) | 1;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            int index = (h + i * step) & mask;
+            if (table[index] < MAX_COUNT) {
+                table[index]++;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * 估算访问频率
+     *
+     * @param key 键
+     * @return 频率，0~15
+     */
+    int frequency(Object key) {
+        int h = spread(key.hashCode());
+        int step = (Integer.rotateLeft(h, 16) * 31) | 1;
+        int min = MAX_COUNT;
+        for (int i = 0; i < 4; i++) {
+            min = Math.min(min, table[(h + i * step) & mask]);
+        }
+        return min;
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (byte) (table[i] >>> 1);
+        }
+        additions >>>= 1;
+    }
+}
@@ -0,0 +1,416 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi.session;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 本地会话存储
+ *
+ * <p>
+ * 会话按最后访问时间过期；超过容量时按W-TinyLFU淘汰：新会话先进入占容量1%的窗口区，
+ * 窗口满后与主区中最久未访问的会话比较访问频率，频率低的一方被淘汰，
+ * 主区再分为试用区和保护区（80%），在试用区被再次访问的会话进入保护区。
+ * 偶尔出现的大量一次性会话因此不会把多轮对话中的活跃会话挤出内存。</p>
+ *
+ * <p>
+ * 配置了二级存储时，按容量淘汰的会话写入二级存储，再次访问时读回内存；
+ * 过期和删除的会话同时从二级存储中删除。二级存储的读写不在锁内进行。
+ * 淘汰后不再访问的会话由二级存储自行清理，见<tt>FileSessionTier</tt>。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public class LocalSessionStore implements SessionStore {
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+    /**
+     * 每次写入时最多清理的过期会话数
+     */
+    private static final int EXPIRE_BATCH = 16;
+
+    private final int maximumSize;
+    private final int windowMax;
+    private final int protectedMax;
+    private final long ttlMillis;
+    private final SessionTier tier;
+    private final Map<String, Node> data = new HashMap<String, Node>();
+    private final AccessList window = new AccessList();
+    private final AccessList probation = new AccessList();
+    private final AccessList protectedList = new AccessList();
+    private final FrequencySketch sketch;
+    /**
+     * 已淘汰、尚未写入二级存储的会话
+     */
+    private final ConcurrentMap<String, Session> spilling = new ConcurrentHashMap<String, Session>();
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long expiredCount;
+
+    /**
+     * 创建仅使用内存的会话存储
+     *
+     * @param maximumSize 内存中的最大会话数
+     * @param ttlMillis 会话有效时间(ms)，自最后访问起计算
+     */
+    public LocalSessionStore(int maximumSize, long ttlMillis) {
+        this(maximumSize, ttlMillis, null);
+    }
+
+    /**
+     * 创建会话存储
+     *
+     * @param maximumSize 内存中的最大会话数
+     * @param ttlMillis 会话有效时间(ms)，自最后访问起计算
+     * @param tier 二级存储，为null时淘汰的会话直接丢弃
+     */
+    public LocalSessionStore(int maximumSize, long ttlMillis, SessionTier tier) {
+        if (maximumSize <= 0 || ttlMillis <= 0) {
+            throw new IllegalArgumentException("maximumSize and ttlMillis must be positive");
+        }
+        this.maximumSize = maximumSize;
+        this.windowMax = Math.max(1, maximumSize / 100);
+        this.protectedMax = Math.max(1, (maximumSize - windowMax) * 4 / 5);
+        this.ttlMillis = ttlMillis;
+        this.tier = tier;
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    @Override
+    public Session get(String openid) {
+        long now = System.currentTimeMillis();
+        List<String> expired = null;
+        synchronized (this) {
+            Node node = data.get(openid);
+            if (node != null) {
+                if (!isExpired(node.session, now)) {
+                    hitCount++;
+                    node.session.touch(now);
+                    onAccess(node);
+                    return node.session;
+                }
+                removeNode(node);
+                expiredCount++;
+                expired = new ArrayList<String>(1);
+                expired.add(openid);
+            }
+            missCount++;
+        }
+        if (expired != null) {
+            removeFromTier(expired);
+            return null;
+        }
+        if (tier == null) {
+            return null;
+        }
+        Session session = spilling.get(openid);
+        if (session == null) {
+            session = tier.load(openid);
+        }
+        if (session == null) {
+            return null;
+        }
+        if (isExpired(session, now)) {
+            tier.remove(openid);
+            return null;
+        }
+        session.touch(now);
+        return insert(session);
+    }
+
+    @Override
+    public Session getOrCreate(String openid) {
+        Session session = get(openid);
+        return session != null ? session : insert(new Session(openid));
+    }
+
+    @Override
+    public void remove(String openid) {
+        synchronized (this) {
+            Node node = data.get(openid);
+            if (node != null) {
+                removeNode(node);
+            }
+        }
+        if (tier != null) {
+            spilling.remove(openid);
+            tier.remove(openid);
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return data.size();
+    }
+
+    @Override
+    public void clear() {
+        synchronized (this) {
+            data.clear();
+            window.clear();
+            probation.clear();
+            protectedList.clear();
+        }
+        if (tier != null) {
+            spilling.clear();
+            tier.clear();
+        }
+    }
+
+    /**
+     * 加入会话，已存在时返回已有的会话
+     */
+    private Session insert(Session session) {
+        List<Session> evicted = new ArrayList<Session>(1);
+        List<String> expired = new ArrayList<String>(0);
+        Session result;
+        synchronized (this) {
+            Node existing = data.get(session.getId());
+            if (existing != null) {
+                onAccess(existing);
+                return existing.session;
+            }
+            expire(System.currentTimeMillis(), expired);
+            Node node = new Node(session);
+            data.put(session.getId(), node);
+            sketch.increment(session.getId());
+            window.addLast(node);
+            evict(evicted);
+            result = session;
+        }
+        removeFromTier(expired);
+        spill(evicted);
+        return result;
+    }
+
+    private boolean isExpired(Session session, long now) {
+        return now - session.getLastAccessedTime() >= ttlMillis;
+    }
+
+    private void onAccess(Node node) {
+        sketch.increment(node.session.getId());
+        switch (node.queue) {
+            case WINDOW:
+                window.moveToLast(node);
+                break;
+            case PROBATION:
+                //试用区中再次访问的会话晋升到保护区
+                probation.remove(node);
+                node.queue = PROTECTED;
+                protectedList.addLast(node);
+                if (protectedList.size > protectedMax) {
+                    Node demoted = protectedList.first;
+                    protectedList.remove(demoted);
+                    demoted.queue = PROBATION;
+                    probation.addLast(demoted);
+                }
+                break;
+            default:
+                protectedList.moveToLast(node);
+                break;
+        }
+    }
+
+    private void evict(List<Session> evicted) {
+        while (window.size > windowMax) {
+            Node candidate = window.first;
+            window.remove(candidate);
+            candidate.queue = PROBATION;
+            probation.addLast(candidate);
+            if (data.size() <= maximumSize) {
+                continue;
+            }
+            Node victim = probation.first != candidate ? probation.first : protectedList.first;
+            if (victim == null || sketch.frequency(candidate.session.getId()) <= sketch.frequency(victim.session.getId())) {
+                //窗口中的会话访问频率不高于主区的会话时，淘汰窗口中的会话
+                victim = candidate;
+            }
+            removeNode(victim);
+            evictionCount++;
+            evicted.add(victim.session);
+        }
+    }
+
+    private void expire(long now, List<String> expired) {
+        AccessList[] lists = {window, probation, protectedList};
+        int removed = 0;
+        for (AccessList list : lists) {
+            while (list.first != null && removed < EXPIRE_BATCH && isExpired(list.first.session, now)) {
+                Node node = list.first;
+                removeNode(node);
+                expiredCount++;
+                expired.add(node.session.getId());
+                removed++;
+            }
+        }
+    }
+
+    private void removeNode(Node node) {
+        data.remove(node.session.getId());
+        switch (node.queue) {
+            case WINDOW:
+                window.remove(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                break;
+            default:
+                protectedList.remove(node);
+                break;
+        }
+    }
+
+    private void spill(List<Session> evicted) {
+        if (tier == null) {
+            return;
+        }
+        for (Session session : evicted) {
+            spilling.put(session.getId(), session);
+        }
+        for (Session session : evicted) {
+            if (spilling.get(session.getId()) != session) {
+                //已被删除（如取消关注）或再次淘汰，不再写入
+                continue;
+            }
+            tier.store(session);
+            if (!spilling.remove(session.getId(), session) && !spilling.containsKey(session.getId())) {
+                //写入期间会话被删除，撤销本次写入
+                tier.remove(session.getId());
+            }
+        }
+    }
+
+    private void removeFromTier(List<String> openids) {
+        if (tier == null) {
+            return;
+        }
+        for (String openid : openids) {
+            tier.remove(openid);
+        }
+    }
+
+    /**
+     * 获取命中次数
+     *
+     * @return 命中次数
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * 获取未命中次数（含从二级存储读回的会话）
+     *
+     * @return 未命中次数
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * 获取按容量淘汰的会话数
+     *
+     * @return 淘汰数
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * 获取过期的会话数
+     *
+     * @return 过期数
+     */
+    public synchronized long getExpiredCount() {
+        return expiredCount;
+    }
+
+    private static final class Node {
+
+        final Session session;
+        int queue = WINDOW;
+        Node prev;
+        Node next;
+
+        Node(Session session) {
+            this.session = session;
+        }
+    }
+
+    /**
+     * 按访问顺序排列的双向链表，头部最久未访问
+     */
+    private static final class AccessList {
+
+        Node first;
+        Node last;
+        int size;
+
+        void addLast(Node node) {
+            node.prev = last;
+            node.next = null;
+            if (last == null) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+            size++;
+        }
+
+        void remove(Node node) {
+            if (node.prev == null) {
+                first = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                last = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            size--;
+        }
+
+        void moveToLast(Node node) {
+            if (node != last) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        void clear() {
+            first = null;
+            last = null;
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi.session;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 粉丝会话
+ *
+ * <p>
+ * 保存同一粉丝多轮对话之间的状态，例如注册、查询订单等多步流程的当前步骤。
+ * 会话属性线程安全；启用文件存储时属性值须可序列化，否则会话被换出内存时丢弃。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public class Session implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String id;
+    private final long creationTime;
+    private volatile long lastAccessedTime;
+    private final ConcurrentMap<String, Object> attributes = new ConcurrentHashMap<String, Object>();
+
+    /**
+     * 创建会话
+     *
+     * @param id 粉丝openid
+     */
+    public Session(String id) {
+        this.id = id;
+        this.creationTime = System.currentTimeMillis();
+        this.lastAccessedTime = creationTime;
+    }
+
+    /**
+     * 获取会话标识
+     *
+     * @return 粉丝openid
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * 获取创建时间
+     *
+     * @return 创建时间(ms)
+     */
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    /**
+     * 获取最后访问时间
+     *
+     * @return 最后访问时间(ms)
+     */
+    public long getLastAccessedTime() {
+        return lastAccessedTime;
+    }
+
+    void touch(long now) {
+        lastAccessedTime = now;
+    }
+
+    /**
+     * 获取属性
+     *
+     * @param name 属性名
+     * @return 属性值，不存在时返回null
+     */
+    public Object getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    /**
+     * 设置属性
+     *
+     * @param name 属性名
+     * @param value 属性值，为null时移除
+     */
+    public void setAttribute(String name, Object value) {
+        if (value == null) {
+            attributes.remove(name);
+        } else {
+            attributes.put(name, value);
+        }
+    }
+
+    /**
+     * 移除属性
+     *
+     * @param name 属性名
+     * @return 原属性值
+     */
+    public Object removeAttribute(String name) {
+        return attributes.remove(name);
+    }
+
+    /**
+     * 获取全部属性名
+     *
+     * @return 属性名集合
+     */
+    public Set<String> getAttributeNames() {
+        return Collections.unmodifiableSet(attributes.keySet());
+    }
+
+    /**
+     * 清空全部属性
+     */
+    public void clear() {
+        attributes.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "Session{id=" + id + ", attributes=" + attributes + "}";
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi.session;
+
+/**
+ * 粉丝会话存储
+ *
+ * <p>
+ * 供<tt>INormalMessageHandler</tt>、<tt>IEventMessageHandler</tt>的实现类在多次消息之间保存状态，
+ * 通过<tt>HandlerFactory.getSessionStore()</tt>获取共享实例：</p>
+ * <pre>
+ * Session session = HandlerFactory.getSessionStore().getOrCreate(msg.getFromUserName());
+ * Integer step = (Integer) session.getAttribute("register.step");
+ * </pre>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public interface SessionStore {
+
+    /**
+     * 获取会话，并刷新最后访问时间
+     *
+     * @param openid 粉丝openid
+     * @return 会话，不存在或已过期时返回null
+     */
+    Session get(String openid);
+
+    /**
+     * 获取会话，不存在时创建
+     *
+     * @param openid 粉丝openid
+     * @return 会话
+     */
+    Session getOrCreate(String openid);
+
+    /**
+     * 删除会话
+     *
+     * @param openid 粉丝openid
+     */
+    void remove(String openid);
+
+    /**
+     * 获取内存中的会话数
+     *
+     * @return 会话数
+     */
+    int size();
+
+    /**
+     * 删除全部会话
+     */
+    void clear();
+}
@@ -0,0 +1,60 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.spi.session;
+
+/**
+ * 会话二级存储
+ *
+ * <p>
+ * 内存中按容量淘汰的会话写入二级存储，再次访问时读回内存。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ * @see org.weixin4j.spi.session.FileSessionTier
+ */
+public interface SessionTier {
+
+    /**
+     * 保存会话
+     *
+     * @param session 会话
+     */
+    void store(Session session);
+
+    /**
+     * 读取会话
+     *
+     * @param openid 粉丝openid
+     * @return 会话，不存在时返回null
+     */
+    Session load(String openid);
+
+    /**
+     * 删除会话
+     *
+     * @param openid 粉丝openid
+     */
+    void remove(String openid);
+
+    /**
+     * 删除全部会话
+     */
+    void clear();
+}
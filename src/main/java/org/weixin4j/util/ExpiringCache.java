@@ -0,0 +1,235 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 分段加锁的有界过期缓存
+ *
+ * <p>
+ * 按键的哈希值分为若干段，每段为一个按插入顺序排列的<tt>LinkedHashMap</tt>，由段锁保护。
+ * 每段容量固定，写入时淘汰最早写入的条目及已过期的条目，总内存占用不超过构造时指定的容量。</p>
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public class ExpiringCache<K, V> {
+
+    private final Segment<K, V>[] segments;
+    private final int mask;
+    private final long ttlNanos;
+
+    /**
+     * 创建缓存
+     *
+     * @param capacity 最大条目数
+     * @param ttlMillis 条目有效时间(ms)
+     * @param concurrency 分段数，自动调整为2的幂
+     */
+    @SuppressWarnings("unchecked")
+    public ExpiringCache(int capacity, long ttlMillis, int concurrency) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than zero");
+        }
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("ttlMillis must be greater than zero");
+        }
+        int size = 1;
+        while (size < concurrency && size < capacity) {
+            size <<= 1;
+        }
+        this.segments = (Segment<K, V>[]) new Segment<?, ?>[size];
+        int perSegment = Math.max(1, (capacity + size - 1) / size);
+        for (int i = 0; i < size; i++) {
+            segments[i] = new Segment<K, V>(perSegment);
+        }
+        this.mask = size - 1;
+        this.ttlNanos = ttlMillis * 1000000L;
+    }
+
+    private Segment<K, V> segmentFor(Object key) {
+        int h = key.hashCode();
+        //打散高位，避免哈希值低位相同的键集中在同一段
+        h ^= (h >>> 16);
+        return segments[h & mask];
+    }
+
+    /**
+     * 获取未过期的值
+     *
+     * @param key 键
+     * @return 值，不存在或已过期时返回null
+     */
+    public V get(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        long now = System.nanoTime();
+        synchronized (segment) {
+            Entry<V> entry = segment.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (now - entry.expireAt >= 0) {
+                segment.remove(key);
+                return null;
+            }
+            return entry.value;
+        }
+    }
+
+    /**
+     * 写入值，覆盖原有值并重新计算有效时间
+     *
+     * @param key 键
+     * @param value 值
+     */
+    public void put(K key, V value) {
+        Segment<K, V> segment = segmentFor(key);
+        long now = System.nanoTime();
+        synchronized (segment) {
+            segment.put(key, new Entry<V>(value, now + ttlNanos));
+            segment.evictExpired(now);
+        }
+    }
+
+    /**
+     * 键不存在或已过期时写入值
+     *
+     * @param key 键
+     * @param value 值
+     * @return 已存在的未过期值，写入成功时返回null
+     */
+    public V putIfAbsent(K key, V value) {
+        Segment<K, V> segment = segmentFor(key);
+        long now = System.nanoTime();
+        synchronized (segment) {
+            Entry<V> entry = segment.get(key);
+            if (entry != null && now - entry.expireAt < 0) {
+                return entry.value;
+            }
+            segment.put(key, new Entry<V>(value, now + ttlNanos));
+            segment.evictExpired(now);
+            return null;
+        }
+    }
+
+    /**
+     * 键当前对应指定值时替换为新值，不改变有效时间
+     *
+     * @param key 键
+     * @param oldValue 期望的原值
+     * @param newValue 新值
+     * @return 是否替换成功
+     */
+    public boolean replace(K key, V oldValue, V newValue) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            Entry<V> entry = segment.get(key);
+            if (entry == null || entry.value != oldValue) {
+                return false;
+            }
+            entry.value = newValue;
+            return true;
+        }
+    }
+
+    /**
+     * 删除键
+     *
+     * @param key 键
+     */
+    public void remove(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    /**
+     * 获取当前条目数（包含尚未清理的过期条目）
+     *
+     * @return 条目数
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    private static final class Entry<V> {
+
+        V value;
+        final long expireAt;
+
+        Entry(V value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private static final class Segment<K, V> extends LinkedHashMap<Object, Entry<V>> {
+
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(Math.min(capacity, 1024) * 4 / 3 + 1, 0.75f, false);
+            this.capacity = capacity;
+        }
+
+        /**
+         * 从最早写入的条目开始清理已过期条目，遇到未过期条目即停止
+         */
+        void evictExpired(long now) {
+            Iterator<Entry<V>> it = values().iterator();
+            while (it.hasNext()) {
+                if (now - it.next().expireAt >= 0) {
+                    it.remove();
+                } else {
+                    break;
+                }
+            }
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, Entry<V>> eldest) {
+            return size() > capacity;
+        }
+    }
+}
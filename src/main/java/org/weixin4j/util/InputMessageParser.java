@@ -0,0 +1,378 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.util;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.apache.commons.lang.StringUtils;
+import org.weixin4j.Configuration;
+import org.weixin4j.model.message.InputMessage;
+import org.weixin4j.model.message.PicList;
+import org.weixin4j.model.message.ScanCodeInfo;
+import org.weixin4j.model.message.SendLocationInfo;
+import org.weixin4j.model.message.SendPicsInfo;
+
+/**
+ * 微信推送消息解析器
+ *
+ * <p>
+ * 微信推送的XML结构固定，因此直接使用StAX按元素名逐个读取并赋值到<tt>InputMessage</tt>，
+ * 避免JAXB反射绑定的开销。通过配置weixin4j.message.parser=jaxb可切换为JAXB解析，
+ * JAXBContext全局只创建一次。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public final class InputMessageParser {
+
+    /**
+     * 是否使用JAXB解析
+     */
+    private static final boolean USE_JAXB = "jaxb".equalsIgnoreCase(Configuration.getProperty("weixin4j.message.parser", "stax"));
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    private InputMessageParser() {
+    }
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        //CDATA与普通文本合并读取
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        //禁用DTD和外部实体，防止XXE攻击
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return factory;
+    }
+
+    /**
+     * JAXBContext延迟初始化
+     */
+    private static final class JaxbHolder {
+
+        static final JAXBContext CONTEXT;
+
+        static {
+            try {
+                CONTEXT = JAXBContext.newInstance(InputMessage.class);
+            } catch (JAXBException ex) {
+                throw new ExceptionInInitializerError(ex);
+            }
+        }
+    }
+
+    /**
+     * 解析XML字符串
+     *
+     * @param xml 微信推送的XML
+     * @return 消息对象
+     * @throws XMLStreamException XML格式错误
+     */
+    public static InputMessage parse(String xml) throws XMLStreamException {
+        return parse(new StringReader(xml));
+    }
+
+    /**
+     * 解析XML字符流
+     *
+     * @param reader 字符流
+     * @return 消息对象
+     * @throws XMLStreamException XML格式错误
+     */
+    public static InputMessage parse(Reader reader) throws XMLStreamException {
+        return parse(FACTORY.createXMLStreamReader(reader));
+    }
+
+    /**
+     * 解析XML字节流，按XML声明中的编码解码（默认UTF-8）
+     *
+     * @param in 字节流
+     * @return 消息对象
+     * @throws XMLStreamException XML格式错误
+     */
+    public static InputMessage parse(InputStream in) throws XMLStreamException {
+        return parse(FACTORY.createXMLStreamReader(in));
+    }
+
+    /**
+     * 读取安全模式下推送XML中的Encrypt密文
+     *
+     * @param in 字节流
+     * @return Encrypt节点内容，不存在时返回null
+     * @throws XMLStreamException XML格式错误
+     * @since 0.1.6
+     */
+    public static String parseEncrypt(InputStream in) throws XMLStreamException {
+        XMLStreamReader xml = FACTORY.createXMLStreamReader(in);
+        try {
+            //定位到根节点<xml>
+            xml.nextTag();
+            while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                if ("Encrypt".equals(xml.getLocalName())) {
+                    return xml.getElementText();
+                }
+                skip(xml);
+            }
+            return null;
+        } finally {
+            xml.close();
+        }
+    }
+
+    private static InputMessage parse(XMLStreamReader xml) throws XMLStreamException {
+        try {
+            return USE_JAXB ? unmarshal(xml) : read(xml);
+        } finally {
+            xml.close();
+        }
+    }
+
+    /**
+     * 使用全局缓存的JAXBContext解析
+     */
+    private static InputMessage unmarshal(XMLStreamReader xml) throws XMLStreamException {
+        try {
+            Unmarshaller unmarshaller = JaxbHolder.CONTEXT.createUnmarshaller();
+            return (InputMessage) unmarshaller.unmarshal(xml);
+        } catch (JAXBException ex) {
+            throw new XMLStreamException(ex);
+        }
+    }
+
+    private static InputMessage read(XMLStreamReader xml) throws XMLStreamException {
+        InputMessage msg = new InputMessage();
+        //定位到根节点<xml>
+        xml.nextTag();
+        while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String name = xml.getLocalName();
+            switch (name) {
+                case "ToUserName":
+                    msg.setToUserName(xml.getElementText());
+                    break;
+                case "FromUserName":
+                    msg.setFromUserName(xml.getElementText());
+                    break;
+                case "CreateTime":
+                    msg.setCreateTime(toLong(xml.getElementText()));
+                    break;
+                case "MsgType":
+                    msg.setMsgType(xml.getElementText());
+                    break;
+                case "MsgId":
+                    msg.setMsgId(toLong(xml.getElementText()));
+                    break;
+                case "Content":
+                    msg.setContent(xml.getElementText());
+                    break;
+                case "PicUrl":
+                    msg.setPicUrl(xml.getElementText());
+                    break;
+                case "MediaId":
+                    msg.setMediaId(xml.getElementText());
+                    break;
+                case "Format":
+                    msg.setFormat(xml.getElementText());
+                    break;
+                case "Recognition":
+                    msg.setRecognition(xml.getElementText());
+                    break;
+                case "ThumbMediaId":
+                    msg.setThumbMediaId(xml.getElementText());
+                    break;
+                case "Location_X":
+                    msg.setLocation_X(xml.getElementText());
+                    break;
+                case "Location_Y":
+                    msg.setLocationY(xml.getElementText());
+                    break;
+                case "Scale":
+                    msg.setScale(toLong(xml.getElementText()));
+                    break;
+                case "Label":
+                    msg.setLabel(xml.getElementText());
+                    break;
+                case "Title":
+                    msg.setTitle(xml.getElementText());
+                    break;
+                case "Description":
+                    msg.setDescription(xml.getElementText());
+                    break;
+                case "Url":
+                    msg.setUrl(xml.getElementText());
+                    break;
+                case "Event":
+                    msg.setEvent(xml.getElementText());
+                    break;
+                case "EventKey":
+                    msg.setEventKey(xml.getElementText());
+                    break;
+                case "Ticket":
+                    msg.setTicket(xml.getElementText());
+                    break;
+                case "MenuId":
+                    msg.setMenuId(xml.getElementText());
+                    break;
+                case "Latitude":
+                    msg.setLatitude(xml.getElementText());
+                    break;
+                case "Longitude":
+                    msg.setLongitude(xml.getElementText());
+                    break;
+                case "Precision":
+                    msg.setPrecision(xml.getElementText());
+                    break;
+                case "MsgID":
+                    msg.setMsgID(xml.getElementText());
+                    break;
+                case "Status":
+                    msg.setStatus(xml.getElementText());
+                    break;
+                case "TotalCount":
+                    msg.setTotalCount(toInt(xml.getElementText()));
+                    break;
+                case "FilterCount":
+                    msg.setFilterCount(toInt(xml.getElementText()));
+                    break;
+                case "SentCount":
+                    msg.setSentCount(toInt(xml.getElementText()));
+                    break;
+                case "ErrorCount":
+                    msg.setErrorCount(toInt(xml.getElementText()));
+                    break;
+                case "ScanCodeInfo":
+                    msg.setScanCodeInfo(readScanCodeInfo(xml));
+                    break;
+                case "SendPicsInfo":
+                    msg.setSendPicsInfo(readSendPicsInfo(xml));
+                    break;
+                case "SendLocationInfo":
+                    msg.setSendLocationInfo(readSendLocationInfo(xml));
+                    break;
+                default:
+                    skip(xml);
+                    break;
+            }
+        }
+        return msg;
+    }
+
+    private static ScanCodeInfo readScanCodeInfo(XMLStreamReader xml) throws XMLStreamException {
+        ScanCodeInfo info = new ScanCodeInfo();
+        while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String name = xml.getLocalName();
+            if ("ScanType".equals(name)) {
+                info.setScanType(xml.getElementText());
+            } else if ("ScanResult".equals(name)) {
+                info.setScanResult(xml.getElementText());
+            } else {
+                skip(xml);
+            }
+        }
+        return info;
+    }
+
+    private static SendPicsInfo readSendPicsInfo(XMLStreamReader xml) throws XMLStreamException {
+        SendPicsInfo info = new SendPicsInfo();
+        while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String name = xml.getLocalName();
+            if ("Count".equals(name)) {
+                info.setCount(toInt(xml.getElementText()));
+            } else if ("PicList".equals(name)) {
+                List<PicList> items = new ArrayList<PicList>();
+                while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                    if ("item".equals(xml.getLocalName())) {
+                        PicList item = new PicList();
+                        while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                            if ("PicMd5Sum".equals(xml.getLocalName())) {
+                                item.setPicMd5Sum(xml.getElementText());
+                            } else {
+                                skip(xml);
+                            }
+                        }
+                        items.add(item);
+                    } else {
+                        skip(xml);
+                    }
+                }
+                info.setPicList(items);
+            } else {
+                skip(xml);
+            }
+        }
+        return info;
+    }
+
+    private static SendLocationInfo readSendLocationInfo(XMLStreamReader xml) throws XMLStreamException {
+        SendLocationInfo info = new SendLocationInfo();
+        while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String name = xml.getLocalName();
+            if ("Location_X".equals(name)) {
+                info.setLocation_X(toDouble(xml.getElementText()));
+            } else if ("Location_Y".equals(name)) {
+                info.setLocation_Y(toDouble(xml.getElementText()));
+            } else if ("Scale".equals(name)) {
+                info.setScale(toInt(xml.getElementText()));
+            } else if ("Label".equals(name)) {
+                info.setLabel(xml.getElementText());
+            } else if ("Poiname".equals(name)) {
+                info.setPoiname(xml.getElementText());
+            } else {
+                skip(xml);
+            }
+        }
+        return info;
+    }
+
+    /**
+     * 跳过当前元素及其所有子元素
+     */
+    private static void skip(XMLStreamReader xml) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static Long toLong(String value) {
+        return StringUtils.isBlank(value) ? null : Long.valueOf(value.trim());
+    }
+
+    private static int toInt(String value) {
+        return StringUtils.isBlank(value) ? 0 : Integer.parseInt(value.trim());
+    }
+
+    private static double toDouble(String value) {
+        return StringUtils.isBlank(value) ? 0 : Double.parseDouble(value.trim());
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.util;
+
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Random;
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.stream.XMLStreamException;
+import org.apache.commons.codec.binary.Base64;
+import org.weixin4j.WeixinException;
+
+/**
+ * 消息加解密（兼容模式、安全模式）
+ *
+ * <p>
+ * 按微信公众平台消息加解密方案实现：AES-256-CBC，密钥为EncodingAESKey Base64解码后的32字节，
+ * IV为密钥前16字节，明文格式为 random(16) + msg_len(4) + msg + appid，按32字节做PKCS#7补位。</p>
+ *
+ * <p>
+ * 密钥在构造时一次性计算，<tt>Cipher</tt>和<tt>MessageDigest</tt>按线程复用，
+ * <tt>Cipher</tt>初始化后每次<tt>doFinal</tt>都会回到初始化状态，无需重复初始化。
+ * 实例线程安全，每个公众号创建一个即可。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public class MessageCrypt {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BLOCK_SIZE = 32;
+    private static final char[] HEX_DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+    private static final ThreadLocal<MessageDigest> SHA1_DIGEST = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    };
+    private static final ThreadLocal<Random> RANDOM = new ThreadLocal<Random>() {
+        @Override
+        protected Random initialValue() {
+            return new SecureRandom();
+        }
+    };
+
+    private final String token;
+    private final byte[] appIdBytes;
+    private final SecretKeySpec keySpec;
+    private final IvParameterSpec ivSpec;
+    private final ThreadLocal<Cipher> encryptCipher;
+    private final ThreadLocal<Cipher> decryptCipher;
+
+    /**
+     * 创建加解密工具
+     *
+     * @param token 公众平台上填写的Token
+     * @param encodingAesKey 公众平台上填写的EncodingAESKey(43位)
+     * @param appId 公众号appId
+     * @throws IllegalArgumentException EncodingAESKey格式错误
+     */
+    public MessageCrypt(String token, String encodingAesKey, String appId) {
+        if (encodingAesKey == null || encodingAesKey.length() != 43) {
+            throw new IllegalArgumentException("encodingAesKey must be 43 characters");
+        }
+        byte[] aesKey = Base64.decodeBase64(encodingAesKey + "=");
+        if (aesKey.length != 32) {
+            throw new IllegalArgumentException("encodingAesKey is not valid base64");
+        }
+        this.token = token;
+        this.appIdBytes = appId == null ? new byte[0] : appId.getBytes(UTF_8);
+        this.keySpec = new SecretKeySpec(aesKey, "AES");
+        this.ivSpec = new IvParameterSpec(aesKey, 0, 16);
+        this.encryptCipher = cipher(Cipher.ENCRYPT_MODE);
+        this.decryptCipher = cipher(Cipher.DECRYPT_MODE);
+    }
+
+    private ThreadLocal<Cipher> cipher(final int mode) {
+        return new ThreadLocal<Cipher>() {
+            @Override
+            protected Cipher initialValue() {
+                try {
+                    Cipher cipher = Cipher.getInstance("AES/CBC/NoPadding");
+                    cipher.init(mode, keySpec, ivSpec);
+                    return cipher;
+                } catch (GeneralSecurityException ex) {
+                    throw new IllegalStateException("AES-256 is not available, please install JCE unlimited strength policy", ex);
+                }
+            }
+        };
+    }
+
+    /**
+     * 计算消息签名 msg_signature
+     *
+     * @param timestamp 时间戳
+     * @param nonce 随机数
+     * @param encrypt 密文
+     * @return 签名
+     */
+    public String signature(String timestamp, String nonce, String encrypt) {
+        String[] values = {token, timestamp, nonce, encrypt};
+        Arrays.sort(values);
+        MessageDigest digest = SHA1_DIGEST.get();
+        for (String value : values) {
+            digest.update(value.getBytes(UTF_8));
+        }
+        byte[] bytes = digest.digest();
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0x0f];
+            hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0x0f];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * 校验消息签名 msg_signature
+     *
+     * @param msgSignature 请求中的msg_signature
+     * @param timestamp 时间戳
+     * @param nonce 随机数
+     * @param encrypt 密文
+     * @return 签名是否正确
+     */
+    public boolean verify(String msgSignature, String timestamp, String nonce, String encrypt) {
+        if (msgSignature == null || timestamp == null || nonce == null || encrypt == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(signature(timestamp, nonce, encrypt).getBytes(UTF_8), msgSignature.getBytes(UTF_8));
+    }
+
+    /**
+     * 解密消息
+     *
+     * @param encrypt Encrypt节点中的密文
+     * @return 明文XML
+     * @throws WeixinException 解密失败或appId不一致
+     */
+    public String decrypt(String encrypt) throws WeixinException {
+        byte[] plain;
+        try {
+            plain = decryptCipher.get().doFinal(Base64.decodeBase64(encrypt));
+        } catch (GeneralSecurityException ex) {
+            //异常后Cipher状态不确定，丢弃本线程实例
+            decryptCipher.remove();
+            throw new WeixinException("消息解密失败：", ex);
+        }
+        //去除PKCS#7补位
+        int pad = plain.length == 0 ? 0 : plain[plain.length - 1] & 0xff;
+        if (pad < 1 || pad > BLOCK_SIZE || plain.length < 20 + pad) {
+            throw new WeixinException("消息解密失败：补位错误");
+        }
+        int end = plain.length - pad;
+        int msgLength = ((plain[16] & 0xff) << 24) | ((plain[17] & 0xff) << 16) | ((plain[18] & 0xff) << 8) | (plain[19] & 0xff);
+        if (msgLength < 0 || 20 + msgLength > end) {
+            throw new WeixinException("消息解密失败：消息长度错误");
+        }
+        int appIdOffset = 20 + msgLength;
+        if (end - appIdOffset != appIdBytes.length
+                || !MessageDigest.isEqual(Arrays.copyOfRange(plain, appIdOffset, end), appIdBytes)) {
+            throw new WeixinException("消息解密失败：appId不一致");
+        }
+        return new String(plain, 20, msgLength, UTF_8);
+    }
+
+    /**
+     * 校验签名并解密推送的请求体
+     *
+     * @param body 请求体字节流
+     * @param msgSignature 请求中的msg_signature
+     * @param timestamp 时间戳
+     * @param nonce 随机数
+     * @return 明文XML
+     * @throws WeixinException 请求体格式错误、签名错误或解密失败
+     */
+    public String decryptMessage(InputStream body, String msgSignature, String timestamp, String nonce) throws WeixinException {
+        String encrypt;
+        try {
+            encrypt = InputMessageParser.parseEncrypt(body);
+        } catch (XMLStreamException ex) {
+            throw new WeixinException("消息解析错误：", ex);
+        }
+        if (encrypt == null) {
+            throw new WeixinException("消息中缺少Encrypt节点");
+        }
+        if (!verify(msgSignature, timestamp, nonce, encrypt)) {
+            throw new WeixinException("消息签名msg_signature校验失败");
+        }
+        return decrypt(encrypt);
+    }
+
+    /**
+     * 加密消息
+     *
+     * @param xml 明文XML
+     * @return Base64编码的密文
+     * @throws WeixinException 加密失败
+     */
+    public String encrypt(String xml) throws WeixinException {
+        byte[] msg = xml.getBytes(UTF_8);
+        int length = 20 + msg.length + appIdBytes.length;
+        int pad = BLOCK_SIZE - (length % BLOCK_SIZE);
+        byte[] plain = new byte[length + pad];
+        byte[] random = new byte[16];
+        RANDOM.get().nextBytes(random);
+        System.arraycopy(random, 0, plain, 0, 16);
+        plain[16] = (byte) (msg.length >>> 24);
+        plain[17] = (byte) (msg.length >>> 16);
+        plain[18] = (byte) (msg.length >>> 8);
+        plain[19] = (byte) msg.length;
+        System.arraycopy(msg, 0, plain, 20, msg.length);
+        System.arraycopy(appIdBytes, 0, plain, 20 + msg.length, appIdBytes.length);
+        Arrays.fill(plain, length, plain.length, (byte) pad);
+        try {
+            return Base64.encodeBase64String(encryptCipher.get().doFinal(plain));
+        } catch (GeneralSecurityException ex) {
+            encryptCipher.remove();
+            throw new WeixinException("消息加密失败：", ex);
+        }
+    }
+
+    /**
+     * 加密被动回复消息，生成安全模式下的回复XML
+     *
+     * @param replyXml 明文回复XML
+     * @param timestamp 时间戳
+     * @param nonce 随机数
+     * @return 加密后的回复XML
+     * @throws WeixinException 加密失败
+     */
+    public String encryptReply(String replyXml, String timestamp, String nonce) throws WeixinException {
+        String encrypt = encrypt(replyXml);
+        StringBuilder sb = new StringBuilder(encrypt.length() + 200);
+        sb.append("<xml><Encrypt><![CDATA[").append(encrypt).append("]]></Encrypt>");
+        sb.append("<MsgSignature><![CDATA[").append(signature(timestamp, nonce, encrypt)).append("]]></MsgSignature>");
+        sb.append("<TimeStamp>").append(timestamp).append("</TimeStamp>");
+        sb.append("<Nonce><![CDATA[").append(nonce).append("]]></Nonce></xml>");
+        return sb.toString();
+    }
+}
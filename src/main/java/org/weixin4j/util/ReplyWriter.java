@@ -0,0 +1,300 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * 被动回复XML写出器
+ *
+ * <p>
+ * 直接将回复XML编码为UTF-8字节写入缓冲区，固定的标签片段预先编码为字节数组，
+ * 不再拼接中间字符串；写出完成后可得到准确的Content-Length。
+ * CDATA内容中的<tt>]]&gt;</tt>会被拆分为两个CDATA段，保证XML格式正确。</p>
+ *
+ * <p>
+ * 非线程安全。<tt>local()</tt>返回线程复用的实例，在当前线程下一次调用<tt>local()</tt>前有效。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public final class ReplyWriter {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] CDATA_START = fragment("<![CDATA[");
+    private static final byte[] CDATA_END = fragment("]]>");
+    /**
+     * CDATA中出现]]&gt;时，在]]之后结束当前段，并以新段写出&gt;
+     */
+    private static final byte[] CDATA_SPLIT = fragment("]]]]><![CDATA[>");
+    /**
+     * 线程缓冲区最大保留大小
+     */
+    private static final int RETAIN_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<ReplyWriter> LOCAL = new ThreadLocal<ReplyWriter>() {
+        @Override
+        protected ReplyWriter initialValue() {
+            return new ReplyWriter(1024);
+        }
+    };
+
+    private byte[] buf;
+    private int count;
+
+    /**
+     * 创建写出器
+     *
+     * @param initialSize 初始缓冲区大小
+     */
+    public ReplyWriter(int initialSize) {
+        this.buf = new byte[Math.max(16, initialSize)];
+    }
+
+    /**
+     * 获取线程复用的写出器，已清空
+     *
+     * @return 写出器
+     */
+    public static ReplyWriter local() {
+        ReplyWriter writer = LOCAL.get();
+        if (writer.buf.length > RETAIN_SIZE) {
+            writer.buf = new byte[1024];
+        }
+        writer.count = 0;
+        return writer;
+    }
+
+    /**
+     * 将固定片段预先编码为UTF-8字节
+     *
+     * @param text 片段
+     * @return UTF-8字节
+     */
+    public static byte[] fragment(String text) {
+        return text.getBytes(UTF_8);
+    }
+
+    private void ensure(int extra) {
+        int required = count + extra;
+        if (required > buf.length) {
+            byte[] nb = new byte[Math.max(buf.length << 1, required)];
+            System.arraycopy(buf, 0, nb, 0, count);
+            buf = nb;
+        }
+    }
+
+    /**
+     * 写出预编码的片段
+     *
+     * @param bytes 片段字节
+     * @return 自身引用
+     */
+    public ReplyWriter raw(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, count, bytes.length);
+        count += bytes.length;
+        return this;
+    }
+
+    /**
+     * 写出预编码的片段
+     *
+     * @param bytes 字节数组
+     * @param off 起始位置
+     * @param len 长度
+     * @return 自身引用
+     */
+    public ReplyWriter raw(byte[] bytes, int off, int len) {
+        ensure(len);
+        System.arraycopy(bytes, off, buf, count, len);
+        count += len;
+        return this;
+    }
+
+    /**
+     * 原样写出文本（不做XML转义），用于已是XML格式的内容
+     *
+     * @param text 文本
+     * @return 自身引用
+     */
+    public ReplyWriter text(String text) {
+        if (text != null) {
+            encode(text, 0, text.length());
+        }
+        return this;
+    }
+
+    /**
+     * 写出整数
+     *
+     * @param value 数值，为null时不写出
+     * @return 自身引用
+     */
+    public ReplyWriter number(Long value) {
+        if (value != null) {
+            number(value.longValue());
+        }
+        return this;
+    }
+
+    /**
+     * 写出整数
+     *
+     * @param value 数值
+     * @return 自身引用
+     */
+    public ReplyWriter number(long value) {
+        if (value == Long.MIN_VALUE) {
+            return text(Long.toString(value));
+        }
+        ensure(20);
+        if (value < 0) {
+            buf[count++] = '-';
+            value = -value;
+        }
+        int start = count;
+        do {
+            buf[count++] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+        //数字倒序写入，翻转
+        for (int i = start, j = count - 1; i < j; i++, j--) {
+            byte t = buf[i];
+            buf[i] = buf[j];
+            buf[j] = t;
+        }
+        return this;
+    }
+
+    /**
+     * 以CDATA形式写出文本
+     *
+     * @param text 文本，为null时写出空CDATA
+     * @return 自身引用
+     */
+    public ReplyWriter cdata(String text) {
+        raw(CDATA_START);
+        if (text != null) {
+            int from = 0;
+            int idx;
+            while ((idx = text.indexOf("]]>", from)) >= 0) {
+                encode(text, from, idx);
+                raw(CDATA_SPLIT);
+                from = idx + 3;
+            }
+            encode(text, from, text.length());
+        }
+        return raw(CDATA_END);
+    }
+
+    /**
+     * 写出元素：&lt;name&gt;&lt;![CDATA[text]]&gt;&lt;/name&gt;
+     *
+     * @param open 预编码的开始标签
+     * @param text 文本
+     * @param close 预编码的结束标签
+     * @return 自身引用
+     */
+    public ReplyWriter element(byte[] open, String text, byte[] close) {
+        return raw(open).cdata(text).raw(close);
+    }
+
+    /**
+     * 按UTF-8编码写出字符串片段
+     */
+    private void encode(String s, int from, int to) {
+        ensure((to - from) * 3);
+        byte[] b = buf;
+        int n = count;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                b[n++] = (byte) c;
+            } else if (c < 0x800) {
+                b[n++] = (byte) (0xc0 | (c >> 6));
+                b[n++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                b[n++] = (byte) (0xf0 | (cp >> 18));
+                b[n++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                b[n++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                b[n++] = (byte) (0x80 | (cp & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                //不成对的代理字符
+                b[n++] = '?';
+            } else {
+                b[n++] = (byte) (0xe0 | (c >> 12));
+                b[n++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                b[n++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        count = n;
+    }
+
+    /**
+     * 获取已写出的字节数
+     *
+     * @return 字节数
+     */
+    public int length() {
+        return count;
+    }
+
+    /**
+     * 清空缓冲区
+     */
+    public void reset() {
+        count = 0;
+    }
+
+    /**
+     * 写出到输出流
+     *
+     * @param out 输出流
+     * @throws IOException IO异常
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buf, 0, count);
+    }
+
+    /**
+     * 复制已写出的字节
+     *
+     * @return 字节数组
+     */
+    public byte[] toByteArray() {
+        byte[] copy = new byte[count];
+        System.arraycopy(buf, 0, copy, 0, count);
+        return copy;
+    }
+
+    /**
+     * 按UTF-8解码为字符串
+     *
+     * @return 字符串
+     */
+    @Override
+    public String toString() {
+        return new String(buf, 0, count, UTF_8);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import org.weixin4j.Configuration;
+
+/**
+ * 请求体读取工具
+ *
+ * <p>
+ * 将POST请求体按字节读入线程复用的缓冲区，不做字符解码，交由XML解析器按声明的编码解析，
+ * 避免按块解码时多字节字符被截断的问题。读取超过上限的请求体将抛出<tt>IOException</tt>。</p>
+ *
+ * <p>
+ * 返回的<tt>RequestBody</tt>引用线程缓冲区，仅在当前线程下一次调用<tt>read</tt>之前有效。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+public final class RequestBody {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * 请求体最大字节数，默认64K
+     */
+    public static final int MAX_SIZE = Configuration.getIntProperty("weixin4j.message.maxBodySize", 64 * 1024);
+    /**
+     * 初始缓冲区大小
+     */
+    private static final int INITIAL_SIZE = 4096;
+    /**
+     * 线程缓冲区最大保留大小，超过后读取完成即丢弃，避免个别大请求长期占用内存
+     */
+    private static final int RETAIN_SIZE = 16 * 1024;
+
+    private static final ThreadLocal<RequestBody> BUFFER = new ThreadLocal<RequestBody>() {
+        @Override
+        protected RequestBody initialValue() {
+            return new RequestBody(new byte[INITIAL_SIZE]);
+        }
+    };
+
+    private byte[] buf;
+    private int length;
+
+    private RequestBody(byte[] buf) {
+        this.buf = buf;
+    }
+
+    /**
+     * 使用默认上限读取请求体
+     *
+     * @param in 输入流
+     * @return 请求体
+     * @throws IOException 读取异常或请求体超过上限
+     */
+    public static RequestBody read(InputStream in) throws IOException {
+        return read(in, MAX_SIZE);
+    }
+
+    /**
+     * 读取请求体
+     *
+     * @param in 输入流
+     * @param maxSize 最大字节数
+     * @return 请求体
+     * @throws IOException 读取异常或请求体超过上限
+     */
+    public static RequestBody read(InputStream in, int maxSize) throws IOException {
+        RequestBody body = BUFFER.get();
+        if (body.buf.length > RETAIN_SIZE) {
+            body.buf = new byte[INITIAL_SIZE];
+        }
+        body.length = 0;
+        if (in == null) {
+            return body;
+        }
+        byte[] b = body.buf;
+        int count = 0;
+        for (int n; (n = in.read(b, count, b.length - count)) != -1;) {
+            count += n;
+            if (count > maxSize) {
+                throw new IOException("request body exceeds " + maxSize + " bytes");
+            }
+            if (count == b.length) {
+                int grow = Math.min(b.length << 1, maxSize + 1);
+                if (grow <= count) {
+                    grow = count + 1;
+                }
+                byte[] nb = new byte[grow];
+                System.arraycopy(b, 0, nb, 0, count);
+                b = nb;
+                body.buf = b;
+            }
+        }
+        body.length = count;
+        return body;
+    }
+
+    /**
+     * 获取请求体字节数
+     *
+     * @return 字节数
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * 请求体是否为空
+     *
+     * @return 是否为空
+     */
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    /**
+     * 获取内部缓冲区，有效内容为[0, length())，只读，在当前线程下一次<tt>read</tt>前有效
+     *
+     * @return 内部缓冲区
+     */
+    public byte[] buffer() {
+        return buf;
+    }
+
+    /**
+     * 以字节流形式读取请求体，不复制缓冲区
+     *
+     * @return 字节流
+     */
+    public InputStream openStream() {
+        return new ByteArrayInputStream(buf, 0, length);
+    }
+
+    /**
+     * 复制请求体字节
+     *
+     * @return 字节数组
+     */
+    public byte[] toByteArray() {
+        byte[] copy = new byte[length];
+        System.arraycopy(buf, 0, copy, 0, length);
+        return copy;
+    }
+
+    /**
+     * 按UTF-8解码为字符串
+     *
+     * @return 字符串
+     */
+    @Override
+    public String toString() {
+        return new String(buf, 0, length, UTF_8);
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * 微信公众平台(JAVA) SDK
+ *
+ * Copyright (c) 2014, Ansitech Network Technology Co.,Ltd All rights reserved.
+ *
+ * http://www.weixin4j.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.weixin4j.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 按键有序的分片执行器
+ *
+ * <p>
+ * 任务按键的哈希分配到固定的分片，每个分片一个有界队列、一个消费线程，
+ * 同一个键的任务按提交顺序依次执行，不同分片之间并行。
+ * 用于按FromUserName保证同一粉丝的消息顺序，同时利用全部CPU。</p>
+ *
+ * <p>
+ * 分片队列已满时<tt>execute</tt>抛出<tt>RejectedExecutionException</tt>，由调用方决定降级方式。</p>
+ *
+ * @author yangqisheng
+ * @since 0.1.6
+ */
+@Slf4j
+public final class StripedExecutor {
+
+    private final Shard[] shards;
+    private final Thread[] threads;
+    private volatile boolean shutdown;
+
+    /**
+     * 创建分片执行器
+     *
+     * @param shardCount 分片数
+     * @param queueSize 每个分片的队列长度
+     * @param namePrefix 线程名前缀
+     */
+    public StripedExecutor(int shardCount, int queueSize, String namePrefix) {
+        if (shardCount <= 0 || queueSize <= 0) {
+            throw new IllegalArgumentException("shardCount and queueSize must be positive");
+        }
+        this.shards = new Shard[shardCount];
+        this.threads = new Thread[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i, queueSize);
+            threads[i] = new Thread(shards[i], namePrefix + (i + 1));
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+    }
+
+    /**
+     * 判断当前线程是否为本执行器的分片线程
+     *
+     * <p>
+     * 分片线程中提交任务并等待其完成会造成死锁，调用方应直接执行。</p>
+     *
+     * @return 是否为分片线程
+     */
+    public boolean inShardThread() {
+        Thread current = Thread.currentThread();
+        for (Thread thread : threads) {
+            if (thread == current) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 计算键所在的分片
+     *
+     * @param key 键，为null时分配到第一个分片
+     * @return 分片序号
+     */
+    public int shardOf(Object key) {
+        if (key == null) {
+            return 0;
+        }
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return (h & 0x7fffffff) % shards.length;
+    }
+
+    /**
+     * 提交任务
+     *
+     * @param key 排序键，相同键的任务按提交顺序执行
+     * @param task 任务
+     * @throws RejectedExecutionException 分片队列已满或已关闭
+     */
+    public void execute(Object key, Runnable task) {
+        if (shutdown) {
+            throw new RejectedExecutionException("executor has been shut down");
+        }
+        Shard shard = shards[shardOf(key)];
+        if (!shard.queue.offer(task)) {
+            shard.rejected.incrementAndGet();
+            throw new RejectedExecutionException("shard " + shard.index + " queue is full");
+        }
+        shard.submitted.incrementAndGet();
+        int size = shard.queue.size();
+        int peak;
+        while ((peak = shard.peakQueueSize.get()) < size && !shard.peakQueueSize.compareAndSet(peak, size)) {
+        }
+    }
+
+    /**
+     * 获取分片数
+     *
+     * @return 分片数
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * 获取各分片的统计
+     *
+     * @return 分片统计，下标为分片序号
+     */
+    public ShardStats[] getShardStats() {
+        ShardStats[] stats = new ShardStats[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            Shard shard = shards[i];
+            stats[i] = new ShardStats(i, shard.queue.size(), shard.peakQueueSize.get(), shard.submitted.get(),
+                    shard.completed.get(), shard.rejected.get(), shard.failed.get());
+        }
+        return stats;
+    }
+
+    /**
+     * 关闭执行器，已提交的任务继续执行，不再接受新任务
+     */
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    private final class Shard implements Runnable {
+
+        final int index;
+        final BlockingQueue<Runnable> queue;
+        final AtomicInteger peakQueueSize = new AtomicInteger();
+        final AtomicLong submitted = new AtomicLong();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+
+        Shard(int index, int queueSize) {
+            this.index = index;
+            this.queue = new ArrayBlockingQueue<Runnable>(queueSize);
+        }
+
+        @Override
+        public void run() {
+            while (!shutdown || !queue.isEmpty()) {
+                Runnable task;
+                try {
+                    task = queue.poll(1, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (task == null) {
+                    continue;
+                }
+                try {
+                    task.run();
+                } catch (Throwable ex) {
+                    //单个任务异常不影响同分片的后续任务
+                    failed.incrementAndGet();
+                    log.error("weixin4j:分片" + index + "任务执行异常", ex);
+                } finally {
+                    completed.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * 分片统计
+     */
+    public static final class ShardStats {
+
+        private final int index;
+        private final int queueSize;
+        private final int peakQueueSize;
+        private final long submitted;
+        private final long completed;
+        private final long rejected;
+        private final long failed;
+
+        ShardStats(int index, int queueSize, int peakQueueSize, long submitted, long completed, long rejected, long failed) {
+            this.index = index;
+            this.queueSize = queueSize;
+            this.peakQueueSize = peakQueueSize;
+            this.submitted = submitted;
+            this.completed = completed;
+            this.rejected = rejected;
+            this.failed = failed;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public int getQueueSize() {
+            return queueSize;
+        }
+
+        public int getPeakQueueSize() {
+            return peakQueueSize;
+        }
+
+        public long getSubmitted() {
+            return submitted;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        @Override
+        public String toString() {
+            return "shard" + index + "{queue=" + queueSize + ", peak=" + peakQueueSize + ", submitted=" + submitted
+                    + ", completed=" + completed + ", rejected=" + rejected + ", failed=" + failed + "}";
+        }
+    }
+}
@@ -19,11 +19,10 @@
  */
 package org.weixin4j.util;
 
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import org.weixin4j.Configuration;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
 
 /**
  * <p>
@@ -39,6 +38,23 @@ import java.util.List;
  */
 public class TokenUtil {
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX_DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+    private static final ThreadLocal<MessageDigest> DIGEST = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    };
+    /**
+     * 防重放时间窗口(秒)，0表示不校验
+     */
+    private static final int REPLAY_WINDOW = Configuration.getIntProperty("weixin4j.signature.window", 0);
+
     //此加密密钥用于加密公众号Token，一经配置，不能修改，一旦修改，所有公众号需要重新填写Token
     private static String systemToken = null;
 
@@ -70,20 +86,107 @@ public class TokenUtil {
      * @return 验证成功返回true,否则返回false
      */
     public static boolean checkSignature(String token, String signature, String timestamp, String nonce) {
-        List<String> params = new ArrayList<String>();
-        params.add(token);
-        params.add(timestamp);
-        params.add(nonce);
-        //1. 将token、timestamp、nonce三个参数进行字典序排序
-        Collections.sort(params, new Comparator<String>() {
-            @Override
-            public int compare(String o1, String o2) {
-                return o1.compareTo(o2);
-            }
-        });
-        //2. 将三个参数字符串拼接成一个字符串进行sha1加密
-        String temp = SHA1.encode(params.get(0) + params.get(1) + params.get(2));
+        if (token == null || signature == null || timestamp == null || nonce == null) {
+            return false;
+        }
+        //1. 将token、timestamp、nonce三个参数进行字典序排序，三个值直接比较交换
+        String a = token, b = timestamp, c = nonce, t;
+        if (a.compareTo(b) > 0) {
+            t = a;
+            a = b;
+            b = t;
+        }
+        if (b.compareTo(c) > 0) {
+            t = b;
+            b = c;
+            c = t;
+        }
+        if (a.compareTo(b) > 0) {
+            t = a;
+            a = b;
+            b = t;
+        }
+        //2. 将三个参数字符串依次写入sha1摘要，不再拼接字符串
+        MessageDigest digest = DIGEST.get();
+        update(digest, a);
+        update(digest, b);
+        update(digest, c);
+        byte[] bytes = digest.digest();
         //3. 开发者获得加密后的字符串可与signature对比，标识该请求来源于微信
-        return temp.equals(signature);
+        if (signature.length() != bytes.length * 2) {
+            return false;
+        }
+        //逐位比较十六进制字符，比较时间与差异位置无关
+        int diff = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            diff |= HEX_DIGITS[(bytes[i] >> 4) & 0x0f] ^ signature.charAt(i * 2);
+            diff |= HEX_DIGITS[bytes[i] & 0x0f] ^ signature.charAt(i * 2 + 1);
+        }
+        return diff == 0;
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        //参数均为ASCII字符，非ASCII字符按UTF-8编码
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char ch = value.charAt(i);
+            if (ch >= 0x80) {
+                digest.update(value.substring(i).getBytes(UTF_8));
+                return;
+            }
+            digest.update((byte) ch);
+        }
+    }
+
+    /**
+     * 校验请求的时间戳和随机数，防止重放
+     *
+     * <p>
+     * 通过weixin4j.signature.window配置时间窗口(秒)，默认0表示不校验。
+     * 开启后时间戳与当前时间相差超过窗口的请求将被拒绝，
+     * 窗口内重复出现的timestamp+nonce组合也将被拒绝。
+     * 微信重试时timestamp和nonce与首次推送相同，是否放行由调用方结合消息排重判断。</p>
+     *
+     * @param timestamp 时间戳(秒)
+     * @param nonce 随机数
+     * @return 请求有效返回true，重放或过期返回false
+     * @since 0.1.6
+     */
+    public static boolean checkReplay(String timestamp, String nonce) {
+        if (REPLAY_WINDOW <= 0) {
+            return true;
+        }
+        if (!checkTimestamp(timestamp)) {
+            return false;
+        }
+        return NonceHolder.CACHE.putIfAbsent(timestamp + '#' + nonce, Boolean.TRUE) == null;
+    }
+
+    /**
+     * 校验请求的时间戳是否在防重放时间窗口内，未开启防重放时始终返回true
+     *
+     * @param timestamp 时间戳(秒)
+     * @return 时间戳有效返回true
+     * @since 0.1.6
+     */
+    public static boolean checkTimestamp(String timestamp) {
+        if (REPLAY_WINDOW <= 0) {
+            return true;
+        }
+        long seconds;
+        try {
+            seconds = Long.parseLong(timestamp);
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+        return Math.abs(System.currentTimeMillis() / 1000 - seconds) <= REPLAY_WINDOW;
+    }
+
+    /**
+     * 随机数缓存延迟初始化，未开启防重放时不占用内存
+     */
+    private static final class NonceHolder {
+
+        static final ExpiringCache<String, Boolean> CACHE = new ExpiringCache<String, Boolean>(
+                Configuration.getIntProperty("weixin4j.signature.nonceCache", 100000), REPLAY_WINDOW * 2000L, 16);
     }
 }
@@ -19,6 +19,7 @@
  */
 package org.weixin4j.util;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
@@ -45,11 +46,12 @@ public class XStreamFactory {
             return "";
         }
 
-        StringBuilder out = new StringBuilder();
+        //先读取全部字节再统一解码，避免多字节字符在分块边界被截断
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
         byte[] b = new byte[4096];
         for (int n; (n = in.read(b)) != -1;) {
-            out.append(new String(b, 0, n, "UTF-8"));
+            out.write(b, 0, n);
         }
-        return out.toString();
+        return out.toString("UTF-8");
     }
 }